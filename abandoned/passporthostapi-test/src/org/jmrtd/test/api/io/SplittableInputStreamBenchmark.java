@@ -0,0 +1,153 @@
+/*
+ *  JMRTD Tests.
+ *
+ *  Copyright (C) 2015  The JMRTD team
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  $Id: $
+ */
+
+package org.jmrtd.test.api.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.jmrtd.PassportService;
+import org.jmrtd.io.InputStreamBuffer;
+import org.jmrtd.io.SplittableInputStream;
+import org.jmrtd.lds.DG2File;
+import org.jmrtd.lds.LDS;
+
+/**
+ * Measures parsing DG2 through the buffered input streams, run it before and after a change
+ * to get comparable numbers.
+ *
+ * The file is parsed from a plain byte array stream as a reference, from a new split input
+ * stream that still has to read from the original input stream (as when reading from a card),
+ * from a copy over a fully buffered split input stream, and through a new LDS. The time to
+ * transfer the buffered bytes of a split input stream is printed as well, all as the median
+ * time in microseconds.
+ *
+ * Usage: <code>java org.jmrtd.test.api.io.SplittableInputStreamBenchmark [&lt;iterations&gt; [&lt;file&gt;]]</code>,
+ * run from the directory containing <code>samples</code>.
+ */
+public class SplittableInputStreamBenchmark {
+
+	private static final String BSI_TEST_FILE = "samples/bsi2008/Datagroup2.bin";
+
+	private interface Operation {
+		void run() throws IOException;
+	}
+
+	private int iterations;
+	private byte[] encoded;
+
+	public SplittableInputStreamBenchmark(int iterations, byte[] encoded) {
+		this.iterations = iterations;
+		this.encoded = encoded;
+	}
+
+	public void run() throws IOException {
+		final SplittableInputStream bufferedInputStream = new SplittableInputStream(new ByteArrayInputStream(encoded), encoded.length);
+		new DG2File(bufferedInputStream.getInputStream(0));
+		if (bufferedInputStream.getBytesBuffered() < encoded.length) {
+			/* NOTE: the parser may stop before the end, read the rest so that all bytes are buffered. */
+			((InputStreamBuffer.SubInputStream)bufferedInputStream.getInputStream(0)).transferTo(new ByteArrayOutputStream());
+		}
+
+		double directTime = measure(new Operation() {
+			public void run() throws IOException {
+				new DG2File(new ByteArrayInputStream(encoded));
+			}
+		});
+		double carrierTime = measure(new Operation() {
+			public void run() throws IOException {
+				new DG2File(new SplittableInputStream(new ByteArrayInputStream(encoded), encoded.length));
+			}
+		});
+		double bufferedTime = measure(new Operation() {
+			public void run() throws IOException {
+				new DG2File(bufferedInputStream.getInputStream(0));
+			}
+		});
+		double ldsTime = measure(new Operation() {
+			public void run() throws IOException {
+				LDS lds = new LDS();
+				lds.add(PassportService.EF_DG2, new ByteArrayInputStream(encoded), encoded.length);
+				lds.getDG2File();
+			}
+		});
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length);
+		double transferTime = measure(new Operation() {
+			public void run() throws IOException {
+				out.reset();
+				((InputStreamBuffer.SubInputStream)bufferedInputStream.getInputStream(0)).transferTo(out);
+			}
+		});
+		System.out.println("bytes     direct   carrier  buffered lds      transfer (us)");
+		System.out.println(String.format("%-9d %-8.1f %-8.1f %-8.1f %-8.1f %.1f",
+				encoded.length, directTime, carrierTime, bufferedTime, ldsTime, transferTime));
+	}
+
+	/**
+	 * Runs an operation to warm up, then measures it.
+	 *
+	 * @param operation the operation
+	 *
+	 * @return the median time in microseconds
+	 *
+	 * @throws IOException if the operation fails
+	 */
+	private double measure(Operation operation) throws IOException {
+		for (int i = 0; i < iterations; i++) {
+			operation.run();
+		}
+		long[] times = new long[iterations];
+		for (int i = 0; i < iterations; i++) {
+			long startTime = System.nanoTime();
+			operation.run();
+			times[i] = System.nanoTime() - startTime;
+		}
+		Arrays.sort(times);
+		return times[iterations / 2] / 1000.0;
+	}
+
+	private static byte[] readFile(String fileName) throws IOException {
+		File file = new File(fileName);
+		byte[] result = new byte[(int)file.length()];
+		DataInputStream dataIn = new DataInputStream(new FileInputStream(file));
+		try {
+			dataIn.readFully(result);
+		} finally {
+			dataIn.close();
+		}
+		return result;
+	}
+
+	public static void main(String[] arg) {
+		try {
+			int iterations = arg.length > 0 ? Integer.parseInt(arg[0]) : 500;
+			String fileName = arg.length > 1 ? arg[1] : BSI_TEST_FILE;
+			new SplittableInputStreamBenchmark(iterations, readFile(fileName)).run();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
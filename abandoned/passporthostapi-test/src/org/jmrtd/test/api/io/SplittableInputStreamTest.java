@@ -0,0 +1,212 @@
+/*
+ *  JMRTD Tests.
+ *
+ *  Copyright (C) 2015  The JMRTD team
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  $Id: $
+ */
+
+package org.jmrtd.test.api.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.jmrtd.io.BufferPool;
+import org.jmrtd.io.InputStreamBuffer;
+import org.jmrtd.io.SplittableInputStream;
+
+/**
+ * Compares bulk reads and transfers through split off copies with single-byte reads,
+ * on buffers in which some ranges were read from the original input stream and the
+ * ranges in between were skipped.
+ */
+public class SplittableInputStreamTest extends TestCase {
+
+	private static final int LENGTH = 10000;
+
+	/* Ranges read through a copy before the test reads, as offset and length, the rest are holes. */
+	private static final int[][] BUFFERED_RANGES = { { 0, 10 }, { 100, 1 }, { 101, 399 }, { 1000, 2500 }, { 4000, 17 }, { 9990, 10 } };
+
+	private static final int[] CHUNK_SIZES = { 1, 7, 100, 333, 4096, LENGTH };
+
+	private byte[] bytes;
+
+	public SplittableInputStreamTest(String name) {
+		super(name);
+	}
+
+	public void setUp() {
+		bytes = new byte[LENGTH];
+		new Random(LENGTH).nextBytes(bytes);
+	}
+
+	public void testSingleByteReads() {
+		try {
+			assertTrue(Arrays.equals(bytes, readBytes(createStream(false, null).getInputStream(0))));
+			assertTrue(Arrays.equals(bytes, readBytes(createStream(true, null).getInputStream(0))));
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.toString());
+		}
+	}
+
+	public void testBulkReads() {
+		try {
+			for (boolean isTrickling: new boolean[] { false, true }) {
+				byte[] expected = readBytes(createStream(isTrickling, null).getInputStream(0));
+				for (int chunkSize: CHUNK_SIZES) {
+					for (int position: new int[] { 0, 5, 100, 3499, 3500 }) {
+						InputStream inputStream = createStream(isTrickling, null).getInputStream(position);
+						byte[] actual = readBytes(inputStream, chunkSize);
+						assertTrue("chunk size " + chunkSize + ", position " + position,
+								Arrays.equals(Arrays.copyOfRange(expected, position, LENGTH), actual));
+					}
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.toString());
+		}
+	}
+
+	public void testBulkReadsOfCarrier() {
+		try {
+			for (int chunkSize: CHUNK_SIZES) {
+				SplittableInputStream splittableInputStream = createStream(true, null);
+				assertTrue("chunk size " + chunkSize, Arrays.equals(bytes, readBytes(splittableInputStream, chunkSize)));
+				assertEquals(LENGTH, splittableInputStream.getPosition());
+				assertEquals(LENGTH, splittableInputStream.getBytesBuffered());
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.toString());
+		}
+	}
+
+	public void testTransferTo() {
+		try {
+			for (boolean isTrickling: new boolean[] { false, true }) {
+				byte[] expected = readBytes(createStream(isTrickling, null).getInputStream(0));
+
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				assertEquals(LENGTH, createStream(isTrickling, null).transferTo(out));
+				assertTrue(Arrays.equals(expected, out.toByteArray()));
+
+				/* A copy over the buffer, part of which is read first. */
+				SplittableInputStream splittableInputStream = createStream(isTrickling, null);
+				InputStreamBuffer.SubInputStream inputStream = (InputStreamBuffer.SubInputStream)splittableInputStream.getInputStream(50);
+				byte[] prefix = new byte[30];
+				assertEquals(prefix.length, inputStream.read(prefix));
+				out.reset();
+				out.write(prefix);
+				assertEquals(LENGTH - 80, inputStream.transferTo(out));
+				assertTrue(Arrays.equals(Arrays.copyOfRange(expected, 50, LENGTH), out.toByteArray()));
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.toString());
+		}
+	}
+
+	public void testPooledBuffer() {
+		try {
+			BufferPool pool = new BufferPool();
+			SplittableInputStream splittableInputStream = createStream(true, pool);
+			assertTrue(Arrays.equals(bytes, readBytes(splittableInputStream.getInputStream(0), 333)));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			assertEquals(LENGTH, ((InputStreamBuffer.SubInputStream)splittableInputStream.getInputStream(0)).transferTo(out));
+			assertTrue(Arrays.equals(bytes, out.toByteArray()));
+			splittableInputStream.release();
+			assertEquals(0, pool.getBytesInUse());
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.toString());
+		}
+	}
+
+	/**
+	 * Creates a stream over the test bytes, with the buffered ranges read and the holes
+	 * between them skipped in the original input stream.
+	 *
+	 * @param isTrickling whether the original input stream returns at most a few bytes per read
+	 * @param pool the pool for the buffer, or <code>null</code>
+	 *
+	 * @return the stream, positioned at <code>0</code>
+	 *
+	 * @throws IOException on error
+	 */
+	private SplittableInputStream createStream(boolean isTrickling, BufferPool pool) throws IOException {
+		InputStream carrier = isTrickling ? new TricklingInputStream(bytes) : new ByteArrayInputStream(bytes);
+		SplittableInputStream result = new SplittableInputStream(carrier, LENGTH, pool);
+		for (int[] range: BUFFERED_RANGES) {
+			InputStream copy = result.getInputStream(0);
+			skipFully(copy, range[0]);
+			for (int i = 0; i < range[1]; i++) {
+				assertEquals(bytes[range[0] + i] & 0xFF, copy.read());
+			}
+		}
+		assertTrue(result.getBytesBuffered() < LENGTH);
+		return result;
+	}
+
+	private static void skipFully(InputStream inputStream, long n) throws IOException {
+		while (n > 0) {
+			long skipped = inputStream.skip(n);
+			if (skipped <= 0) { throw new IOException("Could not skip"); }
+			n -= skipped;
+		}
+	}
+
+	private static byte[] readBytes(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int b;
+		while ((b = inputStream.read()) >= 0) {
+			out.write(b);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] readBytes(InputStream inputStream, int chunkSize) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] chunk = new byte[chunkSize + 2];
+		int count;
+		while ((count = inputStream.read(chunk, 1, chunkSize)) >= 0) {
+			assertTrue(count > 0);
+			out.write(chunk, 1, count);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns at most a few bytes per read, like a card returning responses.
+	 */
+	private static class TricklingInputStream extends ByteArrayInputStream {
+
+		public TricklingInputStream(byte[] bytes) {
+			super(bytes);
+		}
+
+		public synchronized int read(byte[] b, int off, int len) {
+			return super.read(b, off, Math.min(len, 1 + pos % 7));
+		}
+	}
+}
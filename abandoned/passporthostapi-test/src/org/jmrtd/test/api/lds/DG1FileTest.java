@@ -62,6 +62,21 @@ public class DG1FileTest extends TestCase {
 		}
 	}
 
+	public void testNestedChange() {
+		try {
+			DG1File dg1File = getSpecSampleObject(LOES_SAMPLE);
+			byte[] encoded = dg1File.getEncoded();
+			assertEquals("XA0027732", new DG1File(new ByteArrayInputStream(encoded)).getMRZInfo().getDocumentNumber());
+
+			/* Changed through the MRZ info, the data group does not know. */
+			dg1File.getMRZInfo().setDocumentNumber("ZZ1234567");
+			encoded = dg1File.getEncoded();
+			assertEquals("ZZ1234567", new DG1File(new ByteArrayInputStream(encoded)).getMRZInfo().getDocumentNumber());
+		} catch (Exception e) {
+			fail(e.toString());
+		}
+	}
+
 	private static final String SMITH_SAMPLE = "P<ATASMITH<<JOHN<T<<<<<<<<<<<<<<<<<<<<<<<<<<123456789<HMD7406222M10123130121<<<<<<<<<<54";
 	private static final String LOES_SAMPLE = "P<NLDMEULENDIJK<<LOES<ALBERTINE<<<<<<<<<<<<<XA00277324NLD7110195F0610010123456782<<<<<08";
 
@@ -123,6 +123,24 @@ public class DG2FileTest extends TestCase {
 		}
 	}
 
+	public void testNestedChange() {
+		try {
+			DG2File dg2File = createTestObject();
+			byte[] encoded = dg2File.getEncoded();
+			assertEquals(1, new DG2File(new ByteArrayInputStream(encoded)).getFaceInfos().get(0).getFaceImageInfos().size());
+
+			/* Changed through the face info, the data group does not know. */
+			dg2File.getFaceInfos().get(0).addFaceImageInfo(FaceImageInfoTest.createTestObject());
+			encoded = dg2File.getEncoded();
+			DG2File copy = new DG2File(new ByteArrayInputStream(encoded));
+			assertEquals(2, copy.getFaceInfos().get(0).getFaceImageInfos().size());
+			assertEquals(dg2File.getLength(), copy.getLength());
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.toString());
+		}
+	}
+
 	public void testWriteObject() {
 		try {
 			testDecodeEncode(getTestObject(BSI_TEST_FILE), 2);
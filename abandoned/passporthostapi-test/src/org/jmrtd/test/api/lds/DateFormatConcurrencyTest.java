@@ -0,0 +1,145 @@
+/*
+ *  JMRTD Tests.
+ *
+ *  Copyright (C) 2015  The JMRTD team
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  $Id: $
+ */
+
+package org.jmrtd.test.api.lds;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.jmrtd.BACKey;
+import org.jmrtd.lds.DG11File;
+import org.jmrtd.lds.DG12File;
+
+/**
+ * Parses DG11 and DG12 files and formats BAC key dates from several threads at once,
+ * and compares the results with those of single-threaded parsing.
+ */
+public class DateFormatConcurrencyTest extends TestCase {
+
+	private static final int FILE_COUNT = 64;
+	private static final int THREAD_COUNT = 8;
+	private static final int ITERATIONS = 200;
+
+	public DateFormatConcurrencyTest(String name) {
+		super(name);
+	}
+
+	public void testConcurrentParsingAndFormatting() {
+		try {
+			final List<byte[]> encodedFiles = new ArrayList<byte[]>(2 * FILE_COUNT);
+			final List<Date> dates = new ArrayList<Date>(FILE_COUNT);
+			for (int i = 0; i < FILE_COUNT; i++) {
+				Date date = createDate(i);
+				dates.add(date);
+				encodedFiles.add(createDG11File(i, date).getEncoded());
+				encodedFiles.add(createDG12File(i, date).getEncoded());
+			}
+
+			/* Single-threaded results, to compare with. */
+			final List<String> expectedResults = new ArrayList<String>(encodedFiles.size());
+			for (byte[] encoded: encodedFiles) {
+				expectedResults.add(parse(encoded));
+			}
+			final List<String> expectedKeys = new ArrayList<String>(FILE_COUNT);
+			for (int i = 0; i < FILE_COUNT; i++) {
+				expectedKeys.add(format(dates.get(i), dates.get(FILE_COUNT - 1 - i)));
+			}
+
+			ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+			final CountDownLatch startSignal = new CountDownLatch(1);
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>(THREAD_COUNT);
+			try {
+				for (int t = 0; t < THREAD_COUNT; t++) {
+					final int offset = t;
+					futures.add(executor.submit(new Callable<Integer>() {
+						public Integer call() throws Exception {
+							startSignal.await();
+							int mismatchCount = 0;
+							for (int n = 0; n < ITERATIONS; n++) {
+								/* NOTE: each thread visits the files in a different order. */
+								int i = (offset * 7 + n) % encodedFiles.size();
+								if (!expectedResults.get(i).equals(parse(encodedFiles.get(i)))) { mismatchCount++; }
+								int j = (offset * 5 + n) % FILE_COUNT;
+								if (!expectedKeys.get(j).equals(format(dates.get(j), dates.get(FILE_COUNT - 1 - j)))) { mismatchCount++; }
+							}
+							return mismatchCount;
+						}
+					}));
+				}
+				startSignal.countDown();
+				int mismatchCount = 0;
+				for (Future<Integer> future: futures) {
+					mismatchCount += future.get();
+				}
+				assertEquals(0, mismatchCount);
+			} finally {
+				executor.shutdownNow();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.toString());
+		}
+	}
+
+	private static String parse(byte[] encoded) throws Exception {
+		if ((encoded[0] & 0xFF) == DG11File.EF_DG11_TAG) {
+			DG11File dg11 = new DG11File(new ByteArrayInputStream(encoded));
+			return dg11.getFullDateOfBirth().getTime() + " " + dg11;
+		} else {
+			DG12File dg12 = new DG12File(new ByteArrayInputStream(encoded));
+			return dg12.getDateOfIssue().getTime() + " " + dg12;
+		}
+	}
+
+	private static String format(Date dateOfBirth, Date dateOfExpiry) {
+		BACKey bacKey = new BACKey("XA0027732", dateOfBirth, dateOfExpiry);
+		return bacKey.getDateOfBirth() + " " + bacKey.getDateOfExpiry();
+	}
+
+	/* Distinct days spread over several decades, so that wrong fields show up in the results. */
+	private static Date createDate(int i) {
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(1950 + i, i % 12, 1 + (i * 3) % 28);
+		return cal.getTime();
+	}
+
+	private static DG11File createDG11File(int i, Date fullDateOfBirth) {
+		return new DG11File("HOLDER<<" + i, null, "P" + i, fullDateOfBirth,
+				Arrays.asList(new String[] { "UTOPIA" }), null, null, null, null, null, null, null, null);
+	}
+
+	private static DG12File createDG12File(int i, Date dateOfIssue) {
+		return new DG12File("AUTHORITY " + i, dateOfIssue, Arrays.asList(new String[] { "OTHER PERSON " + i }),
+				null, null, null, null, dateOfIssue, "S" + i);
+	}
+}
@@ -3,10 +3,13 @@
 package org.jmrtd.imageio;
 
 import java.awt.Point;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -21,15 +24,31 @@ import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.spi.ImageReaderSpi;
 import javax.imageio.stream.ImageInputStream;
 
+import jj2000.j2k.codestream.HeaderInfo;
+
 import org.jmrtd.jj2000.Bitmap;
 import org.jmrtd.jj2000.JJ2000Decoder;
 
 public class JJ2000ImageReader extends ImageReader {
 
+	/* Gray scale images use a linear gray ramp, so that getRGB returns the samples unchanged. */
+	private static final ImageTypeSpecifier GRAY_TYPE;
+	static {
+		byte[] ramp = new byte[256];
+		for (int i = 0; i < ramp.length; i++) { ramp[i] = (byte)i; }
+		GRAY_TYPE = ImageTypeSpecifier.createIndexed(ramp, ramp, ramp, null, 8, DataBuffer.TYPE_BYTE);
+	}
+
+	private static final ImageTypeSpecifier RGB_TYPE =
+		ImageTypeSpecifier.createBanded(ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[] { 0, 1, 2 }, new int[] { 0, 0, 0 }, DataBuffer.TYPE_BYTE, false, false);
+
 	ImageInputStream stream;
 	int width, height;
 	private BufferedImage image;
 
+	/* Main header, read without decoding the tiles. */
+	private HeaderInfo headerInfo;
+
 	public JJ2000ImageReader(ImageReaderSpi provider) {
 		super(provider);
 	}
@@ -47,33 +66,41 @@ public class JJ2000ImageReader extends ImageReader {
 		if (input == null) { throw new IllegalArgumentException("bad input"); }
 		if (!(input instanceof ImageInputStream)) { throw new IllegalArgumentException("bad input"); }
 
+		/* The image is decoded on the first call to read, metadata queries only read the header. */
+		this.stream = (ImageInputStream)input;
+		this.image = null;
+		this.headerInfo = null;
+	}
+
+	/**
+	 * Decodes the image, if this has not been done before.
+	 * The input is reset to its position before decoding.
+	 * The sample planes of the decoded bitmap are used as the image data, without copying.
+	 */
+	private void processInput() {
+		if (image != null) { return; }
 		try {
-			/* We're reading the complete image already, just to get the width and height. */
-			//			byte[] inputBytes = readBytes(input);
-
-			stream = (ImageInputStream)input;
-
-			InputStream inputStream = new ImageInputStreamAdapter(this.stream);
-
-			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-			int blockSize = 4096;
-			byte[] buffer = new byte[blockSize];
-			int offset = 0;
-			while (true) {
-				int bytesRead = inputStream.read(buffer);
-				if (bytesRead < 0) { break; }
-				outputStream.write(buffer, 0, bytesRead);
-				offset += bytesRead;
+			InputStream inputStream = getInputStream();
+			inputStream.mark(0);
+			Bitmap bitmap = null;
+			try {
+				bitmap = JJ2000Decoder.decode(inputStream);
+			} finally {
+				inputStream.reset();
 			}
-			ByteArrayInputStream partialInputStream = new ByteArrayInputStream(outputStream.toByteArray());
-
-			Bitmap bitmap = JJ2000Decoder.decode(partialInputStream);
 			this.width = bitmap.getWidth();
 			this.height = bitmap.getHeight();
-			int[] pixels = bitmap.getPixels();
-			this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-			WritableRaster raster = image.getRaster();
-			raster.setDataElements(0, 0, width, height, pixels);
+			int length = width * height;
+			if (bitmap.getComponentCount() == 1) {
+				DataBuffer dataBuffer = new DataBufferByte(bitmap.getPlane(0), length);
+				WritableRaster raster = Raster.createInterleavedRaster(dataBuffer, width, height, width, 1, new int[] { 0 }, null);
+				this.image = new BufferedImage(GRAY_TYPE.getColorModel(), raster, false, null);
+			} else {
+				byte[][] planes = { bitmap.getPlane(0), bitmap.getPlane(1), bitmap.getPlane(2) };
+				DataBuffer dataBuffer = new DataBufferByte(planes, length);
+				WritableRaster raster = Raster.createBandedRaster(dataBuffer, width, height, width, new int[] { 0, 1, 2 }, new int[] { 0, 0, 0 }, null);
+				this.image = new BufferedImage(RGB_TYPE.getColorModel(), raster, false, null);
+			}
 		} catch (IOException ioe) {
 			ioe.printStackTrace();
 			this.image = null;
@@ -86,9 +113,15 @@ public class JJ2000ImageReader extends ImageReader {
 
 	public BufferedImage read(int imageIndex, ImageReadParam param) throws IIOException {
 		if (imageIndex != 0) { throw new IllegalArgumentException("bad input"); }
+		processInput();
+		if (image == null) { throw new IIOException("Could not decode image"); }
 		try {
 			Point destinationOffset = new Point(0, 0);
 			if (param != null) { destinationOffset = param.getDestinationOffset(); }
+			if (param == null || (param.getDestination() == null && param.getDestinationType() == null && destinationOffset.x == 0 && destinationOffset.y == 0)) {
+				/* The decoded image is exactly what was asked for. */
+				return image;
+			}
 			BufferedImage dst = getDestination(param, getImageTypes(imageIndex), width, height);
 			dst.getRaster().setRect((int)destinationOffset.getX(), (int)destinationOffset.getY(), image.getRaster());
 			return dst;
@@ -100,12 +133,16 @@ public class JJ2000ImageReader extends ImageReader {
 
 	public int getWidth(int imageIndex) throws IOException {
 		if (imageIndex != 0) { throw new IllegalArgumentException("bad input"); }
-		return width;
+		if (image != null) { return width; }
+		HeaderInfo.SIZ siz = getHeaderInfo().siz;
+		return siz.xsiz - siz.x0siz;
 	}
 
 	public int getHeight(int imageIndex) throws IOException {
 		if (imageIndex != 0) { throw new IllegalArgumentException("bad input"); }
-		return height;
+		if (image != null) { return height; }
+		HeaderInfo.SIZ siz = getHeaderInfo().siz;
+		return siz.ysiz - siz.y0siz;
 	}
 
 	public IIOMetadata getImageMetadata(int imageIndex) throws IOException {
@@ -116,12 +153,46 @@ public class JJ2000ImageReader extends ImageReader {
 	public Iterator<ImageTypeSpecifier> getImageTypes(int imageIndex) throws IOException {
 		if (imageIndex != 0) { throw new IllegalArgumentException("bad input"); }
 		List<ImageTypeSpecifier> list = new ArrayList<ImageTypeSpecifier>();
-		ImageTypeSpecifier imageTypeSpecifier = ImageTypeSpecifier.createFromRenderedImage(image);
-		list.add(imageTypeSpecifier);
+		int componentCount = image != null ? image.getRaster().getNumBands() : getHeaderInfo().siz.csiz;
+		list.add(componentCount == 1 ? GRAY_TYPE : RGB_TYPE);
 		return list.iterator();
 	}
 
 	public IIOMetadata getStreamMetadata() throws IOException {
 		return null;
 	}
+
+	/**
+	 * Reads the main header (with the SIZ and COD marker segments) of the input,
+	 * if this has not been done before. The input is reset to its position before reading.
+	 *
+	 * @return the header info
+	 *
+	 * @throws IOException on error reading the header
+	 */
+	private HeaderInfo getHeaderInfo() throws IOException {
+		if (headerInfo == null) {
+			InputStream inputStream = getInputStream();
+			inputStream.mark(0);
+			try {
+				headerInfo = JJ2000Decoder.decodeHeader(inputStream);
+			} finally {
+				inputStream.reset();
+			}
+		}
+		return headerInfo;
+	}
+
+	/**
+	 * Gets the input as an input stream which is not closed by the decoder.
+	 *
+	 * @return an input stream
+	 */
+	private InputStream getInputStream() {
+		return new FilterInputStream(new ImageInputStreamAdapter(this.stream)) {
+			public void close() {
+				/* The decoder closes its input at EOF, but we need it for decoding later. */
+			}
+		};
+	}
 }
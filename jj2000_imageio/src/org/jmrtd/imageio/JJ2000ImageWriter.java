@@ -93,12 +93,15 @@ public class JJ2000ImageWriter extends ImageWriter {
 			WritableRaster raster = bufferedImage.getRaster();
 			switch(raster.getTransferType()) {
 			case DataBuffer.TYPE_BYTE: {
-				byte[] pixels = (byte[])raster.getDataElements(0, 0, raster.getWidth(), raster.getHeight(), null);
-				int[] rgbPixels = new int[pixels.length];
-				for (int i = 0; i < pixels.length; i++) {
-					rgbPixels[i] = 0xFF000000 | ((pixels[i] & 0xFF) << 16) | ((pixels[i] & 0xFF) << 8) | (pixels[i] & 0xFF);
+				Bitmap bitmap = null;
+				if (raster.getNumBands() == 1) {
+					/* Gray scale, the samples are used as the single plane of the bitmap. */
+					byte[] plane = (byte[])raster.getDataElements(0, 0, raster.getWidth(), raster.getHeight(), null);
+					bitmap = new Bitmap(new byte[][] { plane }, bufferedImage.getWidth(), bufferedImage.getHeight(), 8, -1, true, 3);
+				} else {
+					int[] pixels = bufferedImage.getRGB(0, 0, bufferedImage.getWidth(), bufferedImage.getHeight(), null, 0, bufferedImage.getWidth());
+					bitmap = new Bitmap(pixels, bufferedImage.getWidth(), bufferedImage.getHeight(), 8, -1, true, 3);
 				}
-				Bitmap bitmap = new Bitmap(rgbPixels, bufferedImage.getWidth(), bufferedImage.getHeight(), 8, -1, true, 3);
 				JJ2000Encoder.encode(new ImageOutputStreamAdapter(imageOutputStream), bitmap, rate);
 				break;
 			}
@@ -20,6 +20,11 @@ package org.jmrtd.jj2000;
 
 import java.io.Serializable;
 
+/**
+ * Image samples in our own intermediate format, independent of AWT.
+ * The samples are stored as unsigned 8-bit planes, one for gray scale images
+ * and three (red, green, blue) for color images, so that a gray scale image takes one byte per pixel.
+ */
 public class Bitmap implements Serializable {
 	
 	private static final long serialVersionUID = 1L;
@@ -31,10 +36,43 @@ public class Bitmap implements Serializable {
     private double bitRate;
     private boolean isLossy;
 
-    private int[] pixels;
+    private byte[][] planes;
 
+    /**
+     * Constructs a color bitmap from packed pixels.
+     *
+     * @param pixels ARGB pixels, row by row, the alpha channel is ignored
+     * @param width the width
+     * @param height the height
+     * @param depth the depth
+     * @param ppi the resolution in pixels per inch, or -1
+     * @param isLossy whether the image was lossy compressed
+     * @param bitRate the bit rate
+     */
     public Bitmap(int[] pixels, int width, int height, int depth, int ppi, boolean isLossy, double bitRate) {
-        this.pixels = pixels;
+        this(JJ2000Util.unsignedARGBToPlanes(pixels, width * height), width, height, depth, ppi, isLossy, bitRate);
+    }
+
+    /**
+     * Constructs a bitmap from sample planes. The planes are not copied.
+     *
+     * @param planes one plane for gray scale, or three planes (red, green, blue),
+     *               each with <code>width * height</code> unsigned samples, row by row
+     * @param width the width
+     * @param height the height
+     * @param depth the depth
+     * @param ppi the resolution in pixels per inch, or -1
+     * @param isLossy whether the image was lossy compressed
+     * @param bitRate the bit rate
+     */
+    public Bitmap(byte[][] planes, int width, int height, int depth, int ppi, boolean isLossy, double bitRate) {
+        if (planes == null || (planes.length != 1 && planes.length != 3)) {
+            throw new IllegalArgumentException("Was expecting 1 or 3 planes");
+        }
+        for (byte[] plane: planes) {
+            if (plane.length < width * height) { throw new IllegalArgumentException("Plane too short"); }
+        }
+        this.planes = planes;
         this.width = width;
         this.height = height;
         this.ppi = ppi;
@@ -55,8 +93,34 @@ public class Bitmap implements Serializable {
         return ppi;
     }
 
+    /**
+     * Gets the pixels as packed ARGB values (with alpha <code>0xFF</code>).
+     * These are computed from the planes on every call.
+     *
+     * @return the pixels, row by row
+     */
     public int[] getPixels() {
-        return pixels;
+        return JJ2000Util.planesToUnsignedARGB(planes, width * height);
+    }
+
+    /**
+     * Gets the number of sample planes.
+     *
+     * @return 1 for gray scale, 3 for color
+     */
+    public int getComponentCount() {
+        return planes.length;
+    }
+
+    /**
+     * Gets the samples of a component. The plane is not copied.
+     *
+     * @param c the component index
+     *
+     * @return <code>width * height</code> unsigned samples, row by row
+     */
+    public byte[] getPlane(int c) {
+        return planes[c];
     }
 
     public int getDepth() {
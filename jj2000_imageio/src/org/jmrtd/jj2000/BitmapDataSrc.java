@@ -54,26 +54,19 @@ class BitmapDataSrc extends ImgReader {
 
 	public DataBlk getCompData(DataBlk blk, int c) {
 		if (c < 0 || c >= nc) { throw new IllegalArgumentException(); }
-		int[] pixels = bitmap.getPixels();
+		/* A gray scale bitmap has a single plane, which is used for all components. */
+		byte[] plane = bitmap.getPlane(bitmap.getComponentCount() == 1 ? 0 : c);
 		if (blk == null) { blk = new DataBlkInt(0, 0, w, h); }
-		int blkDataLength = (blk.h - blk.uly) * (blk.w - blk.ulx);
+		int blkDataLength = blk.w * blk.h;
 		int[] compData = (int[])blk.getData();
-		if (compData == null) {
+		if (compData == null || compData.length < blkDataLength) {
 			compData = new int[blkDataLength];
-		} else {
-			assert compData.length == blkDataLength;
-		}
-		int i = 0;
-		for (int y = 0; y < blk.h; y++) {
-			for (int x = 0; x < blk.w; x++) {
-				int bitmapIndex = (blk.uly + y) * blk.w + (blk.ulx + x);
-				int signedCompValue = JJ2000Util.unsignedARGBToSignedComponent(pixels[bitmapIndex], c, nc, nomRangeBits);
-				compData[i] = signedCompValue;
-				i++;
-			}
 		}
+		JJ2000Util.unsignedPlaneToSignedComponent(plane, blk.uly * w + blk.ulx, w, blk.w, blk.h, nomRangeBits, compData);
 		blk.setData(compData);
+		blk.offset = 0;
+		blk.scanw = blk.w;
+		blk.progressive = false;
 		return blk;
 	}
 }
-
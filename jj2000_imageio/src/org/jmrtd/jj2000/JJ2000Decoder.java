@@ -43,6 +43,8 @@ public class JJ2000Decoder {
 
 	private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
 
+	private static final int HEADER_BUFFER_SIZE = 1024;
+
 	private final static String[][] DECODER_PINFO = {
 		{ "u", "[on|off]", "", "off" },
 		{ "v", "[on|off]", "", "off" },
@@ -77,13 +79,7 @@ public class JJ2000Decoder {
 
 	public static Bitmap decode(InputStream inputStream, double bitRate) throws IOException {
 		synchronized(inputStream) {
-			String[][] pinfo = getAllDecoderParameters();
-			ParameterList defpl = new ParameterList();
-			for (int i = pinfo.length - 1; i >= 0; i--) {
-				if (pinfo[i][3] != null)
-					defpl.put(pinfo[i][0], pinfo[i][3]);
-			}
-			ParameterList pl = new ParameterList(defpl);
+			ParameterList pl = getDefaultParameters();
 			if (bitRate >= 0.0) {
 				pl.put("rate", Float.toString((float)bitRate));
 			}
@@ -92,8 +88,49 @@ public class JJ2000Decoder {
 		}
 	}
 
+	/**
+	 * Reads the main header of the codestream, without decoding any tiles.
+	 * The SIZ marker segment in the result gives the dimensions and the components of the image,
+	 * the COD marker segment gives the coding style.
+	 * 
+	 * @param inputStream the input stream, positioned at the JP2 file or the codestream
+	 * 
+	 * @return the header info
+	 * 
+	 * @throws IOException on error reading the header
+	 */
+	public static HeaderInfo decodeHeader(InputStream inputStream) throws IOException {
+		synchronized(inputStream) {
+			/* Small buffer increments, so that not much more than the header is read. */
+			RandomAccessIO randomAccessIO = new ISRandomAccessIO(inputStream, HEADER_BUFFER_SIZE, HEADER_BUFFER_SIZE, Integer.MAX_VALUE);
+			FileFormatReader fileFormatReader = new FileFormatReader(randomAccessIO);
+			fileFormatReader.readFileFormat();
+			if (fileFormatReader.JP2FFUsed) {
+				randomAccessIO.seek(fileFormatReader.getFirstCodeStreamPos());
+			}
+
+			HeaderInfo headerInfo = new HeaderInfo();
+			try {
+				new HeaderDecoder(randomAccessIO, getDefaultParameters(), headerInfo);
+			} catch (EOFException e) {
+				throw new IOException("Codestream too short or bad header, unable to decode");
+			}
+			return headerInfo;
+		}
+	}
+
 	/* ONLY PRIVATE METHODS BELOW. */
 
+	private static ParameterList getDefaultParameters() {
+		String[][] pinfo = getAllDecoderParameters();
+		ParameterList defpl = new ParameterList();
+		for (int i = pinfo.length - 1; i >= 0; i--) {
+			if (pinfo[i][3] != null)
+				defpl.put(pinfo[i][0], pinfo[i][3]);
+		}
+		return new ParameterList(defpl);
+	}
+
 	private static Bitmap decode(RandomAccessIO randomAccessIO, ParameterList pl) throws IOException {
 		double bitRate = pl.getFloatParameter("rate");
 
@@ -270,39 +307,17 @@ public class JJ2000Decoder {
 
 		int depth = depths[0];
 
-		int[] rData = blk[0].getDataInt();
-		int[] gData = blk[1].getDataInt();
-		int[] bData = blk[2].getDataInt();
-
-		if (rData.length != gData.length || gData.length != bData.length || bData.length != rData.length) {
-			throw new IllegalArgumentException("Different dimensions for bands");
-		}
-
-		int[] pixels = new int[rData.length];
-		//		int minR = Integer.MAX_VALUE, maxR = Integer.MIN_VALUE;
-		//		int minG = Integer.MAX_VALUE, maxG = Integer.MIN_VALUE;
-		//		int minB = Integer.MAX_VALUE, maxB = Integer.MIN_VALUE;
-
-		for (int j = 0; j < rData.length; j++) {
-
-			/* Signed values, should be in [-128 .. 127] (for depth = 8). */
-			int r = rData[j];
-			int g = gData[j];
-			int b = bData[j];
-
-			/* Determine min and max per band. For debugging. Turns out values outside [-128 .. 127] are possible in samples!?! */
-			//			if (r < minR) { minR = r; } if (r > maxR) { maxR = r; }
-			//			if (g < minG) { minG = g; } if (g > maxG) { maxG = g; }
-			//			if (b < minB) { minB = b; } if (b > maxB) { maxB = b; }
-
-			pixels[j] = JJ2000Util.signedComponentsToUnsignedARGB(r, g, b, depth);
+		/* Signed values, should be in [-128 .. 127] (for depth = 8). Turns out values outside [-128 .. 127] are possible in samples!?! */
+		byte[][] planes = new byte[3][width * height];
+		for (int c = 0; c < 3; c++) {
+			toUnsignedPlane(blk[c], width, height, depth, planes[c]);
 		}
-		Bitmap bitmap = new Bitmap(pixels, width, height, 24, -1, true, bitRate);
+		Bitmap bitmap = new Bitmap(planes, width, height, 24, -1, true, bitRate);
 		return bitmap;
 	}
 
 	/**
-	 * Decodes 8-bit gray scale to 8-bit unsigned RGB (in our own intermediate Bitmap format).
+	 * Decodes 8-bit gray scale to 8-bit unsigned gray scale (in our own intermediate Bitmap format).
 	 * 
 	 * @param blk
 	 * @param depths
@@ -315,15 +330,24 @@ public class JJ2000Decoder {
 		if (depths.length != 1) {
 			throw new IllegalArgumentException("Was expecting 1 band");
 		}
-		int[] data = blk[0].getDataInt();
-		int[] pixels = new int[data.length];
-		for (int j = 0; j < data.length; j++) {
-			pixels[j] = JJ2000Util.signedGrayScaleIntToUnsignedARGB(data[j]);
-		}
-		Bitmap bitmap = new Bitmap(pixels, width, height, 24, -1, true, 3);
+		checkDimensions(blk[0], width, height);
+		byte[][] planes = new byte[1][width * height];
+		JJ2000Util.signedGrayScaleToUnsignedPlane(blk[0].getDataInt(), blk[0].offset, blk[0].scanw, width, height, planes[0]);
+		Bitmap bitmap = new Bitmap(planes, width, height, 24, -1, true, 3);
 		return bitmap;
 	}
 
+	private static void toUnsignedPlane(DataBlkInt blk, int width, int height, int depth, byte[] plane) {
+		checkDimensions(blk, width, height);
+		JJ2000Util.signedComponentToUnsignedPlane(blk.getDataInt(), blk.offset, blk.scanw, width, height, depth, plane);
+	}
+
+	private static void checkDimensions(DataBlkInt blk, int width, int height) {
+		if (blk.w < width || blk.h < height) {
+			throw new IllegalArgumentException("Different dimensions for bands");
+		}
+	}
+
 	private static String[][] getAllDecoderParameters() {
 		List<String[]> pl = new ArrayList<String[]>();
 
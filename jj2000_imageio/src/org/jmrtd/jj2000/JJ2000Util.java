@@ -42,4 +42,110 @@ class JJ2000Util {
 		if (b < -(1 << (nomRangeBits - 1))) { b = 0x00; } else if (b > ((1 << (nomRangeBits - 1)) - 1)) { b = (1 << nomRangeBits) - 1; } else { b += (1 << (nomRangeBits -1)); }
 		return 0xFF000000 | ((r & 0xFF) << (2 * nomRangeBits)) | ((g & 0xFF) << nomRangeBits) | (b & 0xFF);
 	}	
+
+	/**
+	 * Converts signed gray scale samples to an unsigned plane, like {@link #signedGrayScaleIntToUnsignedARGB(int)}.
+	 *
+	 * @param data the signed samples
+	 * @param offset the index of the first sample in <code>data</code>
+	 * @param scanw the distance between rows in <code>data</code>
+	 * @param width the width
+	 * @param height the height
+	 * @param plane the plane to store <code>width * height</code> unsigned samples in
+	 */
+	public static void signedGrayScaleToUnsignedPlane(int[] data, int offset, int scanw, int width, int height, byte[] plane) {
+		int j = 0;
+		for (int y = 0; y < height; y++) {
+			int k = offset + y * scanw;
+			for (int x = 0; x < width; x++) {
+				int p = data[k++];
+				plane[j++] = (byte)(p < -127 ? 0 : (p > 127 ? 255 : p + 127));
+			}
+		}
+	}
+
+	/**
+	 * Converts signed samples of one component to an unsigned plane, like {@link #signedComponentsToUnsignedARGB(int, int, int, int)}.
+	 *
+	 * @param data the signed samples
+	 * @param offset the index of the first sample in <code>data</code>
+	 * @param scanw the distance between rows in <code>data</code>
+	 * @param width the width
+	 * @param height the height
+	 * @param nomRangeBits the nominal range, should be 8
+	 * @param plane the plane to store <code>width * height</code> unsigned samples in
+	 */
+	public static void signedComponentToUnsignedPlane(int[] data, int offset, int scanw, int width, int height, int nomRangeBits, byte[] plane) {
+		int min = -(1 << (nomRangeBits - 1));
+		int max = (1 << (nomRangeBits - 1)) - 1;
+		int j = 0;
+		for (int y = 0; y < height; y++) {
+			int k = offset + y * scanw;
+			for (int x = 0; x < width; x++) {
+				int p = data[k++];
+				plane[j++] = (byte)(p < min ? 0 : (p > max ? (1 << nomRangeBits) - 1 : p - min));
+			}
+		}
+	}
+
+	/**
+	 * Converts a block of an unsigned plane to signed samples, like {@link #unsignedARGBToSignedComponent(int, int, int, int)}.
+	 *
+	 * @param plane the unsigned samples
+	 * @param offset the index of the first sample of the block in <code>plane</code>
+	 * @param scanw the distance between rows in <code>plane</code>
+	 * @param width the width of the block
+	 * @param height the height of the block
+	 * @param nomRangeBits the nominal range, should be 8
+	 * @param data the array to store <code>width * height</code> signed samples in
+	 */
+	public static void unsignedPlaneToSignedComponent(byte[] plane, int offset, int scanw, int width, int height, int nomRangeBits, int[] data) {
+		int shift = 1 << (nomRangeBits - 1);
+		int j = 0;
+		for (int y = 0; y < height; y++) {
+			int k = offset + y * scanw;
+			for (int x = 0; x < width; x++) {
+				data[j++] = (plane[k++] & 0xFF) - shift;
+			}
+		}
+	}
+
+	/**
+	 * Splits packed pixels into red, green, and blue planes.
+	 *
+	 * @param pixels ARGB pixels
+	 * @param length the number of pixels
+	 *
+	 * @return three planes
+	 */
+	public static byte[][] unsignedARGBToPlanes(int[] pixels, int length) {
+		byte[][] planes = new byte[3][length];
+		byte[] r = planes[0], g = planes[1], b = planes[2];
+		for (int j = 0; j < length; j++) {
+			int p = pixels[j];
+			r[j] = (byte)(p >> 16);
+			g[j] = (byte)(p >> 8);
+			b[j] = (byte)p;
+		}
+		return planes;
+	}
+
+	/**
+	 * Packs planes into pixels, a single (gray scale) plane is used for red, green, and blue.
+	 *
+	 * @param planes one or three planes
+	 * @param length the number of pixels
+	 *
+	 * @return ARGB pixels, with alpha <code>0xFF</code>
+	 */
+	public static int[] planesToUnsignedARGB(byte[][] planes, int length) {
+		byte[] r = planes[0];
+		byte[] g = planes.length < 3 ? r : planes[1];
+		byte[] b = planes.length < 3 ? r : planes[2];
+		int[] pixels = new int[length];
+		for (int j = 0; j < length; j++) {
+			pixels[j] = 0xFF000000 | ((r[j] & 0xFF) << 16) | ((g[j] & 0xFF) << 8) | (b[j] & 0xFF);
+		}
+		return pixels;
+	}
 }
@@ -36,7 +36,12 @@ public class BACKey implements BACKeySpec {
 
 	private static final long serialVersionUID = -1059774581180524710L;
 
-	private static final SimpleDateFormat SDF = new SimpleDateFormat("yyMMdd");
+	/* NOTE: SimpleDateFormat is not thread-safe, one instance per thread. */
+	private static final ThreadLocal<SimpleDateFormat> SDF = new ThreadLocal<SimpleDateFormat>() {
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("yyMMdd");
+		}
+	};
 
 	private String documentNumber;
 	private String dateOfBirth;
@@ -132,7 +137,7 @@ public class BACKey implements BACKeySpec {
 		this.dateOfExpiry = dateOfExpiry;
 	}
 	
-	private static synchronized String toString(Date date) {
-		return SDF.format(date);
+	private static String toString(Date date) {
+		return SDF.get().format(date);
 	}
 }
@@ -35,6 +35,7 @@ import net.sf.scuba.smartcards.FileInfo;
 import net.sf.scuba.smartcards.FileSystemStructured;
 import net.sf.scuba.tlv.TLVInputStream;
 
+import org.jmrtd.io.BufferPool;
 import org.jmrtd.io.FragmentBuffer;
 import org.jmrtd.io.FragmentBuffer.Fragment;
 import org.jmrtd.lds.CVCAFile;
@@ -67,13 +68,34 @@ class MRTDFileSystem implements FileSystemStructured, Serializable {
 	private PassportService service;
 	private Map<Short, MRTDFileInfo> fileInfos;
 
+	/** The pool for file buffers, <code>null</code> for heap buffers. */
+	private transient BufferPool bufferPool;
+
 	public MRTDFileSystem(PassportService service) {
+		this(service, null);
+	}
+
+	public MRTDFileSystem(PassportService service, BufferPool bufferPool) {
 		this.service = service;
+		this.bufferPool = bufferPool;
 		this.fileInfos = new HashMap<Short, MRTDFileInfo>();
 		this.selectedFID = 0;
 		this.isSelected = false;
 	}
 
+	/**
+	 * Returns pooled file buffers to the pool and forgets about the
+	 * files read so far. Has no effect if no pool is used.
+	 */
+	public synchronized void release() {
+		if (bufferPool == null) { return; }
+		for (MRTDFileInfo fileInfo: fileInfos.values()) {
+			fileInfo.release();
+		}
+		fileInfos.clear();
+		isSelected = false;
+	}
+
 	public synchronized FileInfo[] getSelectedPath() throws CardServiceException {
 		MRTDFileInfo fileInfo = getFileInfo();
 		return new MRTDFileInfo[]{ fileInfo };
@@ -109,10 +131,8 @@ class MRTDFileSystem implements FileSystemStructured, Serializable {
 				fileInfo.addFragment(fragment.getOffset(), bytes);
 			}
 			/* Shrink wrap the bytes that are now buffered. */
-			/* FIXME: that arraycopy looks costly, consider using dest array and offset params instead of byte[] result... -- MO */
-			byte[] buffer = fileInfo.getBuffer();
 			byte[] result = new byte[length];
-			System.arraycopy(buffer, offset, result, 0, length);
+			fileInfo.getBytes(offset, result, 0, length);
 			return result;
 		} catch (CardServiceException cse) {
 			throw new CardServiceException("Read binary failed on file " + (fileInfo == null ? Integer.toHexString(selectedFID) : fileInfo) + ": " + cse.getMessage(), cse.getSW());
@@ -164,7 +184,7 @@ class MRTDFileSystem implements FileSystemStructured, Serializable {
 				int tlLength = prefix.length - baInputStream.available(); /* NOTE: we're using a specific property of ByteArrayInputStream's available method here! */
 				fileLength = tlLength + vLength;
 			}
-			fileInfo = new MRTDFileInfo(selectedFID, fileLength);
+			fileInfo = new MRTDFileInfo(selectedFID, fileLength, bufferPool);
 			fileInfo.addFragment(0, prefix);
 			fileInfos.put(selectedFID, fileInfo);
 			return fileInfo;
@@ -180,15 +200,23 @@ class MRTDFileSystem implements FileSystemStructured, Serializable {
 		private short fid;
 		private FragmentBuffer buffer;
 
-		public MRTDFileInfo(short fid, int length) {
+		public MRTDFileInfo(short fid, int length, BufferPool bufferPool) {
 			this.fid = fid;
-			this.buffer = new FragmentBuffer(length);
+			this.buffer = new FragmentBuffer(length, bufferPool);
 		}
 
 		public byte[] getBuffer() {
 			return buffer.getBuffer();
 		}
 
+		public void getBytes(int offset, byte[] dest, int destOffset, int length) {
+			buffer.getBytes(offset, dest, destOffset, length);
+		}
+
+		public void release() {
+			buffer.release();
+		}
+
 		public short getFID() { return fid; }
 
 		public int getFileLength() { return buffer.getLength(); }
@@ -61,6 +61,7 @@ import net.sf.scuba.util.Hex;
 import org.jmrtd.cert.CVCAuthorizationTemplate.Role;
 import org.jmrtd.cert.CVCPrincipal;
 import org.jmrtd.cert.CardVerifiableCertificate;
+import org.jmrtd.io.BufferPool;
 import org.jmrtd.lds.MRZInfo;
 import org.jmrtd.lds.PACEInfo;
 
@@ -180,6 +181,13 @@ public class PassportService extends PassportApduService implements Serializable
 	SF_SOD = 0x1D,
 	SF_CVCA = 0x1C;
 
+	/**
+	 * Date format used in the MRZ.
+	 * 
+	 * @deprecated SimpleDateFormat is not thread-safe, sharing this instance between threads leads to wrong results.
+	 *             Create a (thread confined) instance instead.
+	 */
+	@Deprecated
 	public static final SimpleDateFormat SDF = new SimpleDateFormat("yyMMdd");
 
 	private final int TAG_CVCERTIFICATE_SIGNATURE = 0x5F37;
@@ -227,9 +235,23 @@ public class PassportService extends PassportApduService implements Serializable
 	 * @throws CardServiceException on error
 	 */
 	public PassportService(CardService service) throws CardServiceException {
+		this(service, null);
+	}
+
+	/**
+	 * Creates a new passport service for accessing the passport.
+	 * File contents read from the card are buffered in buffers from <code>bufferPool</code>,
+	 * which are returned to the pool when this service is closed.
+	 * 
+	 * @param service another service which will deal with sending the apdus to the card
+	 * @param bufferPool the pool for file buffers, or <code>null</code> to use heap buffers
+	 * 
+	 * @throws CardServiceException on error
+	 */
+	public PassportService(CardService service, BufferPool bufferPool) throws CardServiceException {
 		super(service);
 		random = new SecureRandom(); /* for BAC */
-		fs = new MRTDFileSystem(this);
+		fs = new MRTDFileSystem(this, bufferPool);
 
 		state = SESSION_STOPPED_STATE;
 	}
@@ -862,6 +884,7 @@ public class PassportService extends PassportApduService implements Serializable
 			super.close();
 		} finally {
 			state = SESSION_STOPPED_STATE;
+			fs.release();
 		}
 	}
 
@@ -23,16 +23,27 @@
 package org.jmrtd.cbeff;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.AccessControlException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import net.sf.scuba.tlv.TLVInputStream;
 import net.sf.scuba.tlv.TLVUtil;
 
+import org.jmrtd.io.PositionInputStream;
+import org.jmrtd.io.SplittableInputStream;
+
 /**
  * ISO 7816-11 decoder for BIR.
  * 
@@ -70,6 +81,89 @@ public class ISO781611Decoder implements ISO781611 {
 		return readBITGroup(inputStream);
 	}
 
+	/**
+	 * Reads the BITs of a BIT group one at a time. Only the headers are decoded
+	 * while iterating, biometric data blocks are skipped and decoded when requested
+	 * through {@link LazyCBEFFInfo#getBiometricDataBlock()}.
+	 *
+	 * The iterator reads from a copy of <code>inputStream</code>, the position of
+	 * <code>inputStream</code> itself is not changed.
+	 * Errors reading BITs are reported by the iterator as {@link IllegalStateException}s.
+	 *
+	 * @param <B> the type of biometric data block produced by the BDB decoder of this decoder
+	 *
+	 * @param inputStream the input stream to read from
+	 * @param position the position of the BIT group in <code>inputStream</code>
+	 *
+	 * @return an iterator over the BITs in the BIT group
+	 *
+	 * @throws IOException if reading the BIT group header fails
+	 */
+	public <B extends BiometricDataBlock> Iterator<LazyCBEFFInfo<B>> iterator(SplittableInputStream inputStream, int position) throws IOException {
+		@SuppressWarnings("unchecked")
+		BiometricDataBlockDecoder<B> bdbDecoder = (BiometricDataBlockDecoder<B>)this.bdbDecoder;
+		return new BITIterator<B>(bdbDecoder, inputStream, position);
+	}
+
+	/**
+	 * Reads the biometric data blocks of a BIT group, decoding them in parallel.
+	 * The stream is buffered completely and the BITs are located first, then the
+	 * biometric data blocks are claimed one at a time by the calling thread and by
+	 * helper tasks submitted to <code>executor</code>. The calling thread only waits
+	 * for helpers that have started, so this does not deadlock when called from a
+	 * task on the same (bounded) executor.
+	 *
+	 * @param <B> the type of biometric data block produced by the BDB decoder of this decoder
+	 *
+	 * @param inputStream the input stream to read from, which is read through copies
+	 * @param position the position of the BIT group in <code>inputStream</code>
+	 * @param executor the executor to submit helper tasks to
+	 *
+	 * @return the biometric data blocks, in the order of the BIT group
+	 *
+	 * @throws IOException if reading or decoding fails
+	 */
+	public <B extends BiometricDataBlock> List<B> decode(SplittableInputStream inputStream, int position, ExecutorService executor) throws IOException {
+		bufferAll(inputStream);
+		List<LazyCBEFFInfo<B>> bits = new ArrayList<LazyCBEFFInfo<B>>();
+		try {
+			Iterator<LazyCBEFFInfo<B>> iterator = iterator(inputStream, position);
+			while (iterator.hasNext()) {
+				bits.add(iterator.next());
+			}
+		} catch (IllegalStateException ise) {
+			Throwable cause = ise.getCause();
+			if (cause instanceof IOException) { throw (IOException)cause; }
+			throw ise;
+		}
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		ParallelDecode<B> run = new ParallelDecode<B>(bits);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			for (int i = 1; i < Math.min(processors, bits.size()); i++) {
+				futures.add(executor.submit(run));
+			}
+			run.decodeBlocks();
+		} catch (IOException ioe) {
+			run.fail(ioe);
+		} catch (RuntimeException re) {
+			run.fail(re);
+		} catch (Error e) {
+			run.fail(e);
+		} finally {
+			run.close();
+			for (Future<?> future: futures) {
+				future.cancel(false);
+			}
+		}
+		Throwable failure = run.failure;
+		if (failure instanceof IOException) { throw (IOException)failure; }
+		if (failure instanceof RuntimeException) { throw (RuntimeException)failure; }
+		if (failure instanceof Error) { throw (Error)failure; }
+		return run.getResult();
+	}
+
 	/**
 	 * Reads a BIT group from an input stream.
 	 * 
@@ -236,4 +330,218 @@ public class ISO781611Decoder implements ISO781611 {
 		BiometricDataBlock bdb = bdbDecoder.decode(inputStream, sbh, index, length);
 		return bdb;
 	}
+
+	/**
+	 * Reads the bytes of <code>inputStream</code> that have not been buffered yet.
+	 *
+	 * @param inputStream the input stream, which is read through a copy
+	 *
+	 * @throws IOException on error reading
+	 */
+	private static void bufferAll(SplittableInputStream inputStream) throws IOException {
+		if (inputStream.getBytesBuffered() >= inputStream.getLength()) { return; }
+		InputStream copy = inputStream.getInputStream(0);
+		byte[] chunk = new byte[4096];
+		while (copy.read(chunk) >= 0) { }
+	}
+
+	/**
+	 * The state of a parallel decode that is shared by the calling thread and the helper tasks.
+	 *
+	 * @param <B> the type of biometric data block
+	 */
+	private static class ParallelDecode<B extends BiometricDataBlock> implements Runnable {
+
+		private List<LazyCBEFFInfo<B>> bits;
+		private Object[] blocks;
+		private AtomicInteger nextBlock;
+
+		/* Number of helpers running, helpers no longer start once closed. */
+		private int helperCount;
+		private boolean isClosed;
+		private volatile Throwable failure;
+
+		ParallelDecode(List<LazyCBEFFInfo<B>> bits) {
+			this.bits = bits;
+			this.blocks = new Object[bits.size()];
+			this.nextBlock = new AtomicInteger();
+		}
+
+		public void run() {
+			synchronized (this) {
+				if (isClosed) { return; }
+				helperCount++;
+			}
+			try {
+				decodeBlocks();
+			} catch (Throwable t) {
+				fail(t);
+			} finally {
+				synchronized (this) {
+					helperCount--;
+					notifyAll();
+				}
+			}
+		}
+
+		void decodeBlocks() throws IOException {
+			for (int i = nextBlock.getAndIncrement(); i < blocks.length; i = nextBlock.getAndIncrement()) {
+				blocks[i] = bits.get(i).getBiometricDataBlock();
+			}
+		}
+
+		/**
+		 * Records the first failure and stops claiming blocks.
+		 *
+		 * @param t the failure
+		 */
+		void fail(Throwable t) {
+			synchronized (this) {
+				if (failure == null) { failure = t; }
+			}
+			nextBlock.set(blocks.length);
+		}
+
+		/**
+		 * Stops helpers from claiming blocks and waits for the running helpers,
+		 * so that all blocks are decoded, or decoding failed, when this returns.
+		 */
+		synchronized void close() {
+			isClosed = true;
+			boolean isInterrupted = false;
+			while (helperCount > 0) {
+				try {
+					wait();
+				} catch (InterruptedException ie) {
+					isInterrupted = true;
+				}
+			}
+			if (isInterrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		List<B> getResult() {
+			List<B> result = new ArrayList<B>(blocks.length);
+			for (Object block: blocks) {
+				result.add((B)block);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Reads the BIT group header eagerly, and a BIT (except for its BDB) on each call to {@link #next()}.
+	 *
+	 * @param <B> the type of biometric data block
+	 */
+	private class BITIterator<B extends BiometricDataBlock> implements Iterator<LazyCBEFFInfo<B>> {
+
+		private BiometricDataBlockDecoder<B> bdbDecoder;
+		private SplittableInputStream inputStream;
+		private int startPosition;
+		private PositionInputStream positionIn;
+		private TLVInputStream tlvIn;
+		private int bitCount;
+		private int index;
+
+		public BITIterator(BiometricDataBlockDecoder<B> bdbDecoder, SplittableInputStream inputStream, int position) throws IOException {
+			this.bdbDecoder = bdbDecoder;
+			this.inputStream = inputStream;
+			this.startPosition = position;
+			this.positionIn = new PositionInputStream(inputStream.getInputStream(position));
+			this.tlvIn = new TLVInputStream(positionIn);
+			int tag = tlvIn.readTag();
+			if (tag != BIOMETRIC_INFORMATION_GROUP_TEMPLATE_TAG) { /* 7F61 */
+				throw new IllegalArgumentException("Expected tag " + Integer.toHexString(BIOMETRIC_INFORMATION_GROUP_TEMPLATE_TAG) + ", found " + Integer.toHexString(tag));
+			}
+			tlvIn.readLength();
+			int bitCountTag = tlvIn.readTag();
+			if (bitCountTag != BIOMETRIC_INFO_COUNT_TAG) { /* 02 */
+				throw new IllegalArgumentException("Expected tag BIOMETRIC_INFO_COUNT_TAG (" + Integer.toHexString(BIOMETRIC_INFO_COUNT_TAG) + ") in CBEFF structure, found " + Integer.toHexString(bitCountTag));
+			}
+			int bitCountLength = tlvIn.readLength();
+			if (bitCountLength != 1) {
+				throw new IllegalArgumentException("BIOMETRIC_INFO_COUNT should have length 1, found length " + bitCountLength);
+			}
+			this.bitCount = (tlvIn.readValue()[0] & 0xFF);
+			this.index = 0;
+		}
+
+		public boolean hasNext() {
+			return index < bitCount;
+		}
+
+		public LazyCBEFFInfo<B> next() {
+			if (!hasNext()) { throw new NoSuchElementException(); }
+			try {
+				return readBIT(index++);
+			} catch (IOException ioe) {
+				index = bitCount;
+				throw new IllegalStateException("Could not read BIT " + (index - 1), ioe);
+			}
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private LazyCBEFFInfo<B> readBIT(int index) throws IOException {
+			int tag = tlvIn.readTag();
+			if (tag != BIOMETRIC_INFORMATION_TEMPLATE_TAG /* 7F60 */) {
+				throw new IllegalArgumentException("Expected tag BIOMETRIC_INFORMATION_TEMPLATE_TAG (" + Integer.toHexString(BIOMETRIC_INFORMATION_TEMPLATE_TAG) + "), found " + Integer.toHexString(tag) + ", index is " + index);
+			}
+			tlvIn.readLength();
+			int bhtTag = tlvIn.readTag();
+			int bhtLength = tlvIn.readLength();
+			if (bhtTag == SMT_TAG) {
+				return readStaticallyProtectedBIT(index);
+			} else if ((bhtTag & 0xA0) == 0xA0) {
+				StandardBiometricHeader sbh = readBHT(tlvIn, bhtTag, bhtLength, index);
+				int length = readBiometricDataBlockLength(tlvIn);
+				int position = startPosition + (int)positionIn.getPosition();
+				long skippedBytes = 0;
+				while (skippedBytes < length) {
+					long n = tlvIn.skip(length - skippedBytes);
+					if (n <= 0) { throw new EOFException("Unexpected end of biometric data block " + index); }
+					skippedBytes += n;
+				}
+				return new LazyCBEFFInfo<B>(index, sbh, bdbDecoder, inputStream, position, length);
+			} else {
+				throw new IllegalArgumentException("Unsupported template tag: " + Integer.toHexString(bhtTag));
+			}
+		}
+
+		/**
+		 * Reads a BIT protected with secure messaging. Only plain values are supported,
+		 * the biometric data block is buffered in memory.
+		 */
+		private LazyCBEFFInfo<B> readStaticallyProtectedBIT(int index) throws IOException {
+			byte[] bhtBytes = decodeSMTValue(tlvIn);
+			byte[] bdbBytes = decodeSMTValue(tlvIn);
+			if (bhtBytes == null || bdbBytes == null) {
+				throw new IOException("Unsupported statically protected BIT, index is " + index);
+			}
+			TLVInputStream tlvBHTIn = new TLVInputStream(new ByteArrayInputStream(bhtBytes));
+			int headerTemplateTag = tlvBHTIn.readTag();
+			int headerTemplateLength = tlvBHTIn.readLength();
+			StandardBiometricHeader sbh = readBHT(tlvBHTIn, headerTemplateTag, headerTemplateLength, index);
+			SplittableInputStream bdbIn = new SplittableInputStream(new ByteArrayInputStream(bdbBytes), bdbBytes.length);
+			int length = readBiometricDataBlockLength(new TLVInputStream(bdbIn.getInputStream(0)));
+			return new LazyCBEFFInfo<B>(index, sbh, bdbDecoder, bdbIn, bdbBytes.length - length, length);
+		}
+
+		/**
+		 * Reads the tag and length of a biometric data block.
+		 */
+		private int readBiometricDataBlockLength(TLVInputStream tlvIn) throws IOException {
+			int bioDataBlockTag = tlvIn.readTag();
+			if (bioDataBlockTag != BIOMETRIC_DATA_BLOCK_TAG /* 5F2E */ &&
+					bioDataBlockTag != BIOMETRIC_DATA_BLOCK_CONSTRUCTED_TAG /* 7F2E */) {
+				throw new IllegalArgumentException("Expected tag BIOMETRIC_DATA_BLOCK_TAG (" + Integer.toHexString(BIOMETRIC_DATA_BLOCK_TAG) + ") or BIOMETRIC_DATA_BLOCK_TAG_ALT (" + Integer.toHexString(BIOMETRIC_DATA_BLOCK_CONSTRUCTED_TAG) + "), found " + Integer.toHexString(bioDataBlockTag));
+			}
+			return tlvIn.readLength();
+		}
+	}
 }
@@ -22,13 +22,16 @@
 
 package org.jmrtd.cbeff;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.SortedMap;
 
-import net.sf.scuba.tlv.TLVOutputStream;
+import net.sf.scuba.tlv.TLVUtil;
 
 /**
  * ISO 7816-11 encoder for BIR.
@@ -59,58 +62,141 @@ public class ISO781611Encoder<B extends BiometricDataBlock> implements ISO781611
 	 * @throws IOException if something goes wrong
 	 */
 	public void encode(CBEFFInfo cbeffInfo, OutputStream outputStream) throws IOException {
-		if (cbeffInfo instanceof SimpleCBEFFInfo) {
-			writeBITGroup(Arrays.asList(new CBEFFInfo[] { cbeffInfo }), outputStream);
-		} else if (cbeffInfo instanceof ComplexCBEFFInfo) {
-			ComplexCBEFFInfo complexCBEFFInfo = (ComplexCBEFFInfo)cbeffInfo;
-			writeBITGroup(complexCBEFFInfo.getSubRecords(), outputStream);
+		if (cbeffInfo instanceof SimpleCBEFFInfo || cbeffInfo instanceof ComplexCBEFFInfo) {
+			writeBITGroup(getRecords(cbeffInfo), outputStream);
 		}
 	}
 	
-	private void writeBITGroup(List<CBEFFInfo> records, OutputStream outputStream) throws IOException {
-		TLVOutputStream tlvOut = outputStream instanceof TLVOutputStream ? (TLVOutputStream)outputStream : new TLVOutputStream(outputStream);
-		tlvOut.writeTag(BIOMETRIC_INFORMATION_GROUP_TEMPLATE_TAG); /* 7F61 */
-		tlvOut.writeTag(BIOMETRIC_INFO_COUNT_TAG); /* 0x02 */
+	/**
+	 * Gets the length of the encoded BIT group, including tag and length.
+	 * Encoders that do not implement {@link SizedBiometricDataBlockEncoder} encode
+	 * the biometric data blocks to find out their lengths.
+	 * 
+	 * @param cbeffInfo a CBEFF info containing the BIT group
+	 * 
+	 * @return the length of the encoded BIT group
+	 * 
+	 * @throws IOException if encoding a biometric data block fails
+	 */
+	public int getEncodedLength(CBEFFInfo cbeffInfo) throws IOException {
+		List<SimpleCBEFFInfo<B>> records = getRecords(cbeffInfo);
+		return getTLVLength(BIOMETRIC_INFORMATION_GROUP_TEMPLATE_TAG, getBITGroupValueLength(records, getBiometricDataBlockLengths(records, null)));
+	}
+
+	/**
+	 * Writes the BIT group in a single pass. The lengths of all nested structures
+	 * are computed up front, so that values are written directly to the output stream.
+	 */
+	private void writeBITGroup(List<SimpleCBEFFInfo<B>> records, OutputStream outputStream) throws IOException {
 		int count = records.size();
-		tlvOut.writeValue(new byte[] { (byte)count });
+		byte[][] encodedBDBs = bdbEncoder instanceof SizedBiometricDataBlockEncoder<?> ? null : new byte[count][];
+		int[] bdbLengths = getBiometricDataBlockLengths(records, encodedBDBs);
 
+		writeTagAndLength(outputStream, BIOMETRIC_INFORMATION_GROUP_TEMPLATE_TAG, getBITGroupValueLength(records, bdbLengths)); /* 7F61 */
+		writeTagAndLength(outputStream, BIOMETRIC_INFO_COUNT_TAG, 1); /* 0x02 */
+		outputStream.write(count);
 		for (int index = 0; index < count; index++) {
+			SimpleCBEFFInfo<B> simpleCBEFFInfo = records.get(index);
+			writeTagAndLength(outputStream, BIOMETRIC_INFORMATION_TEMPLATE_TAG, getBITValueLength(simpleCBEFFInfo, bdbLengths[index])); /* 7F60 */
+			writeBHT(outputStream, simpleCBEFFInfo);
+			writeTagAndLength(outputStream, BIOMETRIC_DATA_BLOCK_TAG, bdbLengths[index]); /* 5F2E or 7F2E */
+			if (encodedBDBs != null) {
+				outputStream.write(encodedBDBs[index]);
+			} else {
+				bdbEncoder.encode(simpleCBEFFInfo.getBiometricDataBlock(), outputStream);
+			}
+		}
+	}
+
+	private void writeBHT(OutputStream outputStream, SimpleCBEFFInfo<B> cbeffInfo) throws IOException {
+		SortedMap<Integer, byte[]> elements = cbeffInfo.getBiometricDataBlock().getStandardBiometricHeader().getElements();
+		writeTagAndLength(outputStream, BIOMETRIC_HEADER_TEMPLATE_BASE_TAG & 0xFF, getBHTValueLength(elements)); /* A1 */
+		for (SortedMap.Entry<Integer, byte[]> entry: elements.entrySet()) {
+			byte[] value = entry.getValue();
+			writeTagAndLength(outputStream, entry.getKey(), value.length);
+			outputStream.write(value);
+		}
+	}
+
+	private List<SimpleCBEFFInfo<B>> getRecords(CBEFFInfo cbeffInfo) {
+		List<CBEFFInfo> records = null;
+		if (cbeffInfo instanceof SimpleCBEFFInfo) {
+			records = Arrays.asList(new CBEFFInfo[] { cbeffInfo });
+		} else if (cbeffInfo instanceof ComplexCBEFFInfo) {
+			records = ((ComplexCBEFFInfo)cbeffInfo).getSubRecords();
+		} else {
+			records = Collections.emptyList();
+		}
+		List<SimpleCBEFFInfo<B>> result = new ArrayList<SimpleCBEFFInfo<B>>(records.size());
+		for (CBEFFInfo record: records) {
+			if (!(record instanceof SimpleCBEFFInfo)) {
+				throw new IllegalArgumentException("Encoder does not support level > 2 nesting");
+			}
 			@SuppressWarnings("unchecked")
-			SimpleCBEFFInfo<B> simpleCBEFFInfo = (SimpleCBEFFInfo<B>)records.get(index);
-			writeBIT(tlvOut, index, simpleCBEFFInfo);
+			SimpleCBEFFInfo<B> simpleCBEFFInfo = (SimpleCBEFFInfo<B>)record;
+			result.add(simpleCBEFFInfo);
 		}
-		tlvOut.writeValueEnd(); /* BIOMETRIC_INFORMATION_GROUP_TEMPLATE_TAG, i.e. 7F61 */
+		return result;
 	}
 
-	private void writeBIT(TLVOutputStream tlvOut, int index, SimpleCBEFFInfo<B> cbeffInfo) throws IOException {
-		if (!(cbeffInfo instanceof SimpleCBEFFInfo)) {
-			throw new IllegalArgumentException("Encoder does not support level > 2 nesting");
+	/**
+	 * Gets the lengths of the encoded biometric data blocks.
+	 * 
+	 * @param records the records
+	 * @param encodedBDBs if not <code>null</code>, filled with the encoded biometric data blocks
+	 * 
+	 * @return the lengths of the biometric data blocks
+	 * 
+	 * @throws IOException if encoding fails
+	 */
+	private int[] getBiometricDataBlockLengths(List<SimpleCBEFFInfo<B>> records, byte[][] encodedBDBs) throws IOException {
+		@SuppressWarnings("unchecked")
+		SizedBiometricDataBlockEncoder<B> sizedEncoder = bdbEncoder instanceof SizedBiometricDataBlockEncoder<?> ? (SizedBiometricDataBlockEncoder<B>)bdbEncoder : null;
+		int count = records.size();
+		int[] result = new int[count];
+		for (int index = 0; index < count; index++) {
+			B bdb = records.get(index).getBiometricDataBlock();
+			if (sizedEncoder != null) {
+				result[index] = sizedEncoder.getEncodedLength(bdb);
+			} else {
+				ByteArrayOutputStream bdbOut = new ByteArrayOutputStream();
+				bdbEncoder.encode(bdb, bdbOut);
+				byte[] encodedBDB = bdbOut.toByteArray();
+				if (encodedBDBs != null) { encodedBDBs[index] = encodedBDB; }
+				result[index] = encodedBDB.length;
+			}
 		}
-		tlvOut.writeTag(BIOMETRIC_INFORMATION_TEMPLATE_TAG); /* 7F60 */
-		writeBHT(tlvOut, index, cbeffInfo);
-		writeBiometricDataBlock(tlvOut, cbeffInfo.getBiometricDataBlock());
-		tlvOut.writeValueEnd(); /* BIOMETRIC_INFORMATION_TEMPLATE_TAG, i.e. 7F60 */
+		return result;
 	}
-	
-	private void writeBHT(TLVOutputStream tlvOut, int index, SimpleCBEFFInfo<B> cbeffInfo) throws IOException {
-		tlvOut.writeTag((BIOMETRIC_HEADER_TEMPLATE_BASE_TAG /* + index */) & 0xFF); /* A1 */
-				
-		B bdb = cbeffInfo.getBiometricDataBlock();
 
-		/* SBH */
-		StandardBiometricHeader sbh = bdb.getStandardBiometricHeader();
-		SortedMap<Integer, byte[]> elements = sbh.getElements();
+	private static int getBITGroupValueLength(List<? extends SimpleCBEFFInfo<?>> records, int[] bdbLengths) {
+		int result = getTLVLength(BIOMETRIC_INFO_COUNT_TAG, 1);
+		for (int index = 0; index < bdbLengths.length; index++) {
+			result += getTLVLength(BIOMETRIC_INFORMATION_TEMPLATE_TAG, getBITValueLength(records.get(index), bdbLengths[index]));
+		}
+		return result;
+	}
+
+	private static int getBITValueLength(SimpleCBEFFInfo<?> cbeffInfo, int bdbLength) {
+		SortedMap<Integer, byte[]> elements = cbeffInfo.getBiometricDataBlock().getStandardBiometricHeader().getElements();
+		return getTLVLength(BIOMETRIC_HEADER_TEMPLATE_BASE_TAG & 0xFF, getBHTValueLength(elements))
+				+ getTLVLength(BIOMETRIC_DATA_BLOCK_TAG, bdbLength);
+	}
+
+	private static int getBHTValueLength(SortedMap<Integer, byte[]> elements) {
+		int result = 0;
 		for (SortedMap.Entry<Integer, byte[]> entry: elements.entrySet()) {
-			tlvOut.writeTag(entry.getKey());
-			tlvOut.writeValue(entry.getValue());
-		}		
-		tlvOut.writeValueEnd(); /* BIOMETRIC_HEADER_TEMPLATE_BASE_TAG, i.e. A1 */
+			result += getTLVLength(entry.getKey(), entry.getValue().length);
+		}
+		return result;
+	}
+
+	private static int getTLVLength(int tag, int valueLength) {
+		return TLVUtil.getTagLength(tag) + TLVUtil.getLengthLength(valueLength) + valueLength;
 	}
 
-	private void writeBiometricDataBlock(TLVOutputStream tlvOut, B bdb) throws IOException {
-		tlvOut.writeTag(BIOMETRIC_DATA_BLOCK_TAG); /* 5F2E or 7F2E */
-		
-		bdbEncoder.encode(bdb, tlvOut);
-		tlvOut.writeValueEnd(); /* BIOMETRIC_DATA_BLOCK_TAG, i.e. 5F2E or 7F2E */
+	private static void writeTagAndLength(OutputStream outputStream, int tag, int length) throws IOException {
+		outputStream.write(TLVUtil.getTagAsBytes(tag));
+		outputStream.write(TLVUtil.getLengthAsBytes(length));
 	}
 }
@@ -0,0 +1,133 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2015  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id$
+ */
+
+package org.jmrtd.cbeff;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jmrtd.io.SplittableInputStream;
+
+/**
+ * Simple CBEFF BIR of which only the header has been decoded.
+ * The biometric data block is decoded on the first call to {@link #getBiometricDataBlock()},
+ * from the position at which it starts in a {@link SplittableInputStream}.
+ * Until then its bytes are not read.
+ *
+ * Instances are returned by {@link ISO781611Decoder#iterator(SplittableInputStream, int)}.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision$
+ *
+ * @param <B> the embedded BDB
+ */
+public class LazyCBEFFInfo<B extends BiometricDataBlock> implements CBEFFInfo {
+
+	private int index;
+	private StandardBiometricHeader sbh;
+	private BiometricDataBlockDecoder<B> bdbDecoder;
+	private SplittableInputStream inputStream;
+	private int position;
+	private int length;
+	private B bdb;
+
+	/**
+	 * Constructs a lazy CBEFF info.
+	 *
+	 * @param index the index of the BIT within the BIT group
+	 * @param sbh the standard biometric header
+	 * @param bdbDecoder the decoder for the biometric data block
+	 * @param inputStream the stream containing the biometric data block
+	 * @param position the position of the value of the biometric data block in <code>inputStream</code>
+	 * @param length the length of the biometric data block
+	 */
+	LazyCBEFFInfo(int index, StandardBiometricHeader sbh, BiometricDataBlockDecoder<B> bdbDecoder,
+			SplittableInputStream inputStream, int position, int length) {
+		this.index = index;
+		this.sbh = sbh;
+		this.bdbDecoder = bdbDecoder;
+		this.inputStream = inputStream;
+		this.position = position;
+		this.length = length;
+	}
+
+	/**
+	 * Gets the index of the BIT within the BIT group.
+	 *
+	 * @return the index
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Gets the standard biometric header that precedes the biometric data block.
+	 *
+	 * @return the standard biometric header
+	 */
+	public StandardBiometricHeader getStandardBiometricHeader() {
+		return sbh;
+	}
+
+	/**
+	 * Gets the length of the encoded biometric data block.
+	 *
+	 * @return the length
+	 */
+	public int getBiometricDataBlockLength() {
+		return length;
+	}
+
+	/**
+	 * Gets an input stream positioned at the encoded biometric data block,
+	 * which consists of the next {@link #getBiometricDataBlockLength()} bytes.
+	 *
+	 * @return an input stream
+	 */
+	public InputStream getBiometricDataBlockInputStream() {
+		return inputStream.getInputStream(position);
+	}
+
+	/**
+	 * Gets the biometric data block, decoding it if this has not been done before.
+	 *
+	 * @return a biometric data block
+	 *
+	 * @throws IOException on error reading the biometric data block
+	 */
+	public synchronized B getBiometricDataBlock() throws IOException {
+		if (bdb == null) {
+			bdb = bdbDecoder.decode(inputStream.getInputStream(position), sbh, index, length);
+		}
+		return bdb;
+	}
+
+	/**
+	 * Whether the biometric data block has been decoded.
+	 *
+	 * @return a boolean
+	 */
+	public synchronized boolean isDecoded() {
+		return bdb != null;
+	}
+}
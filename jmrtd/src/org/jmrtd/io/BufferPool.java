@@ -0,0 +1,204 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2015  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id$
+ */
+
+package org.jmrtd.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * A pool of direct (off-heap) byte buffers for file contents.
+ *
+ * Buffers are handed out in power of two size classes, from 1 KB up to 1 MB.
+ * Buffers of a size class are sliced from direct slabs of up to 16 buffers
+ * (and at most 1 MB), which are allocated when needed and never freed,
+ * released buffers are reused. Requests larger than the largest size class
+ * are served by unpooled direct buffers.
+ *
+ * Released buffers are zeroed, so that document contents do not linger in
+ * memory. A buffer must not be used after it has been released. Releasing a
+ * buffer that is not currently handed out by the pool has no effect.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision$
+ */
+public class BufferPool {
+
+	private static final int MIN_SIZE_CLASS_SHIFT = 10; /* 1 KB */
+	private static final int MAX_SIZE_CLASS_SHIFT = 20; /* 1 MB */
+	private static final int SLAB_SIZE = 1 << MAX_SIZE_CLASS_SHIFT;
+	private static final int BUFFERS_PER_SLAB = 16;
+
+	private static final byte[] ZEROS = new byte[1024];
+
+	private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
+
+	/** Free buffers, indexed by size class. */
+	private List<List<ByteBuffer>> freeLists;
+
+	/** Buffers currently handed out, by identity, as byte buffers compare by content. */
+	private Set<ByteBuffer> leasedBuffers;
+
+	private volatile long bytesInUse;
+	private volatile long highWaterMark;
+	private volatile long bytesReserved;
+
+	/**
+	 * Creates an empty buffer pool.
+	 */
+	public BufferPool() {
+		int sizeClassCount = MAX_SIZE_CLASS_SHIFT - MIN_SIZE_CLASS_SHIFT + 1;
+		this.freeLists = new ArrayList<List<ByteBuffer>>(sizeClassCount);
+		for (int i = 0; i < sizeClassCount; i++) {
+			freeLists.add(new ArrayList<ByteBuffer>());
+		}
+		this.leasedBuffers = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+		this.bytesInUse = 0;
+		this.highWaterMark = 0;
+		this.bytesReserved = 0;
+	}
+
+	/**
+	 * Gets a direct buffer with a capacity of at least <code>length</code> bytes.
+	 * The buffer is zeroed, its position is <code>0</code> and its limit is its capacity.
+	 *
+	 * @param length the minimal capacity
+	 *
+	 * @return a buffer
+	 */
+	public synchronized ByteBuffer acquire(int length) {
+		if (length < 0) { throw new IllegalArgumentException("Negative length " + length); }
+		int sizeClass = getSizeClass(length);
+		ByteBuffer result = null;
+		if (sizeClass < 0) {
+			result = ByteBuffer.allocateDirect(length);
+			bytesReserved += length;
+		} else {
+			List<ByteBuffer> freeList = freeLists.get(sizeClass);
+			if (freeList.isEmpty()) {
+				allocateSlab(sizeClass, freeList);
+			}
+			result = freeList.remove(freeList.size() - 1);
+		}
+		leasedBuffers.add(result);
+		bytesInUse += result.capacity();
+		if (bytesInUse > highWaterMark) { highWaterMark = bytesInUse; }
+		return result;
+	}
+
+	/**
+	 * Returns a buffer obtained from {@link #acquire(int)} to this pool.
+	 * The contents of the buffer are zeroed. Buffers that were already released,
+	 * or that were not acquired from this pool, are ignored.
+	 *
+	 * @param buffer the buffer
+	 */
+	public synchronized void release(ByteBuffer buffer) {
+		if (buffer == null) { return; }
+		if (!leasedBuffers.remove(buffer)) {
+			LOGGER.warning("Ignoring release of a buffer not handed out by this pool");
+			return;
+		}
+		int capacity = buffer.capacity();
+		clear(buffer);
+		bytesInUse -= capacity;
+		int sizeClass = getSizeClass(capacity);
+		if (sizeClass < 0) {
+			/* NOTE: unpooled, the garbage collector will free the memory. */
+			bytesReserved -= capacity;
+			return;
+		}
+		freeLists.get(sizeClass).add(buffer);
+	}
+
+	/**
+	 * The number of bytes currently handed out by this pool.
+	 *
+	 * @return a number of bytes
+	 */
+	public long getBytesInUse() {
+		return bytesInUse;
+	}
+
+	/**
+	 * The largest number of bytes handed out by this pool at any time.
+	 *
+	 * @return a number of bytes
+	 */
+	public long getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	/**
+	 * The number of bytes of direct memory held by this pool,
+	 * including the memory in use.
+	 *
+	 * @return a number of bytes
+	 */
+	public long getBytesReserved() {
+		return bytesReserved;
+	}
+
+	public String toString() {
+		return "BufferPool [in use: " + bytesInUse + ", high water mark: " + highWaterMark + ", reserved: " + bytesReserved + "]";
+	}
+
+	/**
+	 * Determines the size class for a length.
+	 *
+	 * @param length a length
+	 *
+	 * @return an index into the free lists, or <code>-1</code> if the length exceeds the largest size class
+	 */
+	private static int getSizeClass(int length) {
+		if (length > SLAB_SIZE) { return -1; }
+		int shift = MIN_SIZE_CLASS_SHIFT;
+		while ((1 << shift) < length) { shift++; }
+		return shift - MIN_SIZE_CLASS_SHIFT;
+	}
+
+	private void allocateSlab(int sizeClass, List<ByteBuffer> freeList) {
+		int size = 1 << (sizeClass + MIN_SIZE_CLASS_SHIFT);
+		int slabSize = Math.min(SLAB_SIZE, BUFFERS_PER_SLAB * size);
+		ByteBuffer slab = ByteBuffer.allocateDirect(slabSize);
+		bytesReserved += slabSize;
+		for (int offset = 0; offset + size <= slabSize; offset += size) {
+			slab.limit(offset + size);
+			slab.position(offset);
+			freeList.add(slab.slice());
+		}
+	}
+
+	private static void clear(ByteBuffer buffer) {
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			buffer.put(ZEROS, 0, Math.min(ZEROS.length, buffer.remaining()));
+		}
+		buffer.clear();
+	}
+}
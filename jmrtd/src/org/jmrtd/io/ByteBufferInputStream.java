@@ -0,0 +1,154 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2015  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id$
+ */
+
+package org.jmrtd.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream over a byte buffer (heap, direct, or memory-mapped).
+ * Positions are offsets into the buffer, so parsers can hand out
+ * slices of the buffer (using {@link #getBuffer(int, int)}) or fresh
+ * input streams (using {@link #getInputStream(int)}) instead of copying bytes.
+ *
+ * The buffer passed to the constructor is not modified, the stream
+ * works on a duplicate.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision$
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	/** Read-only view of the bytes, positioned at <code>0</code> relative to this stream. */
+	private ByteBuffer buffer;
+
+	private int markedPosition;
+
+	/**
+	 * Creates an input stream over the remaining bytes of a buffer.
+	 *
+	 * @param buffer the buffer, its position and limit are not changed
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer.slice().asReadOnlyBuffer();
+		this.markedPosition = 0;
+	}
+
+	/**
+	 * Gets a read-only slice of the underlying buffer. No bytes are copied.
+	 *
+	 * @param position the offset of the slice relative to the start of this stream
+	 * @param length the length of the slice
+	 *
+	 * @return a read-only buffer sharing content with this stream
+	 */
+	public ByteBuffer getBuffer(int position, int length) {
+		if (position < 0 || length < 0 || position + length > buffer.capacity()) {
+			throw new IndexOutOfBoundsException("Cannot slice [" + position + " .. " + (position + length) + ") from buffer of length " + buffer.capacity());
+		}
+		ByteBuffer result = buffer.duplicate();
+		result.limit(position + length);
+		result.position(position);
+		return result.slice();
+	}
+
+	/**
+	 * Gets a copy of the input stream positioned at <code>position</code>.
+	 *
+	 * @param position a position between <code>0</code> and {@link #getLength()}
+	 *
+	 * @return a fresh input stream
+	 */
+	public ByteBufferInputStream getInputStream(int position) {
+		return new ByteBufferInputStream(getBuffer(position, buffer.capacity() - position));
+	}
+
+	/**
+	 * The position of the input stream (the number of bytes read since this input stream was constructed).
+	 *
+	 * @return the position of this input stream
+	 */
+	public int getPosition() {
+		return buffer.position();
+	}
+
+	/**
+	 * The total number of bytes in this input stream.
+	 *
+	 * @return the length of this input stream
+	 */
+	public int getLength() {
+		return buffer.capacity();
+	}
+
+	public int read() throws IOException {
+		if (!buffer.hasRemaining()) { return -1; }
+		return buffer.get() & 0xFF;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (b == null) {
+			throw new NullPointerException();
+		} else if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		} else if (len == 0) {
+			return 0;
+		}
+		if (!buffer.hasRemaining()) { return -1; }
+		len = Math.min(len, buffer.remaining());
+		buffer.get(b, off, len);
+		return len;
+	}
+
+	public long skip(long n) throws IOException {
+		if (n <= 0) { return 0; }
+		int skippedBytes = (int)Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + skippedBytes);
+		return skippedBytes;
+	}
+
+	public int available() throws IOException {
+		return buffer.remaining();
+	}
+
+	public void close() throws IOException {
+	}
+
+	public synchronized void mark(int readLimit) {
+		markedPosition = buffer.position();
+	}
+
+	public synchronized void reset() throws IOException {
+		buffer.position(markedPosition);
+	}
+
+	public boolean markSupported() {
+		return true;
+	}
+
+	public String toString() {
+		return "ByteBufferInputStream [" + buffer.position() + " / " + buffer.capacity() + "]";
+	}
+}
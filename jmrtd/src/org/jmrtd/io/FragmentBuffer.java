@@ -22,28 +22,59 @@
 
 package org.jmrtd.io;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
 
 /**
  * A buffer that can be partially filled.
  * 
+ * The filled parts are administered as a sorted array of disjoint, merged intervals,
+ * so that coverage queries take logarithmic time in the number of fragments.
+ * The administration is replaced (not modified) on each update, readers
+ * do not lock. Writers are serialized.
+ * 
+ * The bytes are either kept in a heap array, or in a direct buffer
+ * obtained from a {@link BufferPool}. Pooled buffers should be returned to
+ * the pool using {@link #release()} when the contents are no longer needed.
+ * 
  * @author Martijn Oostdijk (martijn.oostdijk@gmail.com)
  *
  * @version $Revision$
  */
 public class FragmentBuffer implements Serializable {
 
-	private static final long serialVersionUID = -3510872461790499721L;
+	private static final long serialVersionUID = -3659623769179653722L;
+
+	private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
 	
-	/** Buffer with the actual bytes. */
-	private byte[] buffer; // FIXME can we make this buffer grow dynamically?
+	/** Buffer with the actual bytes, wrapping a heap array or acquired from {@link #pool}. */
+	private transient volatile ByteBuffer buffer;
+
+	/** The length of the buffer, the capacity of pooled buffers may be larger. */
+	private volatile int length;
+
+	/** The pool that the buffer was acquired from, <code>null</code> for heap buffers. */
+	private transient BufferPool pool;
+
+	/** Pooled buffers replaced when growing, which readers may still be using until release. */
+	private transient List<ByteBuffer> retiredBuffers;
+
+	/** Listeners notified when bytes are added, <code>null</code> until the first listener is added. */
+	private transient volatile List<FragmentListener> listeners;
 
 	/** Administration of which parts of buffer are filled. */
-	private Collection<Fragment> fragments;
+	private volatile Coverage coverage;
 
 	/**
 	 * Creates a fragment buffer.
@@ -58,19 +89,38 @@ public class FragmentBuffer implements Serializable {
 	 * @param length the length of the buffer
 	 */
 	public FragmentBuffer(int length) {
-		this.buffer = new byte[length];
-		this.fragments = new HashSet<Fragment>();
+		this(length, null);
+	}
+
+	/**
+	 * Creates a fragment buffer.
+	 * 
+	 * @param length the length of the buffer
+	 * @param pool the pool to acquire the buffer from, or <code>null</code> to use a heap array
+	 */
+	public FragmentBuffer(int length, BufferPool pool) {
+		this.pool = pool;
+		this.buffer = allocate(length);
+		this.length = length;
+		this.coverage = Coverage.EMPTY;
 	}
 
 	public synchronized void updateFrom(FragmentBuffer other) {
-		for (Fragment otherFragment: other.fragments) {
-			addFragment(otherFragment.offset, other.buffer, otherFragment.offset, otherFragment.length);
+		Coverage otherCoverage = other.coverage;
+		for (int i = 0; i < otherCoverage.count; i++) {
+			int offset = otherCoverage.offsets[i];
+			byte[] bytes = new byte[otherCoverage.ends[i] - offset];
+			other.getBytes(offset, bytes, 0, bytes.length);
+			addFragment(offset, bytes);
 		}
 	}
 
 	public synchronized void addFragment(int offset, byte b) {
-		/* FIXME: can this be done more efficiently for common case resulting from InputStreamBuffer read, scan all fragments and extend neighboring one */
-		addFragment(offset, new byte[] { b });
+		if (offset >= length) {
+			setLength(2 * Math.max(offset + 1, length));
+		}
+		buffer.put(offset, b);
+		addCoverage(offset, offset + 1);
 	}
 	
 	/**
@@ -92,87 +142,180 @@ public class FragmentBuffer implements Serializable {
 	 * @param srcLength the length of the fragment
 	 */
 	public synchronized void addFragment(int offset, byte[] bytes, int srcOffset, int srcLength) {
-		if (offset + srcLength > buffer.length) {
-			setLength(2 * Math.max(offset + srcLength, buffer.length));
+		if (srcLength <= 0) { return; }
+		if (offset + srcLength > length) {
+			setLength(2 * Math.max(offset + srcLength, length));
 		}
 
-		System.arraycopy(bytes, srcOffset, buffer, offset, srcLength);
-		int thisOffset = offset;
-		int thisLength = srcLength;
-		final Collection<Fragment> otherFragments = new ArrayList<Fragment>(fragments);
-		for (Fragment other: otherFragments) {
-			/* On partial overlap we change this fragment, possibly remove the other overlapping fragments we encounter. */
-			if (other.getOffset() <= thisOffset && thisOffset + thisLength <= other.getOffset() + other.getLength()) {
-				/*
-				 * [...other fragment.........]
-				 *    [...this fragment...]
-				 *    
-				 * This fragment is already contained in other. Don't add and return immediately.
-				 */
-				return;
-			} else if (other.getOffset() <= thisOffset && thisOffset <= other.getOffset() + other.getLength()) {
-				/*
-				 * [...other fragment...]
-				 *         [...this fragment...]
-				 *         
-				 * This fragment is partially contained in other. Extend this fragment to size of other, remove other.
-				 */
-				thisLength = thisOffset + thisLength - other.getOffset();
-				thisOffset = other.getOffset();
-				fragments.remove(other);
-			}  else if (thisOffset <= other.getOffset() && other.getOffset() + other.getLength() <= thisOffset + thisLength) {
-				/*
-				 *    [...other fragment...]
-				 * [...this fragment...........]
-				 * 
-				 * The other fragment is contained in this fragment. Remove other.
-				 */
-				fragments.remove(other);
-			} else if (thisOffset <= other.getOffset() && other.getOffset() <= thisOffset + thisLength) {
-				/*
-				 *        [...other fragment...]
-				 * [...this fragment...]
-				 * 
-				 * This fragment is partially contained in other. Extend this fragment to size of other, remove other.
-				 */
-				thisLength = other.getOffset() + other.getLength() - thisOffset;
-				fragments.remove(other);
-			}
+		/* NOTE: bytes are copied before the new coverage is published, readers only look at covered bytes. */
+		ByteBuffer buffer = this.buffer;
+		if (buffer.hasArray()) {
+			System.arraycopy(bytes, srcOffset, buffer.array(), buffer.arrayOffset() + offset, srcLength);
+		} else {
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset);
+			view.put(bytes, srcOffset, srcLength);
 		}
-		fragments.add(Fragment.getInstance(thisOffset, thisLength));			
+		addCoverage(offset, offset + srcLength);
 	}
-	
-	public synchronized int getPosition() {
-		int result = 0;
-		for (int i = 0; i < buffer.length; i++) {
-			if (isCoveredByFragment(i)) {
-				result = i + 1;
-			}
+
+	/**
+	 * Gets a (buffered) byte.
+	 * 
+	 * @param offset the offset of the byte
+	 * 
+	 * @return the byte
+	 */
+	public byte getByte(int offset) {
+		return buffer.get(offset);
+	}
+
+	/**
+	 * Copies (buffered) bytes to an array.
+	 * 
+	 * @param offset the offset of the first byte in this buffer
+	 * @param dest the destination array
+	 * @param destOffset the offset in the destination array
+	 * @param length the number of bytes to copy
+	 */
+	public void getBytes(int offset, byte[] dest, int destOffset, int length) {
+		ByteBuffer buffer = this.buffer;
+		if (buffer.hasArray()) {
+			System.arraycopy(buffer.array(), buffer.arrayOffset() + offset, dest, destOffset, length);
+		} else {
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset);
+			view.get(dest, destOffset, length);
 		}
-		return result;
 	}
-	
-	public synchronized int getBytesBuffered() {
-		int result = 0;
-		for (int i = 0; i < buffer.length; i++) {
-			if (isCoveredByFragment(i)) {
-				result++;
-			}
+
+	/**
+	 * Copies (buffered) bytes to a byte buffer, at the position of that buffer.
+	 *
+	 * @param offset the offset of the first byte in this buffer
+	 * @param dest the destination buffer
+	 * @param length the number of bytes to copy
+	 */
+	public void getBytes(int offset, ByteBuffer dest, int length) {
+		dest.put(getByteBuffer(offset, length));
+	}
+
+	/**
+	 * Gets a read-only view on (buffered) bytes, without copying. The views
+	 * of several files can be written to a <code>GatheringByteChannel</code> at once.
+	 * The view must not be used after {@link #release()}.
+	 *
+	 * @param offset the offset of the first byte in this buffer
+	 * @param length the number of bytes
+	 *
+	 * @return a read-only buffer with position <code>0</code> and limit <code>length</code>
+	 */
+	public ByteBuffer getByteBuffer(int offset, int length) {
+		if (offset < 0 || length < 0 || offset > this.length - length) {
+			throw new IndexOutOfBoundsException("offset = " + offset + ", length = " + length);
 		}
-		return result;
+		ByteBuffer view = buffer.asReadOnlyBuffer();
+		view.limit(offset + length);
+		view.position(offset);
+		return view.slice();
+	}
+
+	/**
+	 * Gets a channel over the buffered bytes of this buffer. Reading at an
+	 * unbuffered position reads <code>0</code> bytes.
+	 *
+	 * @return a channel positioned at <code>0</code>
+	 */
+	public FragmentBufferChannel getChannel() {
+		return new FragmentBufferChannel(this, null);
+	}
+
+	/**
+	 * Adds a listener that is notified when bytes are added to this buffer.
+	 * 
+	 * @param l the listener
+	 */
+	public synchronized void addFragmentListener(FragmentListener l) {
+		if (listeners == null) { listeners = new CopyOnWriteArrayList<FragmentListener>(); }
+		listeners.add(l);
+	}
+
+	/**
+	 * Removes a listener.
+	 * 
+	 * @param l the listener
+	 */
+	public synchronized void removeFragmentListener(FragmentListener l) {
+		if (listeners != null) { listeners.remove(l); }
+	}
+
+	/**
+	 * Writes (buffered) bytes to an output stream, without intermediate copies for heap buffers.
+	 * 
+	 * @param offset the offset of the first byte in this buffer
+	 * @param length the number of bytes to write
+	 * @param out the output stream
+	 * 
+	 * @throws IOException on error writing to the output stream
+	 */
+	public void writeTo(int offset, int length, OutputStream out) throws IOException {
+		ByteBuffer buffer = this.buffer;
+		if (buffer.hasArray()) {
+			out.write(buffer.array(), buffer.arrayOffset() + offset, length);
+			return;
+		}
+		byte[] chunk = new byte[Math.min(length, 4096)];
+		while (length > 0) {
+			int count = Math.min(length, chunk.length);
+			getBytes(offset, chunk, 0, count);
+			out.write(chunk, 0, count);
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Returns pooled buffers to the pool. The buffer is empty afterwards.
+	 * Has no effect on heap buffers.
+	 * 
+	 * The caller should make sure that there are no concurrent readers.
+	 */
+	public synchronized void release() {
+		if (pool == null) { return; }
+		ByteBuffer oldBuffer = buffer;
+		this.coverage = Coverage.EMPTY;
+		this.buffer = ByteBuffer.wrap(new byte[0]);
+		this.length = 0;
+		pool.release(oldBuffer);
+		if (retiredBuffers != null) {
+			for (ByteBuffer retiredBuffer: retiredBuffers) { pool.release(retiredBuffer); }
+			retiredBuffers = null;
+		}
+		pool = null;
+	}
+	
+	/**
+	 * The position just after the last buffered byte.
+	 * 
+	 * @return a position
+	 */
+	public int getPosition() {
+		Coverage coverage = this.coverage;
+		return coverage.count == 0 ? 0 : coverage.ends[coverage.count - 1];
 	}
 	
-	public synchronized boolean isCoveredByFragment(int offset) {
+	public int getBytesBuffered() {
+		return coverage.bytesBuffered;
+	}
+	
+	public boolean isCoveredByFragment(int offset) {
 		return isCoveredByFragment(offset, 1);
 	}
 	
-	public synchronized boolean isCoveredByFragment(int offset, int length) {
-		for (Fragment fragment: fragments) {
-			int left = fragment.getOffset();
-			int right = fragment.getOffset() + fragment.getLength();
-			if (left <= offset && offset + length <= right) { return true; }
-		}
-		return false;		
+	public boolean isCoveredByFragment(int offset, int length) {
+		Coverage coverage = this.coverage;
+		int index = coverage.indexOf(offset);
+		return index >= 0 && offset + length <= coverage.ends[index];
 	}
 	
 	/**
@@ -182,30 +325,49 @@ public class FragmentBuffer implements Serializable {
 	 *
 	 * @return the number of bytes left in the buffer
 	 */
-	public synchronized int getBufferedLength(int index) {
-		int result = 0;
-		if (index >= buffer.length) { return 0; }
-		for (Fragment fragment: fragments) {
-			int left = fragment.getOffset();
-			int right = fragment.getOffset() + fragment.getLength();
-			if (left <= index && index < right) {
-				int newResult = right - index;
-				if (newResult > result) { result = newResult; }
-			}
-		}
-		return result;
+	public int getBufferedLength(int index) {
+		if (index >= length) { return 0; }
+		Coverage coverage = this.coverage;
+		int i = coverage.indexOf(index);
+		if (i < 0 || index >= coverage.ends[i]) { return 0; }
+		return coverage.ends[i] - index;
 	}	
 
+	/**
+	 * Gets the buffered fragments, in order of offset. Adjacent and overlapping
+	 * fragments are merged. The result is a snapshot, it is not updated when
+	 * fragments are added.
+	 * 
+	 * @return a list of fragments
+	 */
 	public Collection<Fragment> getFragments() {
-		return fragments;
+		Coverage coverage = this.coverage;
+		List<Fragment> result = new ArrayList<Fragment>(coverage.count);
+		for (int i = 0; i < coverage.count; i++) {
+			result.add(Fragment.getInstance(coverage.offsets[i], coverage.ends[i] - coverage.offsets[i]));
+		}
+		return Collections.unmodifiableList(result);
 	}
 	
+	/**
+	 * Gets the contents of this buffer. For heap buffers this is the
+	 * backing array, for pooled buffers this is a copy.
+	 * 
+	 * @return the contents
+	 */
 	public byte[] getBuffer() {
-		return buffer;
+		ByteBuffer buffer = this.buffer;
+		int length = this.length;
+		if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.array().length == length) {
+			return buffer.array();
+		}
+		byte[] result = new byte[length];
+		getBytes(0, result, 0, length);
+		return result;
 	}
 	
 	public int getLength() {
-		return buffer.length;
+		return length;
 	}
 	
 	/**
@@ -217,53 +379,29 @@ public class FragmentBuffer implements Serializable {
 	 *
 	 * @return the fragment that has not yet been buffered
 	 */
-	public synchronized Fragment getSmallestUnbufferedFragment(int offset, int length) {
-		int thisOffset = offset, thisLength = length;
-		for (Fragment other: fragments) {
-			/* On partial overlap we change this fragment, removing sections already buffered. */
-			if (other.getOffset() <= thisOffset && thisOffset + thisLength <= other.getOffset() + other.getLength()) {
-				/*
-				 * [...other fragment.........]
-				 *    [...this fragment...]
-				 *    
-				 * This fragment is already contained in other. Don't add and return immediately.
-				 */
-				thisLength = 0; /* NOTE: we don't care about offset */
-				break;
-			} else if (other.getOffset() <= thisOffset && thisOffset < other.getOffset() + other.getLength()) {
-				/*
-				 * [...other fragment...]
-				 *         [...this fragment...]
-				 *         
-				 * This fragment is partially contained in other. Only fetch the trailing part of this fragment.
-				 */
-				int newOffset = other.getOffset() + other.getLength();
-				int newLength = thisOffset + thisLength - newOffset;
-				thisOffset = newOffset;
-				thisLength = newLength;
-			}  else if (thisOffset <= other.getOffset() && other.getOffset() + other.getLength() <= thisOffset + thisLength) {
-				/*
-				 *    [...other fragment...]
-				 * [...this fragment...........]
-				 * 
-				 * The other fragment is contained in this fragment. We send this fragment as is.
-				 */
-				continue;
-			} else if (offset <= other.getOffset() && other.getOffset() < thisOffset + thisLength) {
-				/*
-				 *        [...other fragment...]
-				 * [...this fragment...]
-				 * 
-				 * This fragment is partially contained in other. Only send the leading part of this fragment.
-				 */
-				thisLength = other.getOffset() - thisOffset;
-			}
+	public Fragment getSmallestUnbufferedFragment(int offset, int length) {
+		Coverage coverage = this.coverage;
+		int start = offset, end = offset + length;
+
+		/* Skip the buffered prefix. */
+		int index = coverage.indexOf(start);
+		if (index >= 0 && start < coverage.ends[index]) {
+			start = coverage.ends[index];
+		}
+		if (start >= end) {
+			return Fragment.getInstance(start, 0); /* NOTE: we don't care about offset */
+		}
+
+		/* Skip the buffered suffix. */
+		index = coverage.indexOf(end - 1);
+		if (index >= 0 && coverage.offsets[index] > start && end <= coverage.ends[index]) {
+			end = coverage.offsets[index];
 		}
-		return Fragment.getInstance(thisOffset, thisLength);
+		return Fragment.getInstance(start, end - start);
 	}
 	
-	public synchronized String toString() {
-		return "FragmentBuffer [" + buffer.length + ", " + fragments + "]";
+	public String toString() {
+		return "FragmentBuffer [" + length + ", " + getFragments() + "]";
 	}
 	
 	public synchronized boolean equals(Object otherObject) {
@@ -271,22 +409,151 @@ public class FragmentBuffer implements Serializable {
 		if (otherObject == this) { return true; }
 		if (!otherObject.getClass().equals(FragmentBuffer.class)) { return false; }
 		FragmentBuffer otherBuffer = (FragmentBuffer)otherObject;
-		if (otherBuffer.buffer == null && this.buffer != null) { return false; }
-		if (otherBuffer.buffer != null && this.buffer == null) { return false; }
-		if (otherBuffer.fragments == null && this.fragments != null) { return false; }
-		if (otherBuffer.fragments != null && this.fragments == null) { return false; }
-		return Arrays.equals(otherBuffer.buffer, this.buffer) && otherBuffer.fragments.equals(this.fragments);
+		return Arrays.equals(otherBuffer.getBuffer(), this.getBuffer()) && otherBuffer.getFragments().equals(this.getFragments());
 	}
 	
 	public int hashCode() {
-		return 3 * Arrays.hashCode(buffer) + 2 * fragments.hashCode() + 7;
+		return 3 * Arrays.hashCode(getBuffer()) + 2 * getFragments().hashCode() + 7;
 	}
 
 	private synchronized void setLength(int length) {
-		if (length <= buffer.length) { return; }
-		byte[] newBuffer = new byte[length];
-		System.arraycopy(this.buffer, 0, newBuffer, 0, this.buffer.length);
+		if (length <= this.length) { return; }
+		ByteBuffer oldBuffer = this.buffer;
+		ByteBuffer newBuffer = allocate(length);
+		ByteBuffer source = oldBuffer.duplicate();
+		source.position(0);
+		source.limit(this.length);
+		ByteBuffer destination = newBuffer.duplicate();
+		destination.put(source);
 		this.buffer = newBuffer;
+		this.length = length;
+		if (pool != null) {
+			/* NOTE: readers may still be using the old buffer, don't hand it out again yet. */
+			if (retiredBuffers == null) { retiredBuffers = new ArrayList<ByteBuffer>(); }
+			retiredBuffers.add(oldBuffer);
+		}
+	}
+
+	private ByteBuffer allocate(int length) {
+		if (pool == null) { return ByteBuffer.wrap(new byte[length]); }
+		return pool.acquire(length);
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.write(getBuffer());
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		this.buffer = ByteBuffer.wrap(bytes);
+	}
+
+	/**
+	 * Merges <code>[start .. end)</code> into the coverage, and publishes the result.
+	 * Only called by writers, which hold the lock.
+	 * 
+	 * @param start the offset of the first byte
+	 * @param end the offset just after the last byte
+	 */
+	private void addCoverage(int start, int end) {
+		Coverage oldCoverage = this.coverage;
+		int count = oldCoverage.count;
+		int[] oldOffsets = oldCoverage.offsets, oldEnds = oldCoverage.ends;
+
+		/* The fragments [first .. last] overlap or touch [start .. end). */
+		int first = oldCoverage.indexOf(start);
+		if (first < 0 || oldEnds[first] < start) { first++; }
+		int last = oldCoverage.indexOf(end);
+
+		if (first <= last && oldOffsets[first] <= start && end <= oldEnds[first]) {
+			/* Already covered by a single fragment. */
+			return;
+		}
+
+		int mergedCount = last - first + 1; /* NOTE: 0 if nothing overlaps, the fragment is inserted at first. */
+		int mergedStart = start, mergedEnd = end;
+		int bytesBuffered = oldCoverage.bytesBuffered;
+		for (int i = first; i <= last; i++) {
+			mergedStart = Math.min(mergedStart, oldOffsets[i]);
+			mergedEnd = Math.max(mergedEnd, oldEnds[i]);
+			bytesBuffered -= oldEnds[i] - oldOffsets[i];
+		}
+		bytesBuffered += mergedEnd - mergedStart;
+
+		int newCount = count - mergedCount + 1;
+		int[] offsets = new int[newCount], ends = new int[newCount];
+		System.arraycopy(oldOffsets, 0, offsets, 0, first);
+		System.arraycopy(oldEnds, 0, ends, 0, first);
+		offsets[first] = mergedStart;
+		ends[first] = mergedEnd;
+		System.arraycopy(oldOffsets, first + mergedCount, offsets, first + 1, count - first - mergedCount);
+		System.arraycopy(oldEnds, first + mergedCount, ends, first + 1, count - first - mergedCount);
+		this.coverage = new Coverage(offsets, ends, bytesBuffered);
+		notifyFragmentAdded(start, end - start);
+	}
+
+	/**
+	 * Notifies listeners, after the new coverage has been published.
+	 * 
+	 * @param offset the offset of the added bytes
+	 * @param length the number of added bytes
+	 */
+	private void notifyFragmentAdded(int offset, int length) {
+		List<FragmentListener> listeners = this.listeners;
+		if (listeners == null || listeners.isEmpty()) { return; }
+		FragmentEvent event = new FragmentEvent(this, offset, length);
+		for (FragmentListener l: listeners) {
+			try {
+				l.fragmentAdded(event);
+			} catch (RuntimeException re) {
+				/* NOTE: a failing consumer should not break the reader filling this buffer. */
+				LOGGER.warning("Exception in fragment listener: " + re.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Immutable administration of disjoint, non-adjacent fragments, sorted by offset.
+	 */
+	private static class Coverage implements Serializable {
+
+		private static final long serialVersionUID = -1593180939434925744L;
+
+		private static final Coverage EMPTY = new Coverage(new int[0], new int[0], 0);
+
+		private final int[] offsets, ends;
+		private final int count;
+		private final int bytesBuffered;
+
+		public Coverage(int[] offsets, int[] ends, int bytesBuffered) {
+			this.offsets = offsets;
+			this.ends = ends;
+			this.count = offsets.length;
+			this.bytesBuffered = bytesBuffered;
+		}
+
+		/**
+		 * Finds the last fragment that starts at or before <code>offset</code>.
+		 * 
+		 * @param offset an offset
+		 * 
+		 * @return the index of the fragment, or <code>-1</code> if all fragments start after <code>offset</code>
+		 */
+		public int indexOf(int offset) {
+			int low = 0, high = count - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (offsets[mid] <= offset) {
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
+			}
+			return high;
+		}
 	}
 
 	/**
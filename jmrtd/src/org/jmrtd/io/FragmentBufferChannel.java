@@ -0,0 +1,214 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2015  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id$
+ */
+
+package org.jmrtd.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A readable, seekable byte channel over the contents of a {@link FragmentBuffer}.
+ * Buffered bytes are copied straight from the buffer. If the channel was obtained
+ * from an {@link InputStreamBuffer} (for instance through {@link SplittableInputStream#getChannel()}),
+ * bytes that have not been buffered yet are read from the original input stream.
+ * Otherwise reading at an unbuffered position reads <code>0</code> bytes.
+ *
+ * The methods {@link #position()}, {@link #position(long)}, and {@link #size()}
+ * follow <code>SeekableByteChannel</code>, which is not available on all platforms we support.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision$
+ */
+public class FragmentBufferChannel implements ScatteringByteChannel {
+
+	private static final int FETCH_SIZE = 4096;
+
+	private FragmentBuffer buffer;
+
+	/** Used to fetch unbuffered bytes, <code>null</code> for a view on buffered bytes only. */
+	private InputStreamBuffer inputStreamBuffer;
+	private InputStream inputStream;
+	private int inputStreamPosition;
+
+	private int position;
+	private boolean isOpen;
+
+	/**
+	 * Creates a channel.
+	 *
+	 * @param buffer the buffer
+	 * @param inputStreamBuffer the input stream buffer to fetch unbuffered bytes from, or <code>null</code>
+	 */
+	FragmentBufferChannel(FragmentBuffer buffer, InputStreamBuffer inputStreamBuffer) {
+		this.buffer = buffer;
+		this.inputStreamBuffer = inputStreamBuffer;
+		this.position = 0;
+		this.isOpen = true;
+	}
+
+	public int read(ByteBuffer dst) throws IOException {
+		if (!isOpen) { throw new ClosedChannelException(); }
+		if (position >= buffer.getLength()) { return -1; }
+		int length = Math.min(dst.remaining(), buffer.getLength() - position);
+		if (length == 0) { return 0; }
+		int bufferedLength = buffer.getBufferedLength(position);
+		if (bufferedLength > 0) {
+			length = Math.min(length, bufferedLength);
+			buffer.getBytes(position, dst, length);
+			position += length;
+			return length;
+		}
+		if (inputStreamBuffer == null) { return 0; }
+
+		/* Not buffered yet, read through the input stream buffer (which buffers the bytes as a side effect). */
+		byte[] bytes = new byte[Math.min(length, FETCH_SIZE)];
+		int bytesRead = getInputStream().read(bytes, 0, bytes.length);
+		if (bytesRead < 0) { return -1; }
+		dst.put(bytes, 0, bytesRead);
+		position += bytesRead;
+		inputStreamPosition += bytesRead;
+		return bytesRead;
+	}
+
+	public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+		if (offset < 0 || length < 0 || offset > dsts.length - length) { throw new IndexOutOfBoundsException(); }
+		long result = 0;
+		for (int i = offset; i < offset + length; i++) {
+			while (dsts[i].hasRemaining()) {
+				int bytesRead = read(dsts[i]);
+				if (bytesRead < 0) { return result > 0 ? result : -1; }
+				if (bytesRead == 0) { return result; }
+				result += bytesRead;
+			}
+		}
+		return result;
+	}
+
+	public long read(ByteBuffer[] dsts) throws IOException {
+		return read(dsts, 0, dsts.length);
+	}
+
+	/**
+	 * Writes the bytes from the current position up to the end to <code>target</code>.
+	 * Buffered bytes are written from (read-only views on) the buffer, without copying.
+	 *
+	 * @param target the channel to write to
+	 *
+	 * @return the number of bytes written
+	 *
+	 * @throws IOException on error reading or writing
+	 */
+	public long transferTo(WritableByteChannel target) throws IOException {
+		if (!isOpen) { throw new ClosedChannelException(); }
+		long result = 0;
+		ByteBuffer fetchBuffer = null;
+		while (position < buffer.getLength()) {
+			int bufferedLength = buffer.getBufferedLength(position);
+			if (bufferedLength > 0) {
+				ByteBuffer view = buffer.getByteBuffer(position, bufferedLength);
+				while (view.hasRemaining()) { target.write(view); }
+				position += bufferedLength;
+				result += bufferedLength;
+			} else {
+				if (fetchBuffer == null) { fetchBuffer = ByteBuffer.allocate(FETCH_SIZE); }
+				fetchBuffer.clear();
+				int bytesRead = read(fetchBuffer);
+				if (bytesRead <= 0) { break; }
+				fetchBuffer.flip();
+				while (fetchBuffer.hasRemaining()) { target.write(fetchBuffer); }
+				result += bytesRead;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the position of this channel.
+	 *
+	 * @return the position
+	 */
+	public long position() throws IOException {
+		if (!isOpen) { throw new ClosedChannelException(); }
+		return position;
+	}
+
+	/**
+	 * Sets the position of this channel. Setting the position beyond the
+	 * size causes subsequent reads to signal end of file.
+	 *
+	 * @param newPosition the new position
+	 *
+	 * @return this channel
+	 */
+	public FragmentBufferChannel position(long newPosition) throws IOException {
+		if (!isOpen) { throw new ClosedChannelException(); }
+		if (newPosition < 0) { throw new IllegalArgumentException("Negative position " + newPosition); }
+		this.position = (int)Math.min(newPosition, Integer.MAX_VALUE);
+		return this;
+	}
+
+	/**
+	 * Gets the size of the file.
+	 *
+	 * @return the size
+	 */
+	public long size() throws IOException {
+		if (!isOpen) { throw new ClosedChannelException(); }
+		return buffer.getLength();
+	}
+
+	public boolean isOpen() {
+		return isOpen;
+	}
+
+	public void close() throws IOException {
+		isOpen = false;
+		inputStream = null;
+	}
+
+	/**
+	 * Gets an input stream from the input stream buffer, positioned at the position of this channel.
+	 *
+	 * @return an input stream
+	 *
+	 * @throws IOException on error skipping to the position
+	 */
+	private InputStream getInputStream() throws IOException {
+		if (inputStream == null || inputStreamPosition != position) {
+			inputStream = inputStreamBuffer.getInputStream();
+			inputStreamPosition = 0;
+			while (inputStreamPosition < position) {
+				long skippedBytes = inputStream.skip(position - inputStreamPosition);
+				if (skippedBytes <= 0) { throw new IOException("Could not skip to position " + position); }
+				inputStreamPosition += (int)skippedBytes;
+			}
+		}
+		return inputStream;
+	}
+}
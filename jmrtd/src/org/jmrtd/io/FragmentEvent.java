@@ -0,0 +1,84 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2015  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id$
+ */
+
+package org.jmrtd.io;
+
+import java.util.EventObject;
+
+/**
+ * Event indicating that bytes were added to a {@link FragmentBuffer}.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision$
+ */
+public class FragmentEvent extends EventObject {
+
+	private static final long serialVersionUID = 2416839185406327811L;
+
+	private int offset;
+	private int length;
+
+	/**
+	 * Creates an event.
+	 *
+	 * @param source the buffer the bytes were added to
+	 * @param offset the offset of the added bytes
+	 * @param length the number of added bytes
+	 */
+	public FragmentEvent(FragmentBuffer source, int offset, int length) {
+		super(source);
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Gets the buffer that the bytes were added to.
+	 *
+	 * @return the buffer
+	 */
+	public FragmentBuffer getBuffer() {
+		return (FragmentBuffer)getSource();
+	}
+
+	/**
+	 * Gets the offset of the added bytes.
+	 *
+	 * @return the offset
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Gets the number of added bytes.
+	 *
+	 * @return the length
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	public String toString() {
+		return "FragmentEvent [" + offset + " .. " + (offset + length - 1) + " (" + length + ")]";
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2015  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id$
+ */
+
+package org.jmrtd.io;
+
+import java.util.EventListener;
+
+/**
+ * Listener for bytes arriving in a {@link FragmentBuffer}.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision$
+ */
+public interface FragmentListener extends EventListener {
+
+	/**
+	 * Called after bytes have been added to the buffer. This is called
+	 * on the thread that added the bytes (typically the thread reading
+	 * from the card), implementations should return quickly.
+	 *
+	 * @param event the event, indicating the fragment that was added
+	 */
+	void fragmentAdded(FragmentEvent event);
+}
@@ -24,6 +24,7 @@ package org.jmrtd.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.jmrtd.io.FragmentBuffer.Fragment;
 
@@ -38,6 +39,8 @@ import org.jmrtd.io.FragmentBuffer.Fragment;
  */
 public class InputStreamBuffer {
 
+	private static final int TRANSFER_BUFFER_SIZE = 4096;
+
 	private PositionInputStream carrier;
 	private FragmentBuffer buffer;
 
@@ -48,9 +51,20 @@ public class InputStreamBuffer {
 	 * @param length the length of the input stream
 	 */
 	public InputStreamBuffer(InputStream inputStream, int length) {
+		this(inputStream, length, null);
+	}
+
+	/**
+	 * Creates an input stream buffer.
+	 * 
+	 * @param inputStream the input stream
+	 * @param length the length of the input stream
+	 * @param pool the pool to acquire the buffer from, or <code>null</code> to use a heap array
+	 */
+	public InputStreamBuffer(InputStream inputStream, int length, BufferPool pool) {
 		this.carrier = new PositionInputStream(inputStream);
 		this.carrier.mark(length);
-		this.buffer = new FragmentBuffer(length);
+		this.buffer = new FragmentBuffer(length, pool);
 	}
 
 	/**
@@ -85,6 +99,69 @@ public class InputStreamBuffer {
 		return buffer.getLength();
 	}
 
+	/**
+	 * Gets an input stream positioned at <code>position</code> that does not read from the
+	 * original input stream, but waits for bytes to be buffered by readers of the other
+	 * input streams.
+	 * 
+	 * @param position the position
+	 * 
+	 * @return a progressive input stream
+	 */
+	public ProgressiveInputStream getProgressiveInputStream(int position) {
+		return new ProgressiveInputStream(buffer, position);
+	}
+
+	/**
+	 * Gets a progressive input stream over <code>length</code> bytes starting at <code>position</code>.
+	 * 
+	 * @param position the position
+	 * @param length the number of bytes
+	 * 
+	 * @return a progressive input stream
+	 */
+	public ProgressiveInputStream getProgressiveInputStream(int position, int length) {
+		return new ProgressiveInputStream(buffer, position, length);
+	}
+
+	/**
+	 * Gets a channel over the buffered bytes that reads unbuffered bytes from
+	 * the original input stream.
+	 * 
+	 * @return a channel positioned at <code>0</code>
+	 */
+	public FragmentBufferChannel getChannel() {
+		return new FragmentBufferChannel(buffer, this);
+	}
+
+	/**
+	 * Adds a listener that is notified when bytes are buffered.
+	 * 
+	 * @param l the listener
+	 */
+	public void addFragmentListener(FragmentListener l) {
+		buffer.addFragmentListener(l);
+	}
+
+	/**
+	 * Removes a listener.
+	 * 
+	 * @param l the listener
+	 */
+	public void removeFragmentListener(FragmentListener l) {
+		buffer.removeFragmentListener(l);
+	}
+
+	/**
+	 * Returns a pooled buffer to its pool. The buffered bytes are
+	 * no longer available afterwards.
+	 */
+	public void release() {
+		synchronized(carrier) {
+			buffer.release();
+		}
+	}
+
 	public String toString() {
 		return "InputStreamBuffer [" + buffer + "]";
 	}
@@ -108,13 +185,17 @@ public class InputStreamBuffer {
 		}
 
 		public int read() throws IOException {
+			if (position < buffer.getLength() && buffer.isCoveredByFragment(position)) {
+				/* Serve the byte from the buffer, buffered bytes never change so no need to lock. */
+				return buffer.getByte(position++) & 0xFF;
+			}
 			synchronized(syncObject) {
 				if (position >= buffer.getLength()) {
 					/* FIXME: Is this correct? Isn't buffer capable of growing dynamically? -- MO */
 					return -1;
 				} else if (buffer.isCoveredByFragment(position)) {
 					/* Serve the byte from the buffer */
-					return buffer.getBuffer()[position++] & 0xFF;
+					return buffer.getByte(position++) & 0xFF;
 				} else {
 					/* Get it from the carrier */
 					if (carrier.markSupported()) {
@@ -138,59 +219,109 @@ public class InputStreamBuffer {
 		}
 
 		public int read(byte[] b) throws IOException {
-			synchronized(syncObject) {
-				return read(b, 0, b.length);
-			}
+			return read(b, 0, b.length);
 		}
 
 		public int read(byte[] b, int off, int len) throws IOException {
+			if (b == null) {
+				throw new NullPointerException();
+			} else if (off < 0 || len < 0 || len > b.length - off) {
+				throw new IndexOutOfBoundsException();
+			} else if (len == 0) {
+				return 0;
+			}
+
+			if (position >= buffer.getLength()) {
+				/* FIXME: is this correct? See FIXME in read(). */
+				return -1;
+			}
+
+			if (len > buffer.getLength() - position) {
+				len = buffer.getLength() - position;
+			}
+
+			/* Serve the buffered range starting at position, without locking. */
+			int bufferedLength = buffer.getBufferedLength(position);
+			if (bufferedLength > 0) {
+				int length = Math.min(len, bufferedLength);
+				buffer.getBytes(position, b, off, length);
+				position += length;
+				return length;
+			}
+
 			synchronized(syncObject) {
-				if (b == null) {
-					throw new NullPointerException();
-				} else if (off < 0 || len < 0 || len > b.length - off) {
-					throw new IndexOutOfBoundsException();
-				} else if (len == 0) {
-					return 0;
+				Fragment fragment = buffer.getSmallestUnbufferedFragment(position, len);
+				if (fragment.getLength() <= 0) {
+					/* Buffered in the mean time by another reader. */
+					buffer.getBytes(position, b, off, len);
+					position += len;
+					return len;
 				}
 
-				if (len > buffer.getLength() - position) {
-					len = buffer.getLength() - position;
-				}
-				
+				/* Copy buffered prefix to b. */
+				int alreadyBufferedPrefixLength = fragment.getOffset() - position;
+				buffer.getBytes(position, b, off, alreadyBufferedPrefixLength);
+				position += alreadyBufferedPrefixLength;
+
+				/* Read unbuffered fragment from carrier, directly to b, in as few calls as the carrier allows. */
 				if (carrier.markSupported()) {
 					syncCarrierPosition();
 				}
-				
-				if (position >= buffer.getLength()) {
-					/* FIXME: is this correct? See FIXME in read(). */
-					return -1;
+				int destOffset = off + alreadyBufferedPrefixLength;
+				int bytesReadFromCarrier = 0;
+				while (bytesReadFromCarrier < fragment.getLength()) {
+					int count = carrier.read(b, destOffset + bytesReadFromCarrier, fragment.getLength() - bytesReadFromCarrier);
+					if (count < 0) { break; }
+					buffer.addFragment(fragment.getOffset() + bytesReadFromCarrier, b, destOffset + bytesReadFromCarrier, count);
+					bytesReadFromCarrier += count;
+					position += count;
 				}
 
-				Fragment fragment = buffer.getSmallestUnbufferedFragment(position, len);
-				if (fragment.getLength() > 0) {
-					/* Copy buffered prefix to b. */
-					int alreadyBufferedPrefixLength = fragment.getOffset() - position;
-					System.arraycopy(buffer.getBuffer(), position, b, off, alreadyBufferedPrefixLength);
-					position += alreadyBufferedPrefixLength;
-
-					/* Read unbuffered fragment from carrier, directly to b. */
-					int bytesReadFromCarrier = carrier.read(b, off + alreadyBufferedPrefixLength, fragment.getLength());
-					buffer.addFragment(fragment.getOffset(), b, off, bytesReadFromCarrier);
-					position += bytesReadFromCarrier;
-
-					return alreadyBufferedPrefixLength + bytesReadFromCarrier;					
+				int result = alreadyBufferedPrefixLength + bytesReadFromCarrier;
+				return result > 0 ? result : -1;
+			}
+		}
+
+		/**
+		 * Reads all remaining bytes from this input stream and writes them to
+		 * <code>out</code>. Buffered ranges are written directly from the buffer.
+		 *
+		 * @param out the output stream to write to
+		 *
+		 * @return the number of bytes transferred
+		 *
+		 * @throws IOException if reading or writing fails
+		 */
+		public long transferTo(OutputStream out) throws IOException {
+			long result = 0;
+			byte[] chunk = null;
+			while (position < buffer.getLength()) {
+				int bufferedLength = buffer.getBufferedLength(position);
+				if (bufferedLength > 0) {
+					buffer.writeTo(position, bufferedLength, out);
+					position += bufferedLength;
+					result += bufferedLength;
 				} else {
-					int length = Math.min(len, buffer.getLength() - position);
-					System.arraycopy(buffer.getBuffer(), position, b, off, length);
-					position += length;
-					return length;
+					if (chunk == null) { chunk = new byte[TRANSFER_BUFFER_SIZE]; }
+					int bytesRead = read(chunk, 0, chunk.length);
+					if (bytesRead < 0) { break; }
+					out.write(chunk, 0, bytesRead);
+					result += bytesRead;
 				}
 			}
+			return result;
 		}
 
 		public long skip(long n) throws IOException {
+			if (n <= 0) { return 0; }
+			int leftInBuffer = buffer.getBufferedLength(position);
+			if (n <= leftInBuffer) {
+				/* If we can skip within the buffer, we do, without locking */
+				position += n;
+				return n;
+			}
 			synchronized(syncObject) {
-				int leftInBuffer = buffer.getBufferedLength(position);
+				leftInBuffer = buffer.getBufferedLength(position);
 
 				if (n <= leftInBuffer) {
 					/* If we can skip within the buffer, we do */
@@ -24,6 +24,7 @@ package org.jmrtd.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.logging.Logger;
 
 public class PositionInputStream extends InputStream {
@@ -32,6 +33,8 @@ public class PositionInputStream extends InputStream {
 
 	private static final long MARK_NOT_SET = -1L;
 
+	private static final int TRANSFER_BUFFER_SIZE = 4096;
+
 	private InputStream carrier;
 
 	private long position;
@@ -55,9 +58,29 @@ public class PositionInputStream extends InputStream {
 	
 	public int read(byte[] dest, int offset, int length) throws IOException {
 		int bytesRead = carrier.read(dest, offset, length);
-		position += bytesRead;
+		if (bytesRead > 0) { position += bytesRead; }
 		return bytesRead;
 	}
+
+	/**
+	 * Reads all remaining bytes from the carrier and writes them to <code>out</code>.
+	 * 
+	 * @param out the output stream to write to
+	 * 
+	 * @return the number of bytes transferred
+	 * 
+	 * @throws IOException if reading or writing fails
+	 */
+	public long transferTo(OutputStream out) throws IOException {
+		byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+		long result = 0;
+		int bytesRead = 0;
+		while ((bytesRead = read(buffer, 0, buffer.length)) >= 0) {
+			out.write(buffer, 0, bytesRead);
+			result += bytesRead;
+		}
+		return result;
+	}
 	
 	public long skip(long n) throws IOException {
 		long skippedBytes = carrier.skip(n);
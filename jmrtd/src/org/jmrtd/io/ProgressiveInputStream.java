@@ -0,0 +1,227 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2015  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id$
+ */
+
+package org.jmrtd.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * An input stream over a {@link FragmentBuffer} that is being filled by
+ * another reader (for instance the thread reading a file from the card).
+ * This stream never reads from the original input stream itself, instead
+ * reads block until the requested bytes arrive in the buffer.
+ *
+ * This allows progressive decoders (for instance progressive JPEG or
+ * JPEG 2000 quality layers) to start while the file is still being read.
+ * The consumer pulls bytes at its own pace, the buffer holds the complete
+ * file, so the reader filling the buffer is never held up by consumers.
+ * Use {@link #available()} to find out how many bytes can be read without blocking.
+ *
+ * A read that has to wait only returns when the bytes arrive, when the stream is
+ * closed (for instance from another thread), or when the timeout expires. If the
+ * bytes may never arrive (for instance because reading the card fails), callers
+ * must close the stream or set a timeout. The stream only listens to the buffer
+ * while a read is waiting, so abandoned streams are not referred to by the buffer.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision$
+ */
+public class ProgressiveInputStream extends InputStream {
+
+	private FragmentBuffer buffer;
+	private int position;
+
+	/** The position just after the last byte of this stream. */
+	private int end;
+
+	private int markedPosition;
+	private long timeout;
+	private volatile boolean isClosed;
+
+	/** Wakes up waiting readers when bytes arrive. */
+	private FragmentListener listener = new FragmentListener() {
+		public void fragmentAdded(FragmentEvent event) {
+			synchronized(this) {
+				notifyAll();
+			}
+		}
+	};
+
+	/**
+	 * Creates an input stream positioned at <code>position</code>, ending at the end of the buffer.
+	 *
+	 * @param buffer the buffer being filled
+	 * @param position the initial position
+	 */
+	ProgressiveInputStream(FragmentBuffer buffer, int position) {
+		this(buffer, position, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Creates an input stream over <code>length</code> bytes starting at <code>position</code>.
+	 *
+	 * @param buffer the buffer being filled
+	 * @param position the initial position
+	 * @param length the number of bytes, or {@link Integer#MAX_VALUE} to end at the end of the buffer
+	 */
+	ProgressiveInputStream(FragmentBuffer buffer, int position, int length) {
+		if (position < 0 || length < 0) { throw new IllegalArgumentException("Negative position " + position + " or length " + length); }
+		this.buffer = buffer;
+		this.position = position;
+		this.end = length == Integer.MAX_VALUE ? Integer.MAX_VALUE : position + length;
+		this.markedPosition = -1;
+		this.timeout = 0;
+		this.isClosed = false;
+	}
+
+	/**
+	 * Sets the maximum time to wait for bytes to arrive.
+	 * A read that times out throws an {@link InterruptedIOException}.
+	 *
+	 * @param timeout the timeout in milliseconds, <code>0</code> means wait indefinitely
+	 */
+	public void setTimeout(long timeout) {
+		if (timeout < 0) { throw new IllegalArgumentException("Negative timeout " + timeout); }
+		this.timeout = timeout;
+	}
+
+	public int read() throws IOException {
+		if (!waitForBytes()) { return -1; }
+		return buffer.getByte(position++) & 0xFF;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (b == null) {
+			throw new NullPointerException();
+		} else if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		} else if (len == 0) {
+			return 0;
+		}
+		if (!waitForBytes()) { return -1; }
+		int length = Math.min(Math.min(len, buffer.getBufferedLength(position)), getEnd() - position);
+		buffer.getBytes(position, b, off, length);
+		position += length;
+		return length;
+	}
+
+	/**
+	 * Skips bytes, without waiting for them to arrive.
+	 *
+	 * @param n the number of bytes to skip
+	 *
+	 * @return the number of bytes skipped
+	 */
+	public long skip(long n) throws IOException {
+		if (n <= 0) { return 0; }
+		int skippedBytes = (int)Math.min(n, Math.max(0, getEnd() - position));
+		position += skippedBytes;
+		return skippedBytes;
+	}
+
+	/**
+	 * The number of bytes that have arrived at the current position.
+	 *
+	 * @return the number of bytes that can be read without blocking
+	 */
+	public int available() throws IOException {
+		return Math.max(0, Math.min(buffer.getBufferedLength(position), getEnd() - position));
+	}
+
+	/**
+	 * Closes this stream, a read waiting in another thread throws an {@link IOException}.
+	 */
+	public void close() throws IOException {
+		isClosed = true;
+		synchronized(listener) {
+			listener.notifyAll();
+		}
+	}
+
+	public synchronized void mark(int readLimit) {
+		markedPosition = position;
+	}
+
+	public synchronized void reset() throws IOException {
+		if (markedPosition < 0) { throw new IOException("Invalid reset, was mark() called?"); }
+		position = markedPosition;
+	}
+
+	public boolean markSupported() {
+		return true;
+	}
+
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * The end of this stream, which is never beyond the end of the buffer.
+	 *
+	 * @return a position
+	 */
+	private int getEnd() {
+		return Math.min(end, buffer.getLength());
+	}
+
+	/**
+	 * Waits until the byte at the current position has arrived,
+	 * listening to the buffer only while waiting.
+	 *
+	 * @return <code>false</code> if the current position is at the end of this stream
+	 *
+	 * @throws IOException if the stream was closed, the thread was interrupted, or the timeout expired
+	 */
+	private boolean waitForBytes() throws IOException {
+		if (isClosed) { throw new IOException("Stream closed"); }
+		if (position >= getEnd()) { return false; }
+		if (buffer.isCoveredByFragment(position)) { return true; }
+		long deadline = timeout == 0 ? 0 : System.currentTimeMillis() + timeout;
+		/* NOTE: added before checking the buffer again, so that bytes arriving in between are noticed. */
+		buffer.addFragmentListener(listener);
+		try {
+			synchronized(listener) {
+				while (!buffer.isCoveredByFragment(position)) {
+					if (isClosed) { throw new IOException("Stream closed"); }
+					if (position >= getEnd()) { return false; }
+					long waitTime = 0;
+					if (deadline != 0) {
+						waitTime = deadline - System.currentTimeMillis();
+						if (waitTime <= 0) { throw new InterruptedIOException("Timed out waiting for byte at position " + position); }
+					}
+					try {
+						listener.wait(waitTime);
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted waiting for byte at position " + position);
+					}
+				}
+			}
+		} finally {
+			buffer.removeFragmentListener(listener);
+		}
+		return true;
+	}
+}
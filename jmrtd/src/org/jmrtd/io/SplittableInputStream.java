@@ -24,6 +24,7 @@ package org.jmrtd.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.logging.Logger;
 
 /**
@@ -49,10 +50,29 @@ public class SplittableInputStream extends InputStream {
 	 * @param length the precise length of bytes that the original input stream provides
 	 */
 	public SplittableInputStream(InputStream inputStream, int length) {
-		this.inputStreamBuffer = new InputStreamBuffer(inputStream, length);
+		this(inputStream, length, null);
+	}
+
+	/**
+	 * Wraps an input stream so that copy streams can be split off.
+	 * 
+	 * @param inputStream the original input stream
+	 * @param length the precise length of bytes that the original input stream provides
+	 * @param pool the pool to acquire the buffer from, or <code>null</code> to use a heap array
+	 */
+	public SplittableInputStream(InputStream inputStream, int length, BufferPool pool) {
+		this.inputStreamBuffer = new InputStreamBuffer(inputStream, length, pool);
 		this.carrier = inputStreamBuffer.getInputStream();
 	}
 
+	/**
+	 * Returns a pooled buffer to its pool. This stream, and the streams
+	 * split off from it, should no longer be used afterwards.
+	 */
+	public void release() {
+		inputStreamBuffer.release();
+	}
+
 	public void updateFrom(SplittableInputStream other) {
 		inputStreamBuffer.updateFrom(other.inputStreamBuffer);
 	}
@@ -77,6 +97,62 @@ public class SplittableInputStream extends InputStream {
 		}
 	}
 
+	/**
+	 * Gets an input stream positioned at <code>position</code> that does not read from the
+	 * original input stream itself. Reads block until the bytes have been read by this input
+	 * stream or by one of the copies, so that consumers can process bytes as they arrive.
+	 * 
+	 * @param position a position between <code>0</code> and {@link #getLength()}
+	 * 
+	 * @return a progressive input stream, which should be closed or given a timeout
+	 *         in case the bytes never arrive
+	 */
+	public ProgressiveInputStream getProgressiveInputStream(int position) {
+		return inputStreamBuffer.getProgressiveInputStream(position);
+	}
+
+	/**
+	 * Gets a progressive input stream over <code>length</code> bytes starting at <code>position</code>,
+	 * see {@link #getProgressiveInputStream(int)}.
+	 * 
+	 * @param position a position between <code>0</code> and {@link #getLength()}
+	 * @param length the number of bytes
+	 * 
+	 * @return a progressive input stream, which should be closed or given a timeout
+	 *         in case the bytes never arrive
+	 */
+	public ProgressiveInputStream getProgressiveInputStream(int position, int length) {
+		return inputStreamBuffer.getProgressiveInputStream(position, length);
+	}
+
+	/**
+	 * Gets a channel over the contents of this input stream. The channel is independent of
+	 * this input stream (and of its copies), bytes read through the channel are buffered.
+	 * 
+	 * @return a channel positioned at <code>0</code>
+	 */
+	public FragmentBufferChannel getChannel() {
+		return inputStreamBuffer.getChannel();
+	}
+
+	/**
+	 * Adds a listener that is notified when bytes have been read from the original input stream.
+	 * 
+	 * @param l the listener
+	 */
+	public void addFragmentListener(FragmentListener l) {
+		inputStreamBuffer.addFragmentListener(l);
+	}
+
+	/**
+	 * Removes a listener.
+	 * 
+	 * @param l the listener
+	 */
+	public void removeFragmentListener(FragmentListener l) {
+		inputStreamBuffer.removeFragmentListener(l);
+	}
+
 	/**
 	 * The position of the input stream (the number of bytes read since this input stream was constructed)
 	 * 
@@ -102,6 +178,38 @@ public class SplittableInputStream extends InputStream {
 		return carrier.read();
 	}
 
+	/**
+	 * Reads up to <code>len</code> bytes of data from the input stream into
+	 * an array of bytes. Buffered bytes are copied in bulk, unbuffered bytes
+	 * are read from the original input stream in one go.
+	 *
+	 * @param b the buffer into which the data is read
+	 * @param off the start offset in array <code>b</code>
+	 * @param len the maximum number of bytes to read
+	 *
+	 * @return the total number of bytes read into the buffer, or <code>-1</code>
+	 *         if the end of the stream has been reached
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	public int read(byte[] b, int off, int len) throws IOException {
+		return carrier.read(b, off, len);
+	}
+
+	/**
+	 * Reads all remaining bytes from this input stream and writes them to
+	 * <code>out</code>, directly from the buffer where possible.
+	 *
+	 * @param out the output stream to write to
+	 *
+	 * @return the number of bytes transferred
+	 *
+	 * @throws IOException if reading or writing fails
+	 */
+	public long transferTo(OutputStream out) throws IOException {
+		return carrier.transferTo(out);
+	}
+
 	/**
 	 * Skips over and discards <code>n</code> bytes of data from this input
 	 * stream. The <code>skip</code> method may, for a variety of reasons, end
@@ -25,12 +25,16 @@ package org.jmrtd.lds;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.logging.Logger;
 
+import org.jmrtd.io.ByteBufferInputStream;
+import org.jmrtd.io.ProgressiveInputStream;
 import org.jmrtd.io.SplittableInputStream;
 
 /**
@@ -51,6 +55,7 @@ abstract class AbstractImageInfo implements ImageInfo {
 	private byte[] imageBytes;
 
 	private SplittableInputStream splittableInputStream;
+	private ByteBuffer imageBuffer;
 	int imagePositionInInputStream;
 	int imageLength;
 
@@ -148,6 +153,8 @@ abstract class AbstractImageInfo implements ImageInfo {
 			return imageLength;
 			/* DEBUG: END */
 
+		} else if (imageBuffer != null) {
+			return imageBuffer.capacity();
 		} else if (imageBytes != null) {
 			return imageBytes.length;
 		} else {
@@ -228,6 +235,8 @@ abstract class AbstractImageInfo implements ImageInfo {
 			InputStream imageInputStream = splittableInputStream.getInputStream(imagePositionInInputStream);
 			return imageInputStream;
 			/* DEBUG: END */
+		} else if (imageBuffer != null) {
+			return new ByteBufferInputStream(imageBuffer);
 		} else if (imageBytes != null) {
 			return new ByteArrayInputStream(imageBytes);
 		} else {
@@ -235,6 +244,46 @@ abstract class AbstractImageInfo implements ImageInfo {
 		}
 	}
 
+	/**
+	 * Gets the encoded image as an input stream that waits for the image bytes to be read
+	 * by other readers (for instance a thread reading the image from the card through
+	 * {@link #getImageInputStream()}) instead of reading them itself, so that a progressive
+	 * decoder can start on the part of the image that has arrived. An image constructed from
+	 * bytes, or parsed from a {@link ByteBufferInputStream}, is returned as by
+	 * {@link #getImageInputStream()}.
+	 * 
+	 * Reads wait until the bytes arrive. Callers must close the stream when no longer used,
+	 * or give a timeout, in case the bytes never arrive.
+	 * 
+	 * @param timeout the maximum time in milliseconds that a read waits, <code>0</code> means wait indefinitely
+	 * 
+	 * @return an input stream containing the encoded image
+	 * 
+	 * @see ProgressiveInputStream
+	 */
+	public InputStream getProgressiveImageInputStream(long timeout) {
+		if (splittableInputStream == null) { return getImageInputStream(); }
+		ProgressiveInputStream imageInputStream = splittableInputStream.getProgressiveInputStream(imagePositionInInputStream, imageLength);
+		imageInputStream.setTimeout(timeout);
+		return imageInputStream;
+	}
+
+	/**
+	 * Gets the encoded image as a read-only byte buffer.
+	 * If this image info was parsed from a {@link ByteBufferInputStream}
+	 * the result is a slice of the original buffer and no bytes are copied.
+	 * 
+	 * @return a buffer containing the encoded image
+	 * 
+	 * @throws IOException on error reading the image bytes
+	 */
+	public ByteBuffer getImageBuffer() throws IOException {
+		if (imageBuffer != null) {
+			return imageBuffer.duplicate();
+		}
+		return ByteBuffer.wrap(getImageBytes()).asReadOnlyBuffer();
+	}
+
 	/**
 	 * Clients should call this method after positioning the input stream to the
 	 * image bytes.
@@ -246,25 +295,59 @@ abstract class AbstractImageInfo implements ImageInfo {
 	 */
 	protected void readImage(InputStream inputStream, long imageLength) throws IOException {
 		/* DEBUG: START */
-		if (inputStream instanceof SplittableInputStream) {
+		if (inputStream instanceof ByteBufferInputStream) {
+			ByteBufferInputStream byteBufferInputStream = (ByteBufferInputStream)inputStream;
+			int remainingLength = byteBufferInputStream.available();
+			if (imageLength < 0 || imageLength > remainingLength) {
+				throw new EOFException("Image length " + imageLength + " exceeds the remaining " + remainingLength + " bytes");
+			}
+			this.imageBytes = null;
+			this.splittableInputStream = null;
+			this.imagePositionInInputStream = byteBufferInputStream.getPosition();
+			this.imageLength = (int)imageLength;
+			this.imageBuffer = byteBufferInputStream.getBuffer(imagePositionInInputStream, this.imageLength);
+			skipImage(byteBufferInputStream, imageLength);
+		} else if (inputStream instanceof SplittableInputStream) {
 			this.imageBytes = null;
+			this.imageBuffer = null;
 			this.splittableInputStream = (SplittableInputStream)inputStream;
 			this.imagePositionInInputStream = splittableInputStream.getPosition();
 
 			this.imageLength = (int)imageLength;
-			long skippedBytes = 0;
-			while (skippedBytes < imageLength) {
-				skippedBytes += splittableInputStream.skip(imageLength - skippedBytes);
-			}
+			skipImage(splittableInputStream, imageLength);
 		} else {
 			/* DEBUG: END */
 			this.splittableInputStream = null;
+			this.imageBuffer = null;
 			this.imageBytes = new byte[(int)imageLength];
 			DataInputStream dataIn = new DataInputStream(inputStream);
 			dataIn.readFully(this.imageBytes);
 		}
 	}
 
+	/**
+	 * Skips over the image bytes, failing like {@link DataInputStream#readFully(byte[])} if the stream ends early.
+	 * 
+	 * @param inputStream input stream
+	 * @param imageLength image length
+	 * 
+	 * @throws IOException if the stream ends before the image does
+	 */
+	private static void skipImage(InputStream inputStream, long imageLength) throws IOException {
+		long skippedBytes = 0;
+		while (skippedBytes < imageLength) {
+			long n = inputStream.skip(imageLength - skippedBytes);
+			if (n <= 0) {
+				/* NOTE: skip may skip nothing without being at the end, read tells the two apart. */
+				if (inputStream.read() < 0) {
+					throw new EOFException("Image truncated after " + skippedBytes + " of " + imageLength + " bytes");
+				}
+				n = 1;
+			}
+			skippedBytes += n;
+		}
+	}
+
 	protected void writeImage(OutputStream outputStream) throws IOException {
 		outputStream.write(getImageBytes());
 	}
@@ -27,6 +27,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Abstract base class for several data structures used in the LDS
@@ -42,8 +43,14 @@ abstract class AbstractListInfo<R> extends AbstractLDSInfo {
 
 	private static final long serialVersionUID = 2970076896364365191L;
 
+	/* Source of modification stamps, increasing over all instances. */
+	private static final AtomicLong MODIFICATION_COUNTER = new AtomicLong();
+
 	private List<R> subRecords;
 
+	/** Set from the counter whenever the list of sub-records changes. */
+	private transient volatile long modificationStamp;
+
 	List<R> getSubRecords() {
 		if (this.subRecords == null) { this.subRecords = new ArrayList<R>(); }
 		return new ArrayList<R>(this.subRecords);
@@ -52,16 +59,37 @@ abstract class AbstractListInfo<R> extends AbstractLDSInfo {
 	void add(R subRecord) {
 		if (this.subRecords == null) { this.subRecords = new ArrayList<R>(); }
 		this.subRecords.add(subRecord);
+		modificationStamp = MODIFICATION_COUNTER.incrementAndGet();
 	}
 
 	void addAll(List<R> subRecords) {
 		if (this.subRecords == null) { this.subRecords = new ArrayList<R>(); }
 		this.subRecords.addAll(subRecords);
+		modificationStamp = MODIFICATION_COUNTER.incrementAndGet();
 	}
 
 	void remove(int index) {
 		if (this.subRecords == null) { this.subRecords = new ArrayList<R>(); }
 		this.subRecords.remove(index);
+		modificationStamp = MODIFICATION_COUNTER.incrementAndGet();
+	}
+
+	/**
+	 * Gets the stamp of the most recent change to this list, or to the lists of its sub-records.
+	 * As the stamps increase over all instances, any change results in a larger stamp.
+	 * 
+	 * @return the stamp, 0 if nothing changed since construction
+	 */
+	long getModificationStamp() {
+		long result = modificationStamp;
+		if (subRecords != null) {
+			for (R subRecord: subRecords) {
+				if (subRecord instanceof AbstractListInfo<?>) {
+					result = Math.max(result, ((AbstractListInfo<?>)subRecord).getModificationStamp());
+				}
+			}
+		}
+		return result;
 	}
 
 	public boolean equals(Object other) {
@@ -30,10 +30,13 @@ import java.util.List;
 import java.util.Random;
 import java.util.logging.Logger;
 
+import net.sf.scuba.tlv.TLVInputStream;
 import net.sf.scuba.tlv.TLVOutputStream;
+import net.sf.scuba.tlv.TLVUtil;
 
 import org.jmrtd.cbeff.BiometricDataBlock;
 import org.jmrtd.cbeff.ISO781611;
+import org.jmrtd.io.SplittableInputStream;
 
 /**
  * Datagroup containing a list of biometric information templates (BITs).
@@ -79,16 +82,35 @@ abstract class CBEFFDataGroup<R extends BiometricDataBlock> extends DataGroup {
 	void add(R record) {
 		if (subRecords == null) { subRecords = new ArrayList<R>(); }
 		subRecords.add(record);
+		invalidateContent();
 	}
 
 	void addAll(List<R> records) {
 		if (subRecords == null) { subRecords = new ArrayList<R>(); }
 		subRecords.addAll(records);
+		invalidateContent();
 	}
 
 	void remove(int index) {
 		if (subRecords == null) { subRecords = new ArrayList<R>(); }
-		subRecords.remove(index);		
+		subRecords.remove(index);
+		invalidateContent();
+	}
+
+	/**
+	 * Records can be changed through their own add and remove methods,
+	 * the stamp makes sure the cached encoding reflects those changes.
+	 */
+	long getContentStamp() {
+		long result = 0;
+		if (subRecords != null) {
+			for (R record: subRecords) {
+				if (record instanceof AbstractListInfo<?>) {
+					result = Math.max(result, ((AbstractListInfo<?>)record).getModificationStamp());
+				}
+			}
+		}
+		return result;
 	}
 
 	List<R> getSubRecords() {
@@ -137,6 +159,27 @@ abstract class CBEFFDataGroup<R extends BiometricDataBlock> extends DataGroup {
 		return 7 * result + 11;
 	}
 
+	/**
+	 * Reads the datagroup tag and length from a copy of an input stream
+	 * containing an encoded datagroup.
+	 * 
+	 * @param inputStream the input stream
+	 * @param dataGroupTag the expected datagroup tag
+	 * 
+	 * @return the position of the BIT group in <code>inputStream</code>
+	 * 
+	 * @throws IOException on error reading from the input stream
+	 */
+	static int getBITGroupPosition(SplittableInputStream inputStream, int dataGroupTag) throws IOException {
+		TLVInputStream tlvIn = new TLVInputStream(inputStream.getInputStream(0));
+		int tag = tlvIn.readTag();
+		if (tag != dataGroupTag) {
+			throw new IllegalArgumentException("Was expecting tag " + Integer.toHexString(dataGroupTag) + ", found " + Integer.toHexString(tag));
+		}
+		int length = tlvIn.readLength();
+		return TLVUtil.getTagLength(tag) + TLVUtil.getLengthLength(length);
+	}
+
 	/**
 	 * Concrete implementations of EAC protected CBEFF DataGroups should call this
 	 * method at the end of their {@link #writeContent(OutputStream)} method to add
@@ -248,7 +248,7 @@ public class COMFile extends DataGroup { /* FIXME: strictly speaking this is not
 		if(tagList.contains(tag)) { return; }
 		tagList.add(tag);
 		Collections.sort(tagList);
-
+		invalidateContent();
 	}
 
 	protected void writeContent(OutputStream out) throws IOException {
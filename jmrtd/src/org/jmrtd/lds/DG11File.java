@@ -93,7 +93,12 @@ public class DG11File extends DataGroup {
 	CONTENT_SPECIFIC_CONSTRUCTED_TAG = 0xA0, // 5F0F is always used inside A0 constructed object
 	COUNT_TAG = 0x02; // Used in A0 constructed object to indicate single byte count of simple objects
 
-	private static final SimpleDateFormat SDF = new SimpleDateFormat("yyyyMMdd");
+	/* NOTE: SimpleDateFormat is not thread-safe, one instance per thread. */
+	private static final ThreadLocal<SimpleDateFormat> SDF = new ThreadLocal<SimpleDateFormat>() {
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("yyyyMMdd");
+		}
+	};
 
 	private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
 
@@ -354,13 +359,13 @@ public class DG11File extends DataGroup {
 				}
 			}
 			// in = in.replace("<", " ").trim();
-			fullDateOfBirth = SDF.parse(field);
+			fullDateOfBirth = SDF.get().parse(field);
 		} catch (ParseException pe) {
 			throw new IllegalArgumentException(pe.toString());
 		}
 	}
 
-	private synchronized void parseOtherName(byte[] value) {
+	private void parseOtherName(byte[] value) {
 		if (otherNames == null) { otherNames = new ArrayList<String>(); }
 		try {
 			String field = new String(value, "UTF-8");
@@ -564,6 +569,16 @@ public class DG11File extends DataGroup {
 		return custodyInformation;
 	}
 
+	/**
+	 * Lists such as the place of birth are returned as stored in this file,
+	 * and can be changed by the caller, so the encoding is not cached.
+	 * 
+	 * @return <code>false</code>
+	 */
+	protected boolean isContentCacheable() {
+		return false;
+	}
+
 	/**
 	 * Gets a textual representation of this file.
 	 * 
@@ -575,7 +590,7 @@ public class DG11File extends DataGroup {
 		result.append(nameOfHolder == null ? "" : nameOfHolder); result.append(", ");
 		result.append(otherNames == null || otherNames.size() == 0 ? "[]" : otherNames); result.append(", ");
 		result.append(personalNumber == null ? "" : personalNumber); result.append(", ");
-		result.append(fullDateOfBirth == null ? "" : SDF.format(fullDateOfBirth)); result.append(", ");
+		result.append(fullDateOfBirth == null ? "" : SDF.get().format(fullDateOfBirth)); result.append(", ");
 		result.append(placeOfBirth == null || placeOfBirth.size() == 0 ? "[]" : placeOfBirth.toString()); result.append(", ");
 		result.append(permanentAddress == null || permanentAddress.size() == 0 ? "[]" : permanentAddress.toString()); result.append(", ");
 		result.append(telephone == null ? "" : telephone); result.append(", ");
@@ -635,7 +650,7 @@ public class DG11File extends DataGroup {
 				break;
 			case FULL_DATE_OF_BIRTH_TAG:
 				tlvOut.writeTag(tag);
-				String fullDateOfBirthString = SDF.format(fullDateOfBirth);
+				String fullDateOfBirthString = SDF.get().format(fullDateOfBirth);
 				byte[] fullDateOfBirthBytes = Hex.hexStringToBytes(fullDateOfBirthString);
 				tlvOut.writeValue(fullDateOfBirthBytes);		
 				break;
@@ -67,8 +67,17 @@ public class DG12File extends DataGroup {
 			CONTENT_SPECIFIC_CONSTRUCTED_TAG = 0xA0, // 5F1A is always used inside A0 constructed object
 			COUNT_TAG = 0x02; // Used in A0 constructed object to indicate single byte count of simple objects
 
-	private static final SimpleDateFormat SDF = new SimpleDateFormat("yyyyMMdd");
-	private static final SimpleDateFormat SDTF = new SimpleDateFormat("yyyyMMddhhmmss");
+	/* NOTE: SimpleDateFormat is not thread-safe, one instance per thread. */
+	private static final ThreadLocal<SimpleDateFormat> SDF = new ThreadLocal<SimpleDateFormat>() {
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("yyyyMMdd");
+		}
+	};
+	private static final ThreadLocal<SimpleDateFormat> SDTF = new ThreadLocal<SimpleDateFormat>() {
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("yyyyMMddhhmmss");
+		}
+	};
 
 	private String issuingAuthority;
 	private Date dateOfIssue;
@@ -226,7 +235,7 @@ public class DG12File extends DataGroup {
 	private void parseDateAndTimeOfPersonalization(byte[] value) {
 		try {
 			String field = Hex.bytesToHexString(value);
-			dateAndTimeOfPersonalization = SDTF.parse(field.trim());
+			dateAndTimeOfPersonalization = SDTF.get().parse(field.trim());
 		} catch (ParseException pe) {
 			throw new IllegalArgumentException(pe.toString());
 		}
@@ -262,7 +271,7 @@ public class DG12File extends DataGroup {
 		}
 	}
 
-	private synchronized void parseNameOfOtherPerson(byte[] value) {
+	private void parseNameOfOtherPerson(byte[] value) {
 		if (namesOfOtherPersons == null) { namesOfOtherPersons = new ArrayList<String>(); }
 		try {
 			String field = new String(value, "UTF-8");
@@ -281,7 +290,7 @@ public class DG12File extends DataGroup {
 		if (value.length == 8) {
 			try {
 				String dateString = new String(value, "UTF-8");
-				dateOfIssue = SDF.parse(dateString.trim());
+				dateOfIssue = SDF.get().parse(dateString.trim());
 				return;
 			} catch (UnsupportedEncodingException usee) {
 				/* NOTE: never happens, UTF-8 is supported. */
@@ -297,7 +306,7 @@ public class DG12File extends DataGroup {
 		if (value.length == 4) {
 			try {
 				String dateString = Hex.bytesToHexString(value);
-				dateOfIssue = SDF.parse(dateString.trim());
+				dateOfIssue = SDF.get().parse(dateString.trim());
 				return;
 			} catch (ParseException e) {
 				/* NOTE: ok, something went wrong here, it's not the date format that we expect. */
@@ -407,6 +416,16 @@ public class DG12File extends DataGroup {
 		return EF_DG12_TAG;
 	}
 
+	/**
+	 * The names of other persons, the dates, and the images are returned as stored
+	 * in this file, and can be changed by the caller, so the encoding is not cached.
+	 * 
+	 * @return <code>false</code>
+	 */
+	protected boolean isContentCacheable() {
+		return false;
+	}
+
 	/**
 	 * Gets a textual representation of this file.
 	 * 
@@ -416,13 +435,13 @@ public class DG12File extends DataGroup {
 		StringBuffer result = new StringBuffer();
 		result.append("DG12File [");
 		result.append(issuingAuthority == null ? "" : issuingAuthority); result.append(", ");
-		result.append(dateOfIssue == null ? "" : SDF.format(dateOfIssue)); result.append(", ");
+		result.append(dateOfIssue == null ? "" : SDF.get().format(dateOfIssue)); result.append(", ");
 		result.append(namesOfOtherPersons == null || namesOfOtherPersons.size() == 0 ? "" : namesOfOtherPersons); result.append(", ");
 		result.append(endorseMentsAndObservations == null ? "" : endorseMentsAndObservations); result.append(", ");
 		result.append(taxOrExitRequirements == null ? "" : taxOrExitRequirements); result.append(", ");
 		result.append(imageOfFront == null ? "" : "image (" + imageOfFront.length + ")"); result.append(", ");
 		result.append(imageOfRear == null ? "" : "image (" + imageOfRear.length + ")"); result.append(", ");
-		result.append(dateAndTimeOfPersonalization == null ? "" : SDF.format(dateAndTimeOfPersonalization)); result.append(", ");
+		result.append(dateAndTimeOfPersonalization == null ? "" : SDF.get().format(dateAndTimeOfPersonalization)); result.append(", ");
 		result.append(personalizationSystemSerialNumber== null ? "" : personalizationSystemSerialNumber);
 		result.append("]");
 		return result.toString();
@@ -458,7 +477,7 @@ public class DG12File extends DataGroup {
 				break;
 			case DATE_OF_ISSUE_TAG:
 				tlvOut.writeTag(tag);
-				tlvOut.writeValue(new String(SDF.format(dateOfIssue)).getBytes("UTF-8"));
+				tlvOut.writeValue(new String(SDF.get().format(dateOfIssue)).getBytes("UTF-8"));
 				break;
 			case NAME_OF_OTHER_PERSON_TAG:
 				if (namesOfOtherPersons == null) { namesOfOtherPersons = new ArrayList<String>(); }
@@ -490,7 +509,7 @@ public class DG12File extends DataGroup {
 				break;
 			case DATE_AND_TIME_OF_PERSONALIZATION:
 				tlvOut.writeTag(tag);
-				tlvOut.writeValue(Hex.hexStringToBytes(SDTF.format(dateAndTimeOfPersonalization)));
+				tlvOut.writeValue(Hex.hexStringToBytes(SDTF.get().format(dateAndTimeOfPersonalization)));
 				break;
 			case PERSONALIZATION_SYSTEM_SERIAL_NUMBER_TAG:
 				tlvOut.writeTag(tag);
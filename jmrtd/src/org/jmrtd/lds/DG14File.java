@@ -207,6 +207,16 @@ public class DG14File extends DataGroup {
 		return securityInfos;
 	}
 
+	/**
+	 * The collection returned by {@link #getSecurityInfos()} is the one of this file,
+	 * so the encoding is not cached.
+	 * 
+	 * @return <code>false</code>
+	 */
+	protected boolean isContentCacheable() {
+		return false;
+	}
+
 	public String toString() {
 		return "DG14File [" + securityInfos.toString() + "]";
 	}
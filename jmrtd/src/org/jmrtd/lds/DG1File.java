@@ -84,6 +84,15 @@ public class DG1File extends DataGroup {
 		return mrzInfo;
 	}
 
+	/**
+	 * The MRZ information can be changed through its setters, so the encoding is not cached.
+	 * 
+	 * @return <code>false</code>
+	 */
+	protected boolean isContentCacheable() {
+		return false;
+	}
+
 	/**
 	 * Gets a textual representation of this file.
 	 * 
@@ -25,18 +25,21 @@ package org.jmrtd.lds;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Logger;
 
 import org.jmrtd.cbeff.BiometricDataBlock;
 import org.jmrtd.cbeff.BiometricDataBlockDecoder;
-import org.jmrtd.cbeff.BiometricDataBlockEncoder;
 import org.jmrtd.cbeff.CBEFFInfo;
 import org.jmrtd.cbeff.ComplexCBEFFInfo;
 import org.jmrtd.cbeff.ISO781611Decoder;
 import org.jmrtd.cbeff.ISO781611Encoder;
+import org.jmrtd.cbeff.LazyCBEFFInfo;
 import org.jmrtd.cbeff.SimpleCBEFFInfo;
+import org.jmrtd.cbeff.SizedBiometricDataBlockEncoder;
 import org.jmrtd.cbeff.StandardBiometricHeader;
+import org.jmrtd.io.SplittableInputStream;
 
 /**
  * File structure for the EF_DG2 file.
@@ -60,10 +63,14 @@ public class DG2File extends CBEFFDataGroup<FaceInfo> {
 		}
 	});
 
-	private static final ISO781611Encoder<FaceInfo> ENCODER = new ISO781611Encoder<FaceInfo>(new BiometricDataBlockEncoder<FaceInfo>() {
+	private static final ISO781611Encoder<FaceInfo> ENCODER = new ISO781611Encoder<FaceInfo>(new SizedBiometricDataBlockEncoder<FaceInfo>() {
 		public void encode(FaceInfo info, OutputStream outputStream) throws IOException {
 			info.writeObject(outputStream);
 		}
+
+		public int getEncodedLength(FaceInfo info) {
+			return (int)info.getRecordLength();
+		}
 	});
 	
 	/**
@@ -132,6 +139,20 @@ public class DG2File extends CBEFFDataGroup<FaceInfo> {
 	 */
 	public List<FaceInfo> getFaceInfos() { return getSubRecords(); }
 
+	/**
+	 * Reads the face infos in an encoded DG2File one at a time, without constructing the file.
+	 * The face infos are decoded when requested, see {@link LazyCBEFFInfo#getBiometricDataBlock()}.
+	 * 
+	 * @param inputStream an input stream containing the encoded file, which is read through copies
+	 * 
+	 * @return an iterator over the records in the file
+	 * 
+	 * @throws IOException on error reading the headers of the file
+	 */
+	public static Iterator<LazyCBEFFInfo<FaceInfo>> iterator(SplittableInputStream inputStream) throws IOException {
+		return DECODER.iterator(inputStream, getBITGroupPosition(inputStream, EF_DG2_TAG));
+	}
+
 	/**
 	 * Adds a face info to this file.
 	 * 
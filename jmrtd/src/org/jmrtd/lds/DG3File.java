@@ -25,18 +25,22 @@ package org.jmrtd.lds;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Logger;
 
 import org.jmrtd.cbeff.BiometricDataBlock;
 import org.jmrtd.cbeff.BiometricDataBlockDecoder;
-import org.jmrtd.cbeff.BiometricDataBlockEncoder;
 import org.jmrtd.cbeff.CBEFFInfo;
 import org.jmrtd.cbeff.ComplexCBEFFInfo;
 import org.jmrtd.cbeff.ISO781611Decoder;
 import org.jmrtd.cbeff.ISO781611Encoder;
+import org.jmrtd.cbeff.LazyCBEFFInfo;
 import org.jmrtd.cbeff.SimpleCBEFFInfo;
+import org.jmrtd.cbeff.SizedBiometricDataBlockEncoder;
 import org.jmrtd.cbeff.StandardBiometricHeader;
+import org.jmrtd.io.SplittableInputStream;
 
 /**
  * File structure for the EF_DG3 file.
@@ -58,10 +62,14 @@ public class DG3File extends CBEFFDataGroup<FingerInfo> {
 		}
 	});
 
-	private static final ISO781611Encoder<FingerInfo> ENCODER = new ISO781611Encoder<FingerInfo>(new BiometricDataBlockEncoder<FingerInfo>() {
+	private static final ISO781611Encoder<FingerInfo> ENCODER = new ISO781611Encoder<FingerInfo>(new SizedBiometricDataBlockEncoder<FingerInfo>() {
 		public void encode(FingerInfo info, OutputStream outputStream) throws IOException {
 			info.writeObject(outputStream);
 		}
+
+		public int getEncodedLength(FingerInfo info) {
+			return (int)info.getRecordLength();
+		}
 	});
 
 	private boolean shouldAddRandomDataIfEmpty;
@@ -146,6 +154,36 @@ public class DG3File extends CBEFFDataGroup<FingerInfo> {
 	 */
 	public List<FingerInfo> getFingerInfos() { return getSubRecords(); }
 
+	/**
+	 * Reads the finger infos in an encoded DG3File one at a time, without constructing the file.
+	 * The finger infos are decoded when requested, see {@link LazyCBEFFInfo#getBiometricDataBlock()}.
+	 * 
+	 * @param inputStream an input stream containing the encoded file, which is read through copies
+	 * 
+	 * @return an iterator over the records in the file
+	 * 
+	 * @throws IOException on error reading the headers of the file
+	 */
+	public static Iterator<LazyCBEFFInfo<FingerInfo>> iterator(SplittableInputStream inputStream) throws IOException {
+		return DECODER.iterator(inputStream, getBITGroupPosition(inputStream, EF_DG3_TAG));
+	}
+
+	/**
+	 * Decodes an encoded DG3File, decoding the finger infos in parallel.
+	 * The file is buffered completely before decoding starts.
+	 * 
+	 * @param inputStream an input stream containing the encoded file, which is read through copies
+	 * @param executor the executor to decode the finger infos on
+	 * 
+	 * @return the file, with the finger infos in their original order
+	 * 
+	 * @throws IOException on error reading or decoding the file
+	 */
+	public static DG3File decode(SplittableInputStream inputStream, ExecutorService executor) throws IOException {
+		List<FingerInfo> fingerInfos = DECODER.decode(inputStream, getBITGroupPosition(inputStream, EF_DG3_TAG), executor);
+		return new DG3File(fingerInfos, false);
+	}
+
 	/**
 	 * Adds a finger info to this file.
 	 * 
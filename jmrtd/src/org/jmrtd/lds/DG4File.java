@@ -25,17 +25,21 @@ package org.jmrtd.lds;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.jmrtd.cbeff.BiometricDataBlock;
 import org.jmrtd.cbeff.BiometricDataBlockDecoder;
-import org.jmrtd.cbeff.BiometricDataBlockEncoder;
 import org.jmrtd.cbeff.CBEFFInfo;
 import org.jmrtd.cbeff.ComplexCBEFFInfo;
 import org.jmrtd.cbeff.ISO781611Decoder;
 import org.jmrtd.cbeff.ISO781611Encoder;
+import org.jmrtd.cbeff.LazyCBEFFInfo;
 import org.jmrtd.cbeff.SimpleCBEFFInfo;
+import org.jmrtd.cbeff.SizedBiometricDataBlockEncoder;
 import org.jmrtd.cbeff.StandardBiometricHeader;
+import org.jmrtd.io.SplittableInputStream;
 
 /**
  * File structure for the EF_DG4 file.
@@ -55,10 +59,14 @@ public class DG4File extends CBEFFDataGroup<IrisInfo> {
 		}
 	});
 
-	private static final ISO781611Encoder<IrisInfo> ENCODER = new ISO781611Encoder<IrisInfo>(new BiometricDataBlockEncoder<IrisInfo>() {
+	private static final ISO781611Encoder<IrisInfo> ENCODER = new ISO781611Encoder<IrisInfo>(new SizedBiometricDataBlockEncoder<IrisInfo>() {
 		public void encode(IrisInfo info, OutputStream outputStream) throws IOException {
 			info.writeObject(outputStream);
 		}
+
+		public int getEncodedLength(IrisInfo info) {
+			return (int)info.getRecordLength();
+		}
 	});
 
 	private boolean shouldAddRandomDataIfEmpty;
@@ -143,6 +151,36 @@ public class DG4File extends CBEFFDataGroup<IrisInfo> {
 	 */
 	public List<IrisInfo> getIrisInfos() { return getSubRecords(); }
 
+	/**
+	 * Reads the iris infos in an encoded DG4File one at a time, without constructing the file.
+	 * The iris infos are decoded when requested, see {@link LazyCBEFFInfo#getBiometricDataBlock()}.
+	 * 
+	 * @param inputStream an input stream containing the encoded file, which is read through copies
+	 * 
+	 * @return an iterator over the records in the file
+	 * 
+	 * @throws IOException on error reading the headers of the file
+	 */
+	public static Iterator<LazyCBEFFInfo<IrisInfo>> iterator(SplittableInputStream inputStream) throws IOException {
+		return DECODER.iterator(inputStream, getBITGroupPosition(inputStream, EF_DG4_TAG));
+	}
+
+	/**
+	 * Decodes an encoded DG4File, decoding the iris infos in parallel.
+	 * The file is buffered completely before decoding starts.
+	 * 
+	 * @param inputStream an input stream containing the encoded file, which is read through copies
+	 * @param executor the executor to decode the iris infos on
+	 * 
+	 * @return the file, with the iris infos in their original order
+	 * 
+	 * @throws IOException on error reading or decoding the file
+	 */
+	public static DG4File decode(SplittableInputStream inputStream, ExecutorService executor) throws IOException {
+		List<IrisInfo> irisInfos = DECODER.decode(inputStream, getBITGroupPosition(inputStream, EF_DG4_TAG), executor);
+		return new DG4File(irisInfos, false);
+	}
+
 	/**
 	 * Adds an iris info to this file.
 	 * 
@@ -23,6 +23,7 @@
 package org.jmrtd.lds;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -30,7 +31,9 @@ import java.util.logging.Logger;
 
 import net.sf.scuba.tlv.TLVInputStream;
 import net.sf.scuba.tlv.TLVOutputStream;
+import net.sf.scuba.tlv.TLVUtil;
 
+import org.jmrtd.io.ByteBufferInputStream;
 import org.jmrtd.io.SplittableInputStream;
 
 /**
@@ -49,6 +52,12 @@ public abstract class DataGroup extends AbstractLDSFile {
 	private int dataGroupTag;
 	private int dataGroupLength;
 
+	/** Cached encoding of the value, <code>null</code> until needed or after the contents change. */
+	private transient volatile byte[] content;
+
+	/** The content stamp when the cached encoding and length were established. */
+	private transient volatile long contentStamp;
+
 	/**
 	 * Constructs a data group. This constructor
 	 * is only visible to the other classes in this package.
@@ -87,9 +96,30 @@ public abstract class DataGroup extends AbstractLDSFile {
 		if (tag != dataGroupTag) {
 			throw new IllegalArgumentException("Was expecting tag " + Integer.toHexString(dataGroupTag) + ", found " + Integer.toHexString(tag));
 		}
-		dataGroupLength = tlvIn.readLength();
-		inputStream = new SplittableInputStream(inputStream, dataGroupLength);
-		readContent(inputStream);
+		int length = tlvIn.readLength();
+		dataGroupLength = length;
+		if (inputStream instanceof ByteBufferInputStream) {
+			/* Already random access, parse directly from (a slice of) the buffer without copying. */
+			ByteBufferInputStream byteBufferIn = (ByteBufferInputStream)inputStream;
+			int contentPosition = byteBufferIn.getPosition();
+			int remainingLength = byteBufferIn.available();
+			if (length < 0 || length > remainingLength) {
+				throw new EOFException("Data group length " + length + " exceeds the remaining " + remainingLength + " bytes");
+			}
+			readContent(new ByteBufferInputStream(byteBufferIn.getBuffer(contentPosition, length)));
+			long skippedBytes = 0;
+			while (skippedBytes < length) {
+				skippedBytes += byteBufferIn.skip(length - skippedBytes);
+			}
+		} else {
+			inputStream = new SplittableInputStream(inputStream, length);
+			readContent(inputStream);
+		}
+
+		/* NOTE: readContent may have called invalidateContent, the length read is still valid. */
+		content = null;
+		dataGroupLength = length;
+		contentStamp = getContentStamp();
 	}
 
 	protected void writeObject(OutputStream outputStream) throws IOException {
@@ -103,6 +133,28 @@ public abstract class DataGroup extends AbstractLDSFile {
 		tlvOut.writeValue(value);
 	}
 
+	/**
+	 * Gets the contents of this data group as byte array,
+	 * includes the ICAO tag and length.
+	 * The value is encoded at most once until the contents change.
+	 * 
+	 * @return a byte array containing the data group
+	 */
+	public byte[] getEncoded() {
+		byte[] value = getContent();
+		if (value == null) { return null; }
+		int tag = getTag();
+		if (dataGroupTag != tag) { dataGroupTag = tag; }
+		if (dataGroupLength != value.length) { dataGroupLength = value.length; }
+		byte[] tagBytes = TLVUtil.getTagAsBytes(tag);
+		byte[] lengthBytes = TLVUtil.getLengthAsBytes(value.length);
+		byte[] result = new byte[tagBytes.length + lengthBytes.length + value.length];
+		System.arraycopy(tagBytes, 0, result, 0, tagBytes.length);
+		System.arraycopy(lengthBytes, 0, result, tagBytes.length, lengthBytes.length);
+		System.arraycopy(value, 0, result, tagBytes.length + lengthBytes.length, value.length);
+		return result;
+	}
+
 	/**
 	 * Reads the contents of the data group from an input stream.
 	 * Client code implementing this method should only read the contents
@@ -144,17 +196,60 @@ public abstract class DataGroup extends AbstractLDSFile {
 	}
 
 	/**
-	 * Gets the value part of this DG.
+	 * Subclasses should call this method whenever their contents change,
+	 * so that the cached encoding is discarded.
+	 */
+	protected void invalidateContent() {
+		content = null;
+		dataGroupLength = 0;
+	}
+
+	/**
+	 * Whether the encoding of this data group may be cached. Data groups that hand out
+	 * mutable parts of their contents (through setters of a nested object, or lists and arrays
+	 * returned by getters) cannot know when those change, and should return <code>false</code>.
+	 * They are encoded whenever needed.
+	 * 
+	 * @return whether the encoding is cached, <code>true</code> by default
+	 */
+	protected boolean isContentCacheable() {
+		return true;
+	}
+
+	/**
+	 * Gets a stamp of the nested objects of this data group which changes when they change,
+	 * for data groups whose nested objects can be changed without the data group knowing.
+	 * The cached encoding is used only while the stamp is unchanged.
+	 * 
+	 * @return the stamp, 0 by default
+	 */
+	long getContentStamp() {
+		return 0;
+	}
+
+	/**
+	 * Gets the value part of this DG. The encoding is cached until
+	 * {@link #invalidateContent()} is called or the content stamp changes.
 	 * 
 	 * @return the value as byte array
 	 */
 	private byte[] getContent() {
+		/* NOTE: Stamp before content, they are written in the opposite order. */
+		long stamp = contentStamp;
+		byte[] result = content;
+		long currentStamp = getContentStamp();
+		if (result != null && stamp == currentStamp) { return result; }
 		try {
 			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 			writeContent(outputStream);
 			outputStream.flush();
 			outputStream.close();
-			return outputStream.toByteArray();
+			result = outputStream.toByteArray();
+			if (isContentCacheable()) {
+				content = result;
+				contentStamp = currentStamp;
+			}
+			return result;
 		} catch (IOException ioe) {
 			LOGGER.severe("Exception: " + ioe.getMessage());
 			return null;
@@ -167,7 +262,7 @@ public abstract class DataGroup extends AbstractLDSFile {
 	 * @return the length of the value of the data group
 	 */
 	public int getLength() {
-		if (dataGroupLength <= 0) {
+		if (dataGroupLength <= 0 || !isContentCacheable() || contentStamp != getContentStamp()) {
 			dataGroupLength = getContent().length;
 		}
 		return dataGroupLength;
@@ -155,15 +155,8 @@ public class FaceInfo extends AbstractListInfo<FaceImageInfo> implements Biometr
 	 */
 	public void writeObject(OutputStream outputStream) throws IOException {		
 
-		int headerLength = 14; /* 4 + 4 + 4 + 2 (Section 5.4 of ISO/IEC 19794-5) */
-
-		long dataLength = 0;
 		List<FaceImageInfo> faceImageInfos = getSubRecords();
-		for (FaceImageInfo faceImageInfo: faceImageInfos) {
-			dataLength += faceImageInfo.getRecordLength();
-		}
-
-		long recordLength = headerLength + dataLength;
+		long recordLength = getRecordLength();
 
 		DataOutputStream dataOut = outputStream instanceof DataOutputStream ? (DataOutputStream)outputStream : new DataOutputStream(outputStream);
 
@@ -185,6 +178,20 @@ public class FaceInfo extends AbstractListInfo<FaceImageInfo> implements Biometr
 		}
 	}
 
+	/**
+	 * Gets the record length, i.e. the number of bytes written by {@link #writeObject(OutputStream)}.
+	 * 
+	 * @return the record length
+	 */
+	public long getRecordLength() {
+		long result = 14; /* 4 + 4 + 4 + 2 (Section 5.4 of ISO/IEC 19794-5) */
+		List<FaceImageInfo> faceImageInfos = getSubRecords();
+		for (FaceImageInfo faceImageInfo: faceImageInfos) {
+			result += faceImageInfo.getRecordLength();
+		}
+		return result;
+	}
+
 	/**
 	 * Gets the standard biometric header of this biometric data block
 	 * 
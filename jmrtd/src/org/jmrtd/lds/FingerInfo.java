@@ -338,15 +338,8 @@ public class FingerInfo extends AbstractListInfo<FingerImageInfo> implements Bio
 	 */
 	public void writeObject(OutputStream outputStream) throws IOException {
 
-		long headerLength = 32; /* 4 + 4 + 6 + 2 + 2 + 1 + 1 + 2 + 2 + 2 + 2 + 1 + 1 + 2 */
-
-		long dataLength = 0;
 		List<FingerImageInfo> fingerImageInfos = getSubRecords();
-		for (FingerImageInfo fingerImageInfo: fingerImageInfos) {
-			dataLength += fingerImageInfo.getRecordLength();
-		}
-
-		long recordLength = headerLength + dataLength;
+		long recordLength = getRecordLength();
 
 		/* General record header, should be 32... */
 
@@ -375,6 +368,20 @@ public class FingerInfo extends AbstractListInfo<FingerImageInfo> implements Bio
 		}
 	}
 
+	/**
+	 * Gets the record length, i.e. the number of bytes written by {@link #writeObject(OutputStream)}.
+	 * 
+	 * @return the record length
+	 */
+	public long getRecordLength() {
+		long result = 32; /* 4 + 4 + 6 + 2 + 2 + 1 + 1 + 2 + 2 + 2 + 2 + 1 + 1 + 2 */
+		List<FingerImageInfo> fingerImageInfos = getSubRecords();
+		for (FingerImageInfo fingerImageInfo: fingerImageInfos) {
+			result += fingerImageInfo.getRecordLength();
+		}
+		return result;
+	}
+
 	public String toString() {
 		StringBuffer result = new StringBuffer();
 		result.append("FingerInfo [");
@@ -347,13 +347,8 @@ public class IrisInfo extends AbstractListInfo<IrisBiometricSubtypeInfo> impleme
 
 		int headerLength = 45;
 
-		int dataLength = 0;
 		List<IrisBiometricSubtypeInfo> biometricSubtypeInfos = getSubRecords();
-		for (IrisBiometricSubtypeInfo biometricSubtypeInfo: biometricSubtypeInfos) {
-			dataLength += biometricSubtypeInfo.getRecordLength();
-		}
-
-		int recordLength = headerLength + dataLength;
+		int recordLength = (int)getRecordLength();
 
 		/* Iris Record Header (45) */
 
@@ -391,6 +386,20 @@ public class IrisInfo extends AbstractListInfo<IrisBiometricSubtypeInfo> impleme
 		}
 	}
 
+	/**
+	 * Gets the record length, i.e. the number of bytes written by {@link #writeObject(OutputStream)}.
+	 * 
+	 * @return the record length
+	 */
+	public long getRecordLength() {
+		long result = 45;
+		List<IrisBiometricSubtypeInfo> biometricSubtypeInfos = getSubRecords();
+		for (IrisBiometricSubtypeInfo biometricSubtypeInfo: biometricSubtypeInfos) {
+			result += biometricSubtypeInfo.getRecordLength();
+		}
+		return result;
+	}
+
 	/**
 	 * Gets the capture device id.
 	 * 
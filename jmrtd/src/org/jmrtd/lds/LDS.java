@@ -29,14 +29,22 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import org.jmrtd.PassportService;
+import org.jmrtd.cbeff.LazyCBEFFInfo;
+import org.jmrtd.io.BufferPool;
+import org.jmrtd.io.FragmentBufferChannel;
+import org.jmrtd.io.ProgressiveInputStream;
 import org.jmrtd.io.SplittableInputStream;
 
 /**
@@ -45,6 +53,14 @@ import org.jmrtd.io.SplittableInputStream;
  * This is basically a collection of input streams for the
  * data groups, combined with some status information (progress).
  * 
+ * Files are parsed from their input streams on first access, and constructed
+ * files are only encoded when their bytes are requested. Concurrent readers
+ * are supported, each file is parsed at most once while it is cached.
+ * Parsed biometric and image data groups (DG2 - DG7) are held in a least
+ * recently used cache of each instance, bounded by the total length of
+ * those files (see {@link #setParsedFileCacheSize(long)}). Files evicted from
+ * the cache are parsed again from the (buffered) bytes when needed.
+ * 
  * @author The JMRTD team
  * 
  * @version $Revision$
@@ -55,15 +71,82 @@ public class LDS {
 
 	private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
 
-	private Map<Short, LDSFile> files;
-	private Map<Short, SplittableInputStream> fetchers;
+	/** The default bound on the total length of parsed DG2 - DG7 files held by an instance, 64 MB. */
+	public static final long DEFAULT_PARSED_FILE_CACHE_SIZE = 64L * 1024 * 1024;
+
+	private ConcurrentMap<Short, LDSEntry> entries;
+
+	/** The parsed DG2 - DG7 files. */
+	private ParsedFileCache parsedFileCache;
+
+	/** The pool for buffering file contents, <code>null</code> for heap buffers. */
+	private BufferPool bufferPool;
+
+	/** The executor for decoding the records of DG3 and DG4 in parallel, <code>null</code> to decode on the caller's thread. */
+	private volatile ExecutorService executor;
 
 	public LDS() {
-		this.files = new TreeMap<Short, LDSFile>();
-		this.fetchers = new TreeMap<Short, SplittableInputStream>();
+		this(null);
+	}
+
+	/**
+	 * Creates an empty LDS which buffers file contents in buffers from <code>bufferPool</code>.
+	 * Call {@link #release()} when the LDS is no longer used (for instance when it is evicted from a cache).
+	 * 
+	 * @param bufferPool the pool for buffers, or <code>null</code> to use heap buffers
+	 */
+	public LDS(BufferPool bufferPool) {
+		this.entries = new ConcurrentSkipListMap<Short, LDSEntry>();
+		this.parsedFileCache = new ParsedFileCache(DEFAULT_PARSED_FILE_CACHE_SIZE);
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Sets the executor used to decode the records of DG3 and DG4 in parallel.
+	 * Files that have already been decoded are not affected.
+	 * 
+	 * The thread getting the file decodes records as well and only waits for tasks
+	 * that have started, so the executor may be bounded, and files may be got from
+	 * tasks running on the same executor.
+	 * 
+	 * @param executor an executor, or <code>null</code> to decode on the caller's thread
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the bound on the total length of parsed DG2 - DG7 files held by this LDS.
+	 * The least recently used files are dropped when the bound is exceeded.
+	 * 
+	 * @param maxSize the size in bytes, 0 to parse these files on every access
+	 */
+	public void setParsedFileCacheSize(long maxSize) {
+		parsedFileCache.setMaxSize(maxSize);
+	}
+
+	/**
+	 * Gets the bound on the total length of parsed DG2 - DG7 files held by this LDS.
+	 * 
+	 * @return the size in bytes
+	 */
+	public long getParsedFileCacheSize() {
+		return parsedFileCache.getMaxSize();
+	}
+
+	/**
+	 * Returns pooled buffers to the pool and removes all files. Buffers
+	 * shared with other LDS instances through {@link #updateFrom(LDS)} are
+	 * only returned once all instances sharing them have been released.
+	 */
+	public void release() {
+		for (Short fid: entries.keySet()) {
+			LDSEntry entry = entries.remove(fid);
+			if (entry != null) { entry.release(); }
+		}
 	}
 
-	public synchronized boolean isSameDocument(LDS other) throws IOException {
+	public boolean isSameDocument(LDS other) throws IOException {
 		if (other == null) { return false; }
 		try {
 			DG1File dg1 = getDG1File();
@@ -96,24 +179,26 @@ public class LDS {
 //				}
 //			}
 //		}
-		if (other.fetchers != null) {
-			for (Map.Entry<Short, SplittableInputStream> entry: other.fetchers.entrySet()) {
-				short fid = entry.getKey();
-				SplittableInputStream inputStream = fetchers.get(fid);
-				SplittableInputStream otherInputStream = entry.getValue();
+		for (Map.Entry<Short, LDSEntry> entry: other.entries.entrySet()) {
+			short fid = entry.getKey();
+			LDSEntry otherEntry = entry.getValue();
+			LDSEntry sharedEntry = otherEntry.share(bufferPool, parsedFileCache);
+			if (sharedEntry == null) { continue; }
+			LDSEntry ldsEntry = entries.putIfAbsent(fid, sharedEntry);
+			if (ldsEntry != null) {
+				sharedEntry.release();
+				SplittableInputStream inputStream = ldsEntry.fetcher;
 				if (inputStream == null) {
-					fetchers.put(fid, otherInputStream);
-				} else {
-					inputStream.updateFrom(otherInputStream);
+					continue; /* NOTE: constructed file, takes precedence. */
 				}
+				inputStream.updateFrom(otherEntry.getFetcher());
 			}
 		}
 	}
 
 	public List<Short> getFileList() {
 		Set<Short> fileSet = new HashSet<Short>();
-		fileSet.addAll(fetchers.keySet());
-		fileSet.addAll(files.keySet());
+		fileSet.addAll(entries.keySet());
 		fileSet.addAll(getDataGroupList());
 		if (fileSet.contains(PassportService.EF_DG14)) {
 			try {
@@ -159,15 +244,15 @@ public class LDS {
 	}
 
 	public int getBytesBuffered(short fid) {
-		SplittableInputStream fetcher = fetchers.get(fid);
-		if (fetcher == null) { return 0; }
-		return fetcher.getBytesBuffered();		
+		LDSEntry entry = entries.get(fid);
+		if (entry == null) { return 0; }
+		return entry.getFetcher().getBytesBuffered();		
 	}
 
 	public int getLength(short fid) {
-		SplittableInputStream fetcher = fetchers.get(fid);
-		if (fetcher == null) { return 0; }
-		return fetcher.getLength();
+		LDSEntry entry = entries.get(fid);
+		if (entry == null) { return 0; }
+		return entry.getFetcher().getLength();
 	}
 
 	public int getPosition() {
@@ -191,7 +276,8 @@ public class LDS {
 	/* ADDERS. */
 	
 	public void add(short fid, InputStream inputStream, int length) throws IOException {
-		fetchers.put(fid, new SplittableInputStream(inputStream, length));
+		LDSEntry oldEntry = entries.put(fid, new LDSEntry(fid, new SplittableInputStream(inputStream, length, bufferPool), parsedFileCache));
+		if (oldEntry != null) { oldEntry.release(); }
 	}
 
 	public void add(short fid, byte[] bytes) throws IOException {
@@ -210,6 +296,9 @@ public class LDS {
 	 * Note that EF.COM and EF.SOd will not be updated as a result of adding
 	 * data groups.
 	 * 
+	 * The file is encoded when its bytes are first requested (for instance
+	 * using {@link #getInputStream(short)}), not when it is added.
+	 * 
 	 * @param file the new file to add
 	 */
 	public void add(LDSFile file) {
@@ -235,31 +324,112 @@ public class LDS {
 
 	/* GETTERS. */
 	
+	/**
+	 * Gets a file, parsing it on first access.
+	 * 
+	 * Parsed DG2 - DG7 files are held in the bounded cache of this LDS. When evicted
+	 * they are discarded and parsed again from the bytes on the next access, so changes
+	 * made to a returned DG2 - DG7 file can be lost. Use {@link #add(LDSFile)} to replace them.
+	 * 
+	 * @param fid the file identifier
+	 * 
+	 * @return the file
+	 * 
+	 * @throws IOException if there is no stream for the file, or on error parsing it
+	 */
 	public LDSFile getFile(short fid) throws IOException {
-		LDSFile file = files.get(fid);
-		if (file != null) {
-			return file;
-		}
-
-		file = LDSFileUtil.getLDSFile(fid, getInputStream(fid));
-		files.put(fid, file);
-		return file;
+		LDSEntry entry = entries.get(fid);
+		if (entry == null) { throw new IOException("No stream for " + Integer.toHexString(fid)); }
+		return entry.getFile(executor);
 	}
 
 	public InputStream getInputStream(short fid) throws IOException {
-		SplittableInputStream fetcher = fetchers.get(fid);
-		if (fetcher == null) { throw new IOException("No stream for " + Integer.toHexString(fid)); }
-		return fetcher.getInputStream(0);
+		LDSEntry entry = entries.get(fid);
+		if (entry == null) { throw new IOException("No stream for " + Integer.toHexString(fid)); }
+		return entry.getFetcher().getInputStream(0);
+	}
+
+	/**
+	 * Gets an input stream for a file that waits for bytes to be read by other
+	 * readers (for instance the thread reading the file from the card) instead of
+	 * reading them itself. This allows a consumer to process a file while it arrives.
+	 * 
+	 * @param fid the file identifier
+	 * 
+	 * @return a progressive input stream, which should be closed or given a timeout
+	 *         in case the bytes never arrive
+	 * 
+	 * @throws IOException if there is no stream for the file
+	 */
+	public ProgressiveInputStream getProgressiveInputStream(short fid) throws IOException {
+		LDSEntry entry = entries.get(fid);
+		if (entry == null) { throw new IOException("No stream for " + Integer.toHexString(fid)); }
+		return entry.getFetcher().getProgressiveInputStream(0);
+	}
+
+	/**
+	 * Gets a channel over the bytes of a file. Files are read from the
+	 * underlying stream (or encoded) as needed.
+	 * 
+	 * @param fid the file identifier
+	 * 
+	 * @return a channel positioned at <code>0</code>
+	 * 
+	 * @throws IOException if there is no stream for the file
+	 */
+	public FragmentBufferChannel getChannel(short fid) throws IOException {
+		LDSEntry entry = entries.get(fid);
+		if (entry == null) { throw new IOException("No stream for " + Integer.toHexString(fid)); }
+		return entry.getFetcher().getChannel();
+	}
+
+	/**
+	 * Reads the face infos in DG2 one at a time. Face images are only read when decoded.
+	 * 
+	 * @return an iterator over the face infos
+	 * 
+	 * @throws IOException if there is no stream for DG2, or on error reading its headers
+	 */
+	public Iterator<LazyCBEFFInfo<FaceInfo>> getFaceInfoIterator() throws IOException {
+		return DG2File.iterator(getFetcher(PassportService.EF_DG2));
+	}
+
+	/**
+	 * Reads the finger infos in DG3 one at a time. Finger images are only read when decoded.
+	 * 
+	 * @return an iterator over the finger infos
+	 * 
+	 * @throws IOException if there is no stream for DG3, or on error reading its headers
+	 */
+	public Iterator<LazyCBEFFInfo<FingerInfo>> getFingerInfoIterator() throws IOException {
+		return DG3File.iterator(getFetcher(PassportService.EF_DG3));
+	}
+
+	/**
+	 * Reads the iris infos in DG4 one at a time. Iris images are only read when decoded.
+	 * 
+	 * @return an iterator over the iris infos
+	 * 
+	 * @throws IOException if there is no stream for DG4, or on error reading its headers
+	 */
+	public Iterator<LazyCBEFFInfo<IrisInfo>> getIrisInfoIterator() throws IOException {
+		return DG4File.iterator(getFetcher(PassportService.EF_DG4));
 	}
 
 	public COMFile getCOMFile() throws IOException { return (COMFile)getFile(PassportService.EF_COM); }
 	public SODFile getSODFile() throws IOException { return (SODFile)getFile(PassportService.EF_SOD); }
 	public DG1File getDG1File() throws IOException { return (DG1File)getFile(PassportService.EF_DG1); }
+	/** Gets DG2, which may be parsed again after eviction from the cache, see {@link #getFile(short)}. */
 	public DG2File getDG2File() throws IOException { return (DG2File)getFile(PassportService.EF_DG2); }
+	/** Gets DG3, which may be parsed again after eviction from the cache, see {@link #getFile(short)}. */
 	public DG3File getDG3File() throws IOException { return (DG3File)getFile(PassportService.EF_DG3); }
+	/** Gets DG4, which may be parsed again after eviction from the cache, see {@link #getFile(short)}. */
 	public DG4File getDG4File() throws IOException { return (DG4File)getFile(PassportService.EF_DG4); }
+	/** Gets DG5, which may be parsed again after eviction from the cache, see {@link #getFile(short)}. */
 	public DG5File getDG5File() throws IOException { return (DG5File)getFile(PassportService.EF_DG5); }
+	/** Gets DG6, which may be parsed again after eviction from the cache, see {@link #getFile(short)}. */
 	public DG6File getDG6File() throws IOException { return (DG6File)getFile(PassportService.EF_DG6); }
+	/** Gets DG7, which may be parsed again after eviction from the cache, see {@link #getFile(short)}. */
 	public DG7File getDG7File() throws IOException { return (DG7File)getFile(PassportService.EF_DG7); }
 	public DG11File getDG11File() throws IOException { return (DG11File)getFile(PassportService.EF_DG11); }
 	public DG12File getDG12File() throws IOException { return (DG12File)getFile(PassportService.EF_DG12); }
@@ -288,8 +458,161 @@ public class LDS {
 	}
 	
 	private void put(short fid, LDSFile file) {
-		this.files.put(fid, file);
-		byte[] bytes = file.getEncoded();
-		this.fetchers.put(fid, new SplittableInputStream(new ByteArrayInputStream(bytes), bytes.length));
+		LDSEntry oldEntry = entries.put(fid, new LDSEntry(fid, file, bufferPool, parsedFileCache));
+		if (oldEntry != null) { oldEntry.release(); }
+	}
+
+	/** Gets the bytes of a file, encoding a constructed file if needed. */
+	private SplittableInputStream getFetcher(short fid) throws IOException {
+		LDSEntry entry = entries.get(fid);
+		if (entry == null) { throw new IOException("No stream for " + Integer.toHexString(fid)); }
+		return entry.getFetcher();
+	}
+
+	/**
+	 * Whether parsed instances of the file are large enough to be held
+	 * in the bounded cache, so that they can be re-derived from the bytes.
+	 * 
+	 * @param fid a file identifier
+	 * 
+	 * @return a boolean
+	 */
+	private static boolean isBoundedCached(short fid) {
+		switch (fid) {
+		case PassportService.EF_DG2:
+		case PassportService.EF_DG3:
+		case PassportService.EF_DG4:
+		case PassportService.EF_DG5:
+		case PassportService.EF_DG6:
+		case PassportService.EF_DG7:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * The bytes and parsed representation of a single file.
+	 * At least one of them is available at any time. Both are
+	 * created at most once, under the lock of the entry.
+	 */
+	private static class LDSEntry {
+
+		private short fid;
+
+		/** The bytes, <code>null</code> for constructed files that have not been encoded yet. */
+		private volatile SplittableInputStream fetcher;
+
+		/** Strongly referenced parsed or constructed file. */
+		private volatile LDSFile file;
+
+		/** The number of entries, of this and other instances, sharing the bytes. */
+		private AtomicInteger fetcherReferences;
+
+		/** The cache of the LDS, holding large parsed files once the bytes are available. */
+		private ParsedFileCache parsedFileCache;
+
+		/** The slot of the parsed file in the cache. */
+		private final ParsedFileCache.Slot cacheSlot = new ParsedFileCache.Slot();
+
+		/** The pool for encoding constructed files, <code>null</code> for heap buffers. */
+		private BufferPool bufferPool;
+
+		public LDSEntry(short fid, SplittableInputStream fetcher, ParsedFileCache parsedFileCache) {
+			this(fid, fetcher, new AtomicInteger(1), parsedFileCache);
+		}
+
+		private LDSEntry(short fid, SplittableInputStream fetcher, AtomicInteger fetcherReferences, ParsedFileCache parsedFileCache) {
+			this.fid = fid;
+			this.fetcher = fetcher;
+			this.fetcherReferences = fetcherReferences;
+			this.parsedFileCache = parsedFileCache;
+		}
+
+		public LDSEntry(short fid, LDSFile file, BufferPool bufferPool, ParsedFileCache parsedFileCache) {
+			this.fid = fid;
+			this.file = file;
+			this.bufferPool = bufferPool;
+			this.parsedFileCache = parsedFileCache;
+		}
+
+		public LDSFile getFile(ExecutorService executor) throws IOException {
+			LDSFile result = getCachedFile();
+			if (result != null) { return result; }
+			synchronized(this) {
+				result = getCachedFile();
+				if (result != null) { return result; }
+				result = decode(executor);
+				if (isBoundedCached(fid)) {
+					parsedFileCache.put(cacheSlot, result, fetcher.getLength());
+				} else {
+					file = result;
+				}
+				return result;
+			}
+		}
+
+		private LDSFile decode(ExecutorService executor) throws IOException {
+			if (executor != null) {
+				switch (fid) {
+				case PassportService.EF_DG3: return DG3File.decode(fetcher, executor);
+				case PassportService.EF_DG4: return DG4File.decode(fetcher, executor);
+				}
+			}
+			return LDSFileUtil.getLDSFile(fid, fetcher.getInputStream(0));
+		}
+
+		public SplittableInputStream getFetcher() {
+			SplittableInputStream result = fetcher;
+			if (result != null) { return result; }
+			synchronized(this) {
+				result = fetcher;
+				if (result != null) { return result; }
+				LDSFile constructedFile = file;
+				byte[] bytes = constructedFile.getEncoded();
+				result = new SplittableInputStream(new ByteArrayInputStream(bytes), bytes.length, bufferPool);
+				fetcherReferences = new AtomicInteger(1);
+				fetcher = result;
+				if (isBoundedCached(fid)) {
+					/* NOTE: now that the bytes are available, the constructed file can be re-derived. */
+					parsedFileCache.put(cacheSlot, constructedFile, bytes.length);
+					file = null;
+				}
+				return result;
+			}
+		}
+
+		/**
+		 * Creates an entry sharing the bytes of this entry, to be released separately.
+		 * A constructed file that has not been encoded yet is shared instead.
+		 * 
+		 * @param bufferPool the pool for encoding a shared constructed file, <code>null</code> for heap buffers
+		 * @param parsedFileCache the cache of the LDS of the new entry
+		 * 
+		 * @return the new entry, or <code>null</code> if the bytes have been released
+		 */
+		public synchronized LDSEntry share(BufferPool bufferPool, ParsedFileCache parsedFileCache) {
+			SplittableInputStream inputStream = fetcher;
+			if (inputStream == null) { return new LDSEntry(fid, file, bufferPool, parsedFileCache); }
+			if (fetcherReferences.get() <= 0) { return null; }
+			fetcherReferences.incrementAndGet();
+			return new LDSEntry(fid, inputStream, fetcherReferences, parsedFileCache);
+		}
+
+		/**
+		 * Removes the parsed file from the cache and returns the bytes to the pool,
+		 * unless they are still shared with other entries.
+		 */
+		public synchronized void release() {
+			parsedFileCache.remove(cacheSlot);
+			SplittableInputStream inputStream = fetcher;
+			if (inputStream != null && fetcherReferences.decrementAndGet() == 0) { inputStream.release(); }
+		}
+
+		private LDSFile getCachedFile() {
+			LDSFile result = file;
+			if (result != null) { return result; }
+			return parsedFileCache.get(cacheSlot);
+		}
 	}
 }
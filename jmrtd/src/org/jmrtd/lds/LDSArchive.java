@@ -0,0 +1,555 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2015  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id$
+ */
+
+package org.jmrtd.lds;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import net.sf.scuba.tlv.TLVUtil;
+
+import org.jmrtd.PassportService;
+import org.jmrtd.io.ByteBufferInputStream;
+
+/**
+ * Indexed container for the files of an LDS, with random access to
+ * individual files and to the images inside the biometric data groups.
+ *
+ * The archive starts with a header that indexes all entries, followed by the
+ * entry values. All numbers are big-endian.
+ *
+ * <pre>
+ * archive  ::= MAGIC (4) | VERSION (2) | entryCount (4) | entry* | value*
+ * entry    ::= type (2) | id (2) | offset (4) | length (4)
+ * </pre>
+ *
+ * Entries are of the following types:
+ * <ul>
+ * <li>{@link #TYPE_FILE}, <code>id</code> is the FID, value is the raw EF,</li>
+ * <li>{@link #TYPE_DIGEST_ALGORITHM}, value is the digest algorithm from EF.SOd (UTF-8),</li>
+ * <li>{@link #TYPE_DATA_GROUP_HASH}, <code>id</code> is the data group number, value is the hash from EF.SOd,</li>
+ * <li>{@link #TYPE_MRZ}, value is the MRZ from EF.DG1 (without newlines),</li>
+ * <li>{@link #TYPE_IMAGES}, <code>id</code> is the FID of EF.DG2, EF.DG3, or EF.DG4,
+ *     value is a count (4) followed by offset (4), length (4), and mime-type (modified UTF-8)
+ *     of each image relative to the start of the raw EF.</li>
+ * </ul>
+ *
+ * Only the raw files are needed to reconstruct the LDS, the other entries are
+ * precomputed metadata. Entries can be read without reading or parsing the rest,
+ * when constructed using {@link #LDSArchive(File)} the archive is memory-mapped.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision$
+ */
+public class LDSArchive {
+
+	private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
+
+	/** Magic number, &quot;JLDA&quot; in ASCII. */
+	private static final int MAGIC = 0x4A4C4441;
+
+	private static final short VERSION = 1;
+
+	private static final int HEADER_LENGTH = 4 + 2 + 4;
+
+	private static final int ENTRY_LENGTH = 2 + 2 + 4 + 4;
+
+	public static final short
+	TYPE_FILE = 1,
+	TYPE_DIGEST_ALGORITHM = 2,
+	TYPE_DATA_GROUP_HASH = 3,
+	TYPE_MRZ = 4,
+	TYPE_IMAGES = 5;
+
+	private ByteBuffer buffer;
+
+	/** Index entries, keyed by type and id. */
+	private Map<Integer, Entry> entries;
+
+	/**
+	 * Opens an archive by memory-mapping a file.
+	 *
+	 * @param file the archive file
+	 *
+	 * @throws IOException on error mapping the file or reading the header
+	 */
+	public LDSArchive(File file) throws IOException {
+		this(map(file));
+	}
+
+	/**
+	 * Opens an archive contained in a buffer. Only the header is read.
+	 *
+	 * @param buffer a buffer containing the archive (its position and limit are not changed)
+	 *
+	 * @throws IOException on error reading the header
+	 */
+	public LDSArchive(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.slice();
+		this.entries = new TreeMap<Integer, Entry>();
+		DataInputStream dataIn = new DataInputStream(new ByteBufferInputStream(this.buffer));
+		int magic = dataIn.readInt();
+		if (magic != MAGIC) {
+			throw new IOException("Not an LDS archive, found magic " + Integer.toHexString(magic));
+		}
+		short version = dataIn.readShort();
+		if (version != VERSION) {
+			throw new IOException("Unsupported LDS archive version " + version);
+		}
+		int entryCount = dataIn.readInt();
+		for (int i = 0; i < entryCount; i++) {
+			short type = dataIn.readShort();
+			short id = dataIn.readShort();
+			int offset = dataIn.readInt();
+			int length = dataIn.readInt();
+			if (offset < 0 || length < 0 || offset > this.buffer.capacity() - length) {
+				throw new IOException("Entry " + i + " out of bounds");
+			}
+			entries.put(getKey(type, id), new Entry(offset, length));
+		}
+	}
+
+	/**
+	 * Writes an LDS to an archive file.
+	 *
+	 * @param lds the LDS
+	 * @param file the file to write to
+	 *
+	 * @throws IOException on error reading from the LDS or writing to the file
+	 */
+	public static void write(LDS lds, File file) throws IOException {
+		OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			write(lds, outputStream);
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	/**
+	 * Writes an LDS as archive to an output stream.
+	 * All files for which the LDS holds content are included, metadata is
+	 * derived from EF.SOd, EF.DG1, EF.DG2, EF.DG3, and EF.DG4 when present.
+	 *
+	 * @param lds the LDS
+	 * @param outputStream the output stream to write to
+	 *
+	 * @throws IOException on error reading from the LDS or writing to the stream
+	 */
+	public static void write(LDS lds, OutputStream outputStream) throws IOException {
+		List<short[]> keys = new ArrayList<short[]>();
+		List<byte[]> values = new ArrayList<byte[]>();
+
+		Map<Short, byte[]> rawFiles = new TreeMap<Short, byte[]>();
+		for (short fid: lds.getFileList()) {
+			byte[] bytes = null;
+			try {
+				bytes = readFully(lds.getInputStream(fid), lds.getLength(fid));
+			} catch (IOException ioe) {
+				/* NOTE: Listed (for instance in EF.COM), but not present. */
+				continue;
+			}
+			rawFiles.put(fid, bytes);
+			keys.add(new short[] { TYPE_FILE, fid });
+			values.add(bytes);
+		}
+
+		byte[] sodBytes = rawFiles.get(PassportService.EF_SOD);
+		if (sodBytes != null) {
+			try {
+				SODFile sod = (SODFile)LDSFileUtil.getLDSFile(PassportService.EF_SOD, ByteBuffer.wrap(sodBytes));
+				String digestAlgorithm = sod.getDigestAlgorithm();
+				if (digestAlgorithm != null) {
+					keys.add(new short[] { TYPE_DIGEST_ALGORITHM, 0 });
+					values.add(digestAlgorithm.getBytes("UTF-8"));
+				}
+				for (Map.Entry<Integer, byte[]> entry: sod.getDataGroupHashes().entrySet()) {
+					keys.add(new short[] { TYPE_DATA_GROUP_HASH, (short)entry.getKey().intValue() });
+					values.add(entry.getValue());
+				}
+			} catch (Exception e) {
+				LOGGER.warning("Could not derive hashes from EF.SOd: " + e.getMessage());
+			}
+		}
+
+		byte[] dg1Bytes = rawFiles.get(PassportService.EF_DG1);
+		if (dg1Bytes != null) {
+			try {
+				DG1File dg1 = (DG1File)LDSFileUtil.getLDSFile(PassportService.EF_DG1, ByteBuffer.wrap(dg1Bytes));
+				keys.add(new short[] { TYPE_MRZ, 0 });
+				values.add(dg1.getMRZInfo().getEncoded());
+			} catch (Exception e) {
+				LOGGER.warning("Could not derive MRZ from EF.DG1: " + e.getMessage());
+			}
+		}
+
+		short[] biometricFIDs = { PassportService.EF_DG2, PassportService.EF_DG3, PassportService.EF_DG4 };
+		for (short fid: biometricFIDs) {
+			byte[] bytes = rawFiles.get(fid);
+			if (bytes == null) { continue; }
+			try {
+				byte[] imageIndex = getImageIndex(fid, bytes);
+				if (imageIndex != null) {
+					keys.add(new short[] { TYPE_IMAGES, fid });
+					values.add(imageIndex);
+				}
+			} catch (Exception e) {
+				LOGGER.warning("Could not derive image offsets from " + LDSFileUtil.lookupFileNameByFID(fid) + ": " + e.getMessage());
+			}
+		}
+
+		DataOutputStream dataOut = new DataOutputStream(outputStream);
+		int entryCount = keys.size();
+		dataOut.writeInt(MAGIC);
+		dataOut.writeShort(VERSION);
+		dataOut.writeInt(entryCount);
+		int offset = HEADER_LENGTH + entryCount * ENTRY_LENGTH;
+		for (int i = 0; i < entryCount; i++) {
+			short[] key = keys.get(i);
+			int length = values.get(i).length;
+			dataOut.writeShort(key[0]);
+			dataOut.writeShort(key[1]);
+			dataOut.writeInt(offset);
+			dataOut.writeInt(length);
+			offset += length;
+		}
+		for (byte[] value: values) {
+			dataOut.write(value);
+		}
+		dataOut.flush();
+	}
+
+	/**
+	 * Gets the file identifiers of the files in this archive.
+	 *
+	 * @return a list of file identifiers
+	 */
+	public List<Short> getFileList() {
+		List<Short> result = new ArrayList<Short>();
+		for (int key: entries.keySet()) {
+			if ((key >>> 16) == TYPE_FILE) {
+				result.add((short)(key & 0xFFFF));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the raw contents of a file as a read-only slice of the archive.
+	 *
+	 * @param fid the file identifier
+	 *
+	 * @return a buffer containing the file
+	 *
+	 * @throws IOException if the archive does not contain the file
+	 */
+	public ByteBuffer getFileBuffer(short fid) throws IOException {
+		ByteBuffer result = getValue(TYPE_FILE, fid);
+		if (result == null) { throw new IOException("No file " + Integer.toHexString(fid)); }
+		return result;
+	}
+
+	/**
+	 * Parses a file from the archive. Images are not copied,
+	 * see {@link LDSFileUtil#getLDSFile(short, ByteBuffer)}.
+	 *
+	 * @param fid the file identifier
+	 *
+	 * @return the file
+	 *
+	 * @throws IOException if the archive does not contain the file or parsing fails
+	 */
+	public LDSFile getFile(short fid) throws IOException {
+		return LDSFileUtil.getLDSFile(fid, getFileBuffer(fid));
+	}
+
+	/**
+	 * Gets the name of the algorithm used in the data group hashes, as stored in EF.SOd.
+	 *
+	 * @return an algorithm string such as "SHA-1" or "SHA-256", or <code>null</code> if not present
+	 *
+	 * @throws IOException on error reading the archive
+	 */
+	public String getDigestAlgorithm() throws IOException {
+		byte[] value = getValueBytes(TYPE_DIGEST_ALGORITHM, (short)0);
+		return value == null ? null : new String(value, "UTF-8");
+	}
+
+	/**
+	 * Gets the data group hashes, as stored in EF.SOd.
+	 *
+	 * @return data group hashes indexed by data group numbers (1 to 16)
+	 */
+	public Map<Integer, byte[]> getDataGroupHashes() {
+		Map<Integer, byte[]> result = new TreeMap<Integer, byte[]>();
+		for (Map.Entry<Integer, Entry> entry: entries.entrySet()) {
+			int key = entry.getKey();
+			if ((key >>> 16) == TYPE_DATA_GROUP_HASH) {
+				short dgNumber = (short)(key & 0xFFFF);
+				result.put((int)dgNumber, getValueBytes(TYPE_DATA_GROUP_HASH, dgNumber));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the MRZ, as stored in EF.DG1, without parsing EF.DG1.
+	 *
+	 * @return the MRZ or <code>null</code> if not present
+	 *
+	 * @throws IOException on error reading the archive
+	 */
+	public MRZInfo getMRZInfo() throws IOException {
+		byte[] value = getValueBytes(TYPE_MRZ, (short)0);
+		return value == null ? null : new MRZInfo(new String(value, "UTF-8"));
+	}
+
+	/**
+	 * Gets the number of images indexed for a biometric data group.
+	 *
+	 * @param fid the file identifier of EF.DG2, EF.DG3, or EF.DG4
+	 *
+	 * @return the number of images
+	 *
+	 * @throws IOException on error reading the archive
+	 */
+	public int getImageCount(short fid) throws IOException {
+		DataInputStream imageIndexIn = getImageIndexInputStream(fid);
+		return imageIndexIn == null ? 0 : imageIndexIn.readInt();
+	}
+
+	/**
+	 * Gets an encoded image from a biometric data group as a read-only
+	 * slice of the archive, without parsing the data group.
+	 *
+	 * @param fid the file identifier of EF.DG2, EF.DG3, or EF.DG4
+	 * @param index the index of the image within the data group
+	 *
+	 * @return a buffer containing the encoded image
+	 *
+	 * @throws IOException if the archive does not contain the image
+	 */
+	public ByteBuffer getImageBuffer(short fid, int index) throws IOException {
+		int[] offsetAndLength = new int[2];
+		seekImage(fid, index, offsetAndLength);
+		ByteBuffer result = getFileBuffer(fid);
+		int offset = offsetAndLength[0];
+		int length = offsetAndLength[1];
+		if (offset < 0 || length < 0 || offset > result.capacity() - length) {
+			throw new IOException("Image " + index + " for " + Integer.toHexString(fid) + " out of bounds");
+		}
+		result.limit(offset + length);
+		result.position(offset);
+		return result.slice();
+	}
+
+	/**
+	 * Gets the mime-type of an encoded image from a biometric data group.
+	 *
+	 * @param fid the file identifier of EF.DG2, EF.DG3, or EF.DG4
+	 * @param index the index of the image within the data group
+	 *
+	 * @return the mime-type
+	 *
+	 * @throws IOException if the archive does not contain the image
+	 */
+	public String getImageMimeType(short fid, int index) throws IOException {
+		return seekImage(fid, index, new int[2]).readUTF();
+	}
+
+	/**
+	 * Reconstructs the LDS. The files in the resulting LDS are read from
+	 * the archive's buffer when first accessed, and copied into buffers of the LDS.
+	 *
+	 * @return an LDS containing the files of this archive
+	 *
+	 * @throws IOException on error reading the archive
+	 */
+	public LDS toLDS() throws IOException {
+		LDS lds = new LDS();
+		for (short fid: getFileList()) {
+			ByteBuffer fileBuffer = getFileBuffer(fid);
+			lds.add(fid, new ByteBufferInputStream(fileBuffer), fileBuffer.remaining());
+		}
+		return lds;
+	}
+
+	public String toString() {
+		return "LDSArchive [" + entries.size() + " entries, files: " + getFileList() + "]";
+	}
+
+	/* ONLY PRIVATE METHODS BELOW */
+
+	private static int getKey(short type, short id) {
+		return ((type & 0xFFFF) << 16) | (id & 0xFFFF);
+	}
+
+	private ByteBuffer getValue(short type, short id) {
+		Entry entry = entries.get(getKey(type, id));
+		if (entry == null) { return null; }
+		ByteBuffer result = buffer.duplicate();
+		result.limit(entry.offset + entry.length);
+		result.position(entry.offset);
+		return result.slice().asReadOnlyBuffer();
+	}
+
+	private byte[] getValueBytes(short type, short id) {
+		ByteBuffer value = getValue(type, id);
+		if (value == null) { return null; }
+		byte[] result = new byte[value.remaining()];
+		value.get(result);
+		return result;
+	}
+
+	private DataInputStream getImageIndexInputStream(short fid) {
+		ByteBuffer value = getValue(TYPE_IMAGES, fid);
+		if (value == null) { return null; }
+		return new DataInputStream(new ByteBufferInputStream(value));
+	}
+
+	/**
+	 * Positions an input stream on the image index of a data group just after
+	 * the offset and length of the image with the given index.
+	 *
+	 * @param fid the file identifier
+	 * @param index the index of the image
+	 * @param offsetAndLength array of length 2 in which offset and length are stored
+	 *
+	 * @return an input stream positioned at the mime-type of the image
+	 *
+	 * @throws IOException if the archive does not contain the image
+	 */
+	private DataInputStream seekImage(short fid, int index, int[] offsetAndLength) throws IOException {
+		DataInputStream imageIndexIn = getImageIndexInputStream(fid);
+		if (imageIndexIn == null) { throw new IOException("No images for " + Integer.toHexString(fid)); }
+		int count = imageIndexIn.readInt();
+		if (index < 0 || index >= count) { throw new IOException("No image " + index + " for " + Integer.toHexString(fid)); }
+		for (int i = 0; i < index; i++) {
+			imageIndexIn.readInt();
+			imageIndexIn.readInt();
+			imageIndexIn.readUTF();
+		}
+		offsetAndLength[0] = imageIndexIn.readInt();
+		offsetAndLength[1] = imageIndexIn.readInt();
+		return imageIndexIn;
+	}
+
+	/**
+	 * Computes the image index of a biometric data group. The data group is parsed
+	 * in place, so that the positions of the image infos are relative to the data group value.
+	 *
+	 * @param fid the file identifier
+	 * @param bytes the raw EF
+	 *
+	 * @return the image index or <code>null</code> if the positions could not be determined
+	 *
+	 * @throws IOException on error parsing the data group
+	 */
+	private static byte[] getImageIndex(short fid, byte[] bytes) throws IOException {
+		ByteBuffer fileBuffer = ByteBuffer.wrap(bytes);
+		DataGroup dataGroup = (DataGroup)LDSFileUtil.getLDSFile(fid, fileBuffer);
+		int valueOffset = TLVUtil.getTagLength(dataGroup.getTag()) + TLVUtil.getLengthLength(dataGroup.getLength());
+		List<AbstractImageInfo> imageInfos = getImageInfos(dataGroup);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DataOutputStream dataOut = new DataOutputStream(out);
+		dataOut.writeInt(imageInfos.size());
+		for (AbstractImageInfo imageInfo: imageInfos) {
+			int offset = valueOffset + imageInfo.imagePositionInInputStream;
+			int length = imageInfo.getImageLength();
+			if (offset < 0 || length < 0 || offset > bytes.length - length) { return null; }
+			ByteBuffer slice = ByteBuffer.wrap(bytes, offset, length);
+			if (!slice.equals(imageInfo.getImageBuffer())) {
+				/* NOTE: Image was not served from the buffer (e.g. statically protected BIT). */
+				return null;
+			}
+			dataOut.writeInt(offset);
+			dataOut.writeInt(length);
+			String mimeType = imageInfo.getMimeType();
+			dataOut.writeUTF(mimeType == null ? "" : mimeType);
+		}
+		dataOut.flush();
+		return out.toByteArray();
+	}
+
+	private static List<AbstractImageInfo> getImageInfos(DataGroup dataGroup) {
+		List<AbstractImageInfo> result = new ArrayList<AbstractImageInfo>();
+		if (dataGroup instanceof DG2File) {
+			for (FaceInfo faceInfo: ((DG2File)dataGroup).getFaceInfos()) {
+				result.addAll(faceInfo.getFaceImageInfos());
+			}
+		} else if (dataGroup instanceof DG3File) {
+			for (FingerInfo fingerInfo: ((DG3File)dataGroup).getFingerInfos()) {
+				result.addAll(fingerInfo.getFingerImageInfos());
+			}
+		} else if (dataGroup instanceof DG4File) {
+			for (IrisInfo irisInfo: ((DG4File)dataGroup).getIrisInfos()) {
+				for (IrisBiometricSubtypeInfo subtypeInfo: irisInfo.getIrisBiometricSubtypeInfos()) {
+					result.addAll(subtypeInfo.getIrisImageInfos());
+				}
+			}
+		}
+		return result;
+	}
+
+	private static byte[] readFully(InputStream inputStream, int length) throws IOException {
+		byte[] result = new byte[length];
+		DataInputStream dataIn = new DataInputStream(inputStream);
+		dataIn.readFully(result);
+		return result;
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	private static class Entry {
+
+		private int offset, length;
+
+		public Entry(int offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
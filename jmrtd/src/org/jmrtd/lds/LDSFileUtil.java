@@ -23,10 +23,15 @@
 package org.jmrtd.lds;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.jmrtd.PassportService;
+import org.jmrtd.io.ByteBufferInputStream;
 
 /**
  * Static LDS file methods.
@@ -81,6 +86,46 @@ public class LDSFileUtil {
 		}
 	}
 
+	/**
+	 * Factory method for creating LDS files for a given byte buffer.
+	 * The remaining bytes of the buffer are parsed in place: images in the resulting
+	 * file are slices of the buffer, rather than copies.
+	 * The position and limit of <code>buffer</code> are not changed.
+	 *
+	 * @param fid file identifier
+	 * @param buffer a buffer (heap, direct, or memory-mapped) containing the file
+	 *
+	 * @return a specific file
+	 *
+	 * @throws IOException on error parsing the buffer
+	 */
+	public static AbstractLDSFile getLDSFile(short fid, ByteBuffer buffer) throws IOException {
+		return getLDSFile(fid, new ByteBufferInputStream(buffer));
+	}
+
+	/**
+	 * Factory method for creating LDS files for a given file on disk.
+	 * The file is memory-mapped and parsed using {@link #getLDSFile(short, ByteBuffer)}.
+	 *
+	 * @param fid file identifier
+	 * @param file a file containing the EF contents
+	 *
+	 * @return a specific file
+	 *
+	 * @throws IOException on error mapping or parsing the file
+	 */
+	public static AbstractLDSFile getLDSFile(short fid, File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			/* NOTE: the mapping remains valid after the channel is closed. */
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return getLDSFile(fid, buffer);
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
 	/**
 	 * Finds a file identifier for an ICAO tag.
 	 *
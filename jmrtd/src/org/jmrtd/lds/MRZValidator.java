@@ -0,0 +1,371 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2015  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id$
+ */
+
+package org.jmrtd.lds;
+
+/**
+ * Validates MRZ text (for instance OCR output) against the ICAO Doc 9303
+ * layouts for ID1 (3 lines of 30), ID2 (2 lines of 36), and ID3 (2 lines of 44)
+ * documents. Character set, layout, and all check digits are checked in one pass
+ * over the input, without creating strings. An {@link MRZInfo} is only
+ * constructed when {@link #toMRZInfo()} is called.
+ *
+ * Instances keep a small internal buffer that is reused between calls to
+ * <code>validate</code>, and are therefore not thread-safe. Use one instance per thread.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision$
+ */
+public class MRZValidator {
+
+	/** Result of validation if all checks succeeded. */
+	public static final int VALID = 0;
+
+	/** Result flag indicating that the number of MRZ characters does not match any of the known layouts. */
+	public static final int INVALID_LENGTH = 0x01;
+
+	/** Result flag indicating that the input contains characters other than '0'-'9', 'A'-'Z', and '&lt;'. */
+	public static final int INVALID_CHARACTER = 0x02;
+
+	/** Result flag indicating that the gender field is not one of 'M', 'F', or '&lt;'. */
+	public static final int INVALID_GENDER = 0x04;
+
+	/** Result flag indicating a wrong document number check digit. */
+	public static final int INVALID_DOCUMENT_NUMBER_CHECK_DIGIT = 0x08;
+
+	/** Result flag indicating a wrong date of birth check digit. */
+	public static final int INVALID_DATE_OF_BIRTH_CHECK_DIGIT = 0x10;
+
+	/** Result flag indicating a wrong date of expiry check digit. */
+	public static final int INVALID_DATE_OF_EXPIRY_CHECK_DIGIT = 0x20;
+
+	/** Result flag indicating a wrong personal number check digit (ID3 only). */
+	public static final int INVALID_PERSONAL_NUMBER_CHECK_DIGIT = 0x40;
+
+	/** Result flag indicating a wrong composite check digit. */
+	public static final int INVALID_COMPOSITE_CHECK_DIGIT = 0x80;
+
+	private static final int ID1_LENGTH = 90, ID2_LENGTH = 72, ID3_LENGTH = 88;
+
+	private static final int MAX_LENGTH = ID1_LENGTH;
+
+	private static final int[] WEIGHTS = { 7, 3, 1 };
+
+	/** Numerical values of MRZ characters indexed by character, <code>-1</code> for characters not allowed in the MRZ. */
+	private static final byte[] VALUES = new byte[128];
+
+	static {
+		for (int i = 0; i < VALUES.length; i++) { VALUES[i] = -1; }
+		VALUES['<'] = 0;
+		for (char c = '0'; c <= '9'; c++) { VALUES[c] = (byte)(c - '0'); }
+		for (char c = 'A'; c <= 'Z'; c++) { VALUES[c] = (byte)(c - 'A' + 10); }
+	}
+
+	private char[] chars;
+	private byte[] values;
+	private int length;
+	private int documentType;
+	private int result;
+
+	/**
+	 * Constructs a validator.
+	 */
+	public MRZValidator() {
+		this.chars = new char[MAX_LENGTH];
+		this.values = new byte[MAX_LENGTH];
+		this.length = 0;
+		this.documentType = MRZInfo.DOC_TYPE_UNSPECIFIED;
+		this.result = INVALID_LENGTH;
+	}
+
+	/**
+	 * Validates MRZ text. Line separators (<code>'\n'</code> and <code>'\r'</code>) are ignored.
+	 *
+	 * @param mrz the MRZ text
+	 *
+	 * @return {@link #VALID}, or a combination of the <code>INVALID_...</code> flags
+	 */
+	public int validate(CharSequence mrz) {
+		length = 0;
+		int flags = VALID;
+		int inputLength = mrz.length();
+		for (int i = 0; i < inputLength; i++) {
+			char c = mrz.charAt(i);
+			if (c == '\n' || c == '\r') { continue; }
+			if (length >= MAX_LENGTH) { length++; break; }
+			flags |= append(c);
+		}
+		return validate(flags);
+	}
+
+	/**
+	 * Validates MRZ text, encoded as ASCII (or UTF-8) bytes. Line separators
+	 * (<code>'\n'</code> and <code>'\r'</code>) are ignored.
+	 *
+	 * @param mrz a buffer containing the MRZ text
+	 * @param offset the offset of the MRZ text within <code>mrz</code>
+	 * @param count the number of bytes to consider
+	 *
+	 * @return {@link #VALID}, or a combination of the <code>INVALID_...</code> flags
+	 */
+	public int validate(byte[] mrz, int offset, int count) {
+		length = 0;
+		int flags = VALID;
+		for (int i = offset; i < offset + count; i++) {
+			char c = (char)(mrz[i] & 0xFF);
+			if (c == '\n' || c == '\r') { continue; }
+			if (length >= MAX_LENGTH) { length++; break; }
+			flags |= append(c);
+		}
+		return validate(flags);
+	}
+
+	/**
+	 * Whether the most recently validated input was valid.
+	 *
+	 * @return a boolean
+	 */
+	public boolean isValid() {
+		return result == VALID;
+	}
+
+	/**
+	 * Gets the result of the most recent validation.
+	 *
+	 * @return {@link #VALID}, or a combination of the <code>INVALID_...</code> flags
+	 */
+	public int getResult() {
+		return result;
+	}
+
+	/**
+	 * Gets the document type of the most recently validated input,
+	 * determined by the layout.
+	 *
+	 * @return one of {@link MRZInfo#DOC_TYPE_ID1}, {@link MRZInfo#DOC_TYPE_ID2},
+	 *         {@link MRZInfo#DOC_TYPE_ID3}, or {@link MRZInfo#DOC_TYPE_UNSPECIFIED}
+	 */
+	public int getDocumentType() {
+		return documentType;
+	}
+
+	/**
+	 * Constructs an MRZ info based on the most recently validated input.
+	 * Only ID1 and ID3 layouts are supported by {@link MRZInfo}.
+	 *
+	 * @return an MRZ info
+	 *
+	 * @throws IllegalStateException if the most recently validated input was not valid or has the ID2 layout
+	 */
+	public MRZInfo toMRZInfo() {
+		if (result != VALID) {
+			throw new IllegalStateException("Cannot construct MRZ info from invalid MRZ (result " + Integer.toHexString(result) + ")");
+		}
+		if (documentType != MRZInfo.DOC_TYPE_ID1 && documentType != MRZInfo.DOC_TYPE_ID3) {
+			throw new IllegalStateException("Cannot construct MRZ info for document type " + documentType);
+		}
+		return new MRZInfo(new String(chars, 0, length));
+	}
+
+	/**
+	 * Computes the 7-3-1 check digit for part of the MRZ.
+	 *
+	 * @param str a part of the MRZ
+	 * @param start the index of the first character
+	 * @param end the index after the last character
+	 *
+	 * @return the resulting check digit (in '0' - '9')
+	 *
+	 * @throws IllegalArgumentException if the text contains characters not allowed in the MRZ
+	 */
+	public static char checkDigit(CharSequence str, int start, int end) {
+		int sum = 0;
+		int w = 0;
+		for (int i = start; i < end; i++) {
+			sum += WEIGHTS[w] * getValue(str.charAt(i));
+			w = (w == 2) ? 0 : w + 1;
+		}
+		return (char)('0' + sum % 10);
+	}
+
+	/**
+	 * Computes the 7-3-1 check digit for part of the MRZ, encoded as ASCII bytes.
+	 *
+	 * @param str a buffer containing part of the MRZ
+	 * @param offset the offset of the first character
+	 * @param count the number of characters
+	 *
+	 * @return the resulting check digit (in '0' - '9')
+	 *
+	 * @throws IllegalArgumentException if the text contains characters not allowed in the MRZ
+	 */
+	public static char checkDigit(byte[] str, int offset, int count) {
+		int sum = 0;
+		int w = 0;
+		for (int i = offset; i < offset + count; i++) {
+			sum += WEIGHTS[w] * getValue((char)(str[i] & 0xFF));
+			w = (w == 2) ? 0 : w + 1;
+		}
+		return (char)('0' + sum % 10);
+	}
+
+	/* ONLY PRIVATE METHODS BELOW */
+
+	/**
+	 * Looks up the numerical value for an MRZ character.
+	 * Lower case letters are accepted, for compatibility with {@link MRZInfo}.
+	 *
+	 * @param c a character
+	 *
+	 * @return the numerical value
+	 *
+	 * @throws IllegalArgumentException if the character is not allowed in the MRZ
+	 */
+	private static int getValue(char c) {
+		if (c >= 'a' && c <= 'z') { c = (char)(c - 'a' + 'A'); }
+		int value = c < VALUES.length ? VALUES[c] : -1;
+		if (value < 0) {
+			throw new IllegalArgumentException("Could not decode MRZ character " + (int)c + " ('" + c + "')");
+		}
+		return value;
+	}
+
+	private int append(char c) {
+		int value = c < VALUES.length ? VALUES[c] : -1;
+		chars[length] = c;
+		values[length] = (byte)(value < 0 ? 0 : value);
+		length++;
+		return value < 0 ? INVALID_CHARACTER : VALID;
+	}
+
+	private int validate(int flags) {
+		switch (length) {
+		case ID1_LENGTH: documentType = MRZInfo.DOC_TYPE_ID1; flags |= validateID1(); break;
+		case ID2_LENGTH: documentType = MRZInfo.DOC_TYPE_ID2; flags |= validateID2(); break;
+		case ID3_LENGTH: documentType = MRZInfo.DOC_TYPE_ID3; flags |= validateID3(); break;
+		default: documentType = MRZInfo.DOC_TYPE_UNSPECIFIED; flags |= INVALID_LENGTH; break;
+		}
+		result = flags;
+		return flags;
+	}
+
+	/*
+	 * Line 1: document code (0-2), issuing state (2-5), document number (5-14), check digit (14), optional data (15-30).
+	 * Line 2: date of birth (30-36), check digit (36), sex (37), date of expiry (38-44), check digit (44),
+	 *         nationality (45-48), optional data (48-59), composite check digit (59).
+	 * Line 3: name (60-90).
+	 */
+	private int validateID1() {
+		int flags = VALID;
+		if (chars[14] == '<') {
+			/* Document number continues in the optional data, followed by its check digit, see note j. */
+			int end = 15;
+			while (end < 30 && chars[end] != '<') { end++; }
+			if (end == 15 || !isCheckDigit(weightedSum(5, 14, 0) + weightedSum(15, end - 1, 9), end - 1, false)) {
+				flags |= INVALID_DOCUMENT_NUMBER_CHECK_DIGIT;
+			}
+		} else if (!isCheckDigit(weightedSum(5, 14, 0), 14, false)) {
+			flags |= INVALID_DOCUMENT_NUMBER_CHECK_DIGIT;
+		}
+		if (!isCheckDigit(weightedSum(30, 36, 0), 36, false)) { flags |= INVALID_DATE_OF_BIRTH_CHECK_DIGIT; }
+		if (!isGender(37)) { flags |= INVALID_GENDER; }
+		if (!isCheckDigit(weightedSum(38, 44, 0), 44, false)) { flags |= INVALID_DATE_OF_EXPIRY_CHECK_DIGIT; }
+		int compositeSum = weightedSum(5, 30, 0) + weightedSum(30, 37, 25) + weightedSum(38, 45, 32) + weightedSum(48, 59, 39);
+		if (!isCheckDigit(compositeSum, 59, false)) { flags |= INVALID_COMPOSITE_CHECK_DIGIT; }
+		return flags;
+	}
+
+	/*
+	 * Line 1: document code (0-2), issuing state (2-5), name (5-36).
+	 * Line 2: document number (36-45), check digit (45), nationality (46-49), date of birth (49-55), check digit (55),
+	 *         sex (56), date of expiry (57-63), check digit (63), optional data (64-71), composite check digit (71).
+	 */
+	private int validateID2() {
+		int flags = VALID;
+		if (!isCheckDigit(weightedSum(36, 45, 0), 45, false)) { flags |= INVALID_DOCUMENT_NUMBER_CHECK_DIGIT; }
+		if (!isCheckDigit(weightedSum(49, 55, 0), 55, false)) { flags |= INVALID_DATE_OF_BIRTH_CHECK_DIGIT; }
+		if (!isGender(56)) { flags |= INVALID_GENDER; }
+		if (!isCheckDigit(weightedSum(57, 63, 0), 63, false)) { flags |= INVALID_DATE_OF_EXPIRY_CHECK_DIGIT; }
+		int compositeSum = weightedSum(36, 46, 0) + weightedSum(49, 56, 10) + weightedSum(57, 71, 17);
+		if (!isCheckDigit(compositeSum, 71, false)) { flags |= INVALID_COMPOSITE_CHECK_DIGIT; }
+		return flags;
+	}
+
+	/*
+	 * Line 1: document code (0-2), issuing state (2-5), name (5-44).
+	 * Line 2: document number (44-53), check digit (53), nationality (54-57), date of birth (57-63), check digit (63),
+	 *         sex (64), date of expiry (65-71), check digit (71), personal number (72-86), check digit (86),
+	 *         composite check digit (87).
+	 */
+	private int validateID3() {
+		int flags = VALID;
+		if (!isCheckDigit(weightedSum(44, 53, 0), 53, false)) { flags |= INVALID_DOCUMENT_NUMBER_CHECK_DIGIT; }
+		if (!isCheckDigit(weightedSum(57, 63, 0), 63, false)) { flags |= INVALID_DATE_OF_BIRTH_CHECK_DIGIT; }
+		if (!isGender(64)) { flags |= INVALID_GENDER; }
+		if (!isCheckDigit(weightedSum(65, 71, 0), 71, false)) { flags |= INVALID_DATE_OF_EXPIRY_CHECK_DIGIT; }
+		if (!isCheckDigit(weightedSum(72, 86, 0), 86, true)) { flags |= INVALID_PERSONAL_NUMBER_CHECK_DIGIT; }
+		int compositeSum = weightedSum(44, 54, 0) + weightedSum(57, 64, 10) + weightedSum(65, 87, 17);
+		if (!isCheckDigit(compositeSum, 87, false)) { flags |= INVALID_COMPOSITE_CHECK_DIGIT; }
+		return flags;
+	}
+
+	/**
+	 * Computes the weighted sum of the values in a range of the buffer.
+	 *
+	 * @param start the index of the first character
+	 * @param end the index after the last character
+	 * @param offset the number of characters preceding this range in the checked data, determines the first weight
+	 *
+	 * @return the (unreduced) weighted sum
+	 */
+	private int weightedSum(int start, int end, int offset) {
+		int sum = 0;
+		int w = offset % 3;
+		for (int i = start; i < end; i++) {
+			sum += WEIGHTS[w] * values[i];
+			w = (w == 2) ? 0 : w + 1;
+		}
+		return sum;
+	}
+
+	/**
+	 * Whether the character at <code>index</code> is the check digit for a weighted sum.
+	 *
+	 * @param sum the weighted sum
+	 * @param index the index of the check digit
+	 * @param isFillerAllowed whether '&lt;' is accepted instead of check digit '0'
+	 *
+	 * @return a boolean
+	 */
+	private boolean isCheckDigit(int sum, int index, boolean isFillerAllowed) {
+		char c = chars[index];
+		int checkDigit = sum % 10;
+		if (c == '<') { return isFillerAllowed && checkDigit == 0; }
+		return c == '0' + checkDigit;
+	}
+
+	private boolean isGender(int index) {
+		char c = chars[index];
+		return c == 'M' || c == 'F' || c == '<';
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * JMRTD - A Java API for accessing machine readable travel documents.
+ *
+ * Copyright (C) 2006 - 2015  The JMRTD team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id$
+ */
+
+package org.jmrtd.lds;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Least recently used cache of parsed files, bounded by the total length of their encodings.
+ * Each file is held in a {@link Slot} owned by the caller. The cache does not refer to the
+ * bytes a file was parsed from, so an evicted file can be parsed again from those bytes.
+ *
+ * Getting a file from its slot does not lock, adding, removing and evicting files does.
+ * Recency is the time of the last access to a slot.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision$
+ */
+class ParsedFileCache {
+
+	private volatile long maxSize;
+	private long size;
+
+	/** The slots currently holding a file. */
+	private List<Slot> slots;
+
+	/**
+	 * Constructs a cache.
+	 *
+	 * @param maxSize the maximum total length of the cached files, in bytes
+	 */
+	ParsedFileCache(long maxSize) {
+		if (maxSize < 0) { throw new IllegalArgumentException("Negative size " + maxSize); }
+		this.maxSize = maxSize;
+		this.slots = new ArrayList<Slot>();
+	}
+
+	/**
+	 * Gets the file in a slot, marking it as the most recently used one.
+	 *
+	 * @param slot the slot
+	 *
+	 * @return the file, or <code>null</code> if it is not (or no longer) cached
+	 */
+	LDSFile get(Slot slot) {
+		LDSFile result = slot.file;
+		if (result != null) { slot.lastAccessTime = System.nanoTime(); }
+		return result;
+	}
+
+	/**
+	 * Puts a file in a slot, evicting the least recently used files if the cache is full.
+	 * A file longer than the maximum size is not cached.
+	 *
+	 * @param slot the slot
+	 * @param file the file
+	 * @param length the length of the encoding of the file
+	 */
+	synchronized void put(Slot slot, LDSFile file, int length) {
+		remove(slot);
+		if (length > maxSize) { return; }
+		slot.file = file;
+		slot.length = length;
+		slot.lastAccessTime = System.nanoTime();
+		slots.add(slot);
+		size += length;
+		evict();
+	}
+
+	/**
+	 * Removes the file in a slot.
+	 *
+	 * @param slot the slot
+	 */
+	synchronized void remove(Slot slot) {
+		if (slots.remove(slot)) {
+			size -= slot.length;
+			slot.file = null;
+		}
+	}
+
+	/**
+	 * Sets the maximum total length of the cached files, evicting files if needed.
+	 *
+	 * @param maxSize the size in bytes, 0 disables the cache
+	 */
+	synchronized void setMaxSize(long maxSize) {
+		if (maxSize < 0) { throw new IllegalArgumentException("Negative size " + maxSize); }
+		this.maxSize = maxSize;
+		evict();
+	}
+
+	/**
+	 * The maximum total length of the cached files.
+	 *
+	 * @return the size in bytes
+	 */
+	long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * The total length of the cached files.
+	 *
+	 * @return the size in bytes
+	 */
+	synchronized long getSize() {
+		return size;
+	}
+
+	private void evict() {
+		while (size > maxSize) {
+			Slot leastRecentlyUsed = slots.get(0);
+			for (Slot slot: slots) {
+				if (slot.lastAccessTime - leastRecentlyUsed.lastAccessTime < 0) { leastRecentlyUsed = slot; }
+			}
+			remove(leastRecentlyUsed);
+		}
+	}
+
+	/**
+	 * Holds at most one cached file.
+	 */
+	static class Slot {
+
+		private volatile LDSFile file;
+		private volatile long lastAccessTime;
+
+		/** The length of the encoding of the file, guarded by the cache. */
+		private int length;
+	}
+}
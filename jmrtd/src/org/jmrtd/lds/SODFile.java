@@ -160,6 +160,15 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 
 	private SignedData signedData;
 
+	/*
+	 * Decoded parts of signedData, filled in lazily by the accessors below.
+	 * Reset in readContent, never serialized.
+	 */
+	private transient volatile LDSSecurityObject ldsSecurityObject;
+	private transient volatile SignerInfo signerInfo;
+	private transient volatile byte[] eContent;
+	private transient volatile X509Certificate docSigningCertificate;
+
 	/**
 	 * Constructs a Security Object data structure.
 	 *
@@ -339,6 +348,10 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 			throw new IOException("Was expecting an ASN.1 sequence as content");
 		}
 		this.signedData = SignedData.getInstance((ASN1Sequence)content);
+		this.ldsSecurityObject = null;
+		this.signerInfo = null;
+		this.eContent = null;
+		this.docSigningCertificate = null;
 	}
 
 	protected void writeContent(OutputStream out) throws IOException {
@@ -356,7 +369,7 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 	 * @return data group hashes indexed by data group numbers (1 to 16)
 	 */
 	public Map<Integer, byte[]> getDataGroupHashes() {
-		DataGroupHash[] hashObjects = getLDSSecurityObject(signedData).getDatagroupHash();
+		DataGroupHash[] hashObjects = getLDSSecurityObject().getDatagroupHash();
 		Map<Integer, byte[]> hashMap = new TreeMap<Integer, byte[]>(); /* HashMap... get it? :D (not funny anymore, now that it's a TreeMap.) */
 		for (int i = 0; i < hashObjects.length; i++) {
 			DataGroupHash hashObject = hashObjects[i];
@@ -373,7 +386,7 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 	 * @return the encrypted digest
 	 */
 	public byte[] getEncryptedDigest() {
-		return getEncryptedDigest(signedData);
+		return getEncryptedDigest(getSignerInfo());
 	}
 
 	/**
@@ -382,7 +395,17 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 	 * @return the e-content
 	 */
 	public byte[] getEContent() {
-		return getEContent(signedData);
+		byte[] result = eContent;
+		if (result == null) {
+			synchronized (this) {
+				result = eContent;
+				if (result == null) {
+					result = getEContent(signedData, getSignerInfo());
+					eContent = result;
+				}
+			}
+		}
+		return result == null ? null : result.clone();
 	}
 
 	/**
@@ -392,7 +415,7 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 	 */
 	public String getDigestAlgorithm() {
 		try {
-			return lookupMnemonicByOID(getLDSSecurityObject(signedData).getDigestAlgorithmIdentifier().getAlgorithm().getId());      
+			return lookupMnemonicByOID(getLDSSecurityObject().getDigestAlgorithmIdentifier().getAlgorithm().getId());      
 		} catch (NoSuchAlgorithmException nsae) {
 			LOGGER.severe("Exception: " + nsae.getMessage());
 			return null; // throw new IllegalStateException(nsae.toString());
@@ -406,7 +429,7 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 	 */
 	public String getSignerInfoDigestAlgorithm() {
 		try {
-			SignerInfo signerInfo = getSignerInfo(signedData);
+			SignerInfo signerInfo = getSignerInfo();
 			String digestAlgOID = signerInfo.getDigestAlgorithm().getAlgorithm().getId();
 			return lookupMnemonicByOID(digestAlgOID);
 		} catch (NoSuchAlgorithmException nsae) {
@@ -422,7 +445,7 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 	 */
 	public String getDigestEncryptionAlgorithm() {
 		try {
-			SignerInfo signerInfo = getSignerInfo(signedData);
+			SignerInfo signerInfo = getSignerInfo();
 			String digestEncryptionAlgorithmOID = signerInfo.getDigestEncryptionAlgorithm().getAlgorithm().getId();
 			if (digestEncryptionAlgorithmOID == null) { return null; }
 			return lookupMnemonicByOID(digestEncryptionAlgorithmOID);      
@@ -440,7 +463,7 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 	 * @since LDS V1.8
 	 */
 	public String getLDSVersion() {
-		LDSVersionInfo ldsVersionInfo = getLDSSecurityObject(signedData).getVersionInfo();
+		LDSVersionInfo ldsVersionInfo = getLDSSecurityObject().getVersionInfo();
 		if (ldsVersionInfo == null) {
 			return null;
 		} else {
@@ -456,7 +479,7 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 	 * @since LDS V1.8
 	 */
 	public String getUnicodeVersion() {
-		LDSVersionInfo ldsVersionInfo = getLDSSecurityObject(signedData).getVersionInfo();
+		LDSVersionInfo ldsVersionInfo = getLDSSecurityObject().getVersionInfo();
 		if (ldsVersionInfo == null) {
 			return null;
 		} else {
@@ -475,33 +498,17 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 	 * @throws CertificateException when certificate not be constructed from this SOd
 	 */
 	public X509Certificate getDocSigningCertificate() throws CertificateException {
-		byte[] certSpec = null;
-		ASN1Set certs = signedData.getCertificates();
-		if (certs == null || certs.size() <= 0) { return null; }
-		if (certs.size() != 1) {
-			LOGGER.warning("Found " + certs.size() + " certificates");
-		}
-		X509CertificateObject certObject = null;
-		for (int i = 0; i < certs.size(); i++) {
-			org.bouncycastle.asn1.x509.Certificate certAsASN1Object = org.bouncycastle.asn1.x509.Certificate.getInstance((ASN1Sequence)certs.getObjectAt(i));
-			certObject = new X509CertificateObject(certAsASN1Object); // NOTE: >= BC 1.48
-			//			certObject = new X509CertificateObject(X509CertificateStructure.getInstance(certAsASN1Object)); // NOTE: <= BC 1.47
-			certSpec = certObject.getEncoded();
-		}
-
-		/*
-		 * NOTE: we could have just returned that X509CertificateObject here,
-		 * but by reconstructing it using the client's default provider we hide
-		 * the fact that we're using BC.
-		 */
-		try {
-			CertificateFactory factory = CertificateFactory.getInstance("X.509");
-			X509Certificate cert = (X509Certificate)factory.generateCertificate(new ByteArrayInputStream(certSpec));
-			return cert;
-		} catch (Exception e) {
-			/* NOTE: Reconstructing using preferred provider didn't work?!?! */
-			return certObject;
+		X509Certificate result = docSigningCertificate;
+		if (result == null) {
+			synchronized (this) {
+				result = docSigningCertificate;
+				if (result == null) {
+					result = getDocSigningCertificate(signedData);
+					docSigningCertificate = result;
+				}
+			}
 		}
+		return result;
 	}
 
 	/**
@@ -633,6 +640,64 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 
 	/* ONLY PRIVATE METHODS BELOW */
 
+	private SignerInfo getSignerInfo() {
+		SignerInfo result = signerInfo;
+		if (result == null) {
+			synchronized (this) {
+				result = signerInfo;
+				if (result == null) {
+					result = getSignerInfo(signedData);
+					signerInfo = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	private LDSSecurityObject getLDSSecurityObject() {
+		LDSSecurityObject result = ldsSecurityObject;
+		if (result == null) {
+			synchronized (this) {
+				result = ldsSecurityObject;
+				if (result == null) {
+					result = getLDSSecurityObject(signedData);
+					ldsSecurityObject = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Decodes the (last) certificate in the certificates set of the signed data.
+	 * The certificate is constructed using the client's default provider
+	 * (hiding the fact that we're using BC), falling back to BC if that fails.
+	 * 
+	 * @param signedData the signed data
+	 * 
+	 * @return the certificate or <code>null</code> if none present
+	 * 
+	 * @throws CertificateException if the certificate cannot be decoded
+	 */
+	private static X509Certificate getDocSigningCertificate(SignedData signedData) throws CertificateException {
+		ASN1Set certs = signedData.getCertificates();
+		if (certs == null || certs.size() <= 0) { return null; }
+		if (certs.size() != 1) {
+			LOGGER.warning("Found " + certs.size() + " certificates");
+		}
+		ASN1Sequence certAsASN1Sequence = (ASN1Sequence)certs.getObjectAt(certs.size() - 1);
+		byte[] certSpec = null;
+		try {
+			certSpec = certAsASN1Sequence.getEncoded(ASN1Encoding.DER);
+			CertificateFactory factory = CertificateFactory.getInstance("X.509");
+			return (X509Certificate)factory.generateCertificate(new ByteArrayInputStream(certSpec));
+		} catch (Exception e) {
+			/* NOTE: Reconstructing using preferred provider didn't work?!?! */
+			org.bouncycastle.asn1.x509.Certificate certAsASN1Object = org.bouncycastle.asn1.x509.Certificate.getInstance(certAsASN1Sequence);
+			return new X509CertificateObject(certAsASN1Object); // NOTE: >= BC 1.48
+		}
+	}
+
 	private static SignerInfo getSignerInfo(SignedData signedData)  {
 		ASN1Set signerInfos = signedData.getSignerInfos();
 		if (signerInfos.size() > 1) {
@@ -693,11 +758,13 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 	 * @see #getDocSigningCertificate()
 	 * @see #getSignature()
 	 * 
+	 * @param signedData the signed data
+	 * @param signerInfo the signer info of the signed data
+	 * 
 	 * @return the contents of the security object over which the
 	 *         signature is to be computed
 	 */
-	private static byte[] getEContent(SignedData signedData) {
-		SignerInfo signerInfo = getSignerInfo(signedData);
+	private static byte[] getEContent(SignedData signedData, SignerInfo signerInfo) {
 		ASN1Set signedAttributesSet = signerInfo.getAuthenticatedAttributes();
 
 		ContentInfo contentInfo = signedData.getEncapContentInfo();
@@ -746,7 +813,7 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 	}
 
 	private IssuerAndSerialNumber getIssuerAndSerialNumber() {
-		SignerInfo signerInfo = getSignerInfo(signedData);
+		SignerInfo signerInfo = getSignerInfo();
 		SignerIdentifier signerIdentifier = signerInfo.getSID();
 		IssuerAndSerialNumber issuerAndSerialNumber = IssuerAndSerialNumber.getInstance(signerIdentifier.getId());
 		X500Name issuer = issuerAndSerialNumber.getName();
@@ -759,10 +826,11 @@ public class SODFile extends DataGroup { /* FIXME: strictly speaking this is not
 	 * 
 	 * @see #getDocSigningCertificate()
 	 * 
+	 * @param signerInfo the signer info
+	 * 
 	 * @return the signature
 	 */
-	private static byte[] getEncryptedDigest(SignedData signedData) {
-		SignerInfo signerInfo = getSignerInfo(signedData);
+	private static byte[] getEncryptedDigest(SignerInfo signerInfo) {
 		return signerInfo.getEncryptedDigest().getOctets();
 	}
 
@@ -29,10 +29,12 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Logger;
 
 import org.jnbis.WSQHelper.Token;
@@ -40,6 +42,11 @@ import org.jnbis.WSQHelper.Token;
 /**
  * WSQDecoder based on NBIS and/or JNBIS.
  * 
+ * A decoder instance can be reused for subsequent images, it keeps its tables
+ * and scratch buffers so that decoding a batch of images only allocates the output.
+ * Instances are not thread-safe, the static <code>decode</code> methods use a new instance per call.
+ * An instance can be given an executor to run the wavelet reconstruction of large images in stripes.
+ * 
  * @author <a href="mailto:m.h.shams@gmail.com">M. H. Shamsi</a>
  * @version 1.0.0
  * @date Oct 1, 2007
@@ -47,47 +54,285 @@ import org.jnbis.WSQHelper.Token;
 public class WSQDecoder implements WSQConstants, NISTConstants {
 
 	private static final Logger LOGGER = Logger.getLogger("org.jmrtd");
-	
+
+	/** The maximum reduction level, each level halves the width and height of the decoded image. */
+	public static final int MAX_REDUCTION = 4;
+
+	/* The wavelet tree nodes that hold the lowpass image of each reduction level. */
+	private static final int[] REDUCTION_NODES = { 0, 1, 14, 15, 19 };
+
+	private Token token;
+	private WSQHuffmanDecoder huffmanDecoder;
+
+	/* Scratch buffers, at least width * height long. */
+	private int[] qdata;
+	private float[] fdata;
+	private float[] fdataTemp;
+
+	/** The executor for the wavelet reconstruction, <code>null</code> to reconstruct on the caller's thread. */
+	private ExecutorService executor;
+
+	/**
+	 * Constructs a decoder.
+	 */
+	public WSQDecoder() {
+		token = new Token();
+		huffmanDecoder = new WSQHuffmanDecoder();
+	}
+
+	/**
+	 * Sets the executor used to reconstruct large images in parallel.
+	 * The rows and columns of each reconstruction pass are split into stripes,
+	 * the output is identical to that of reconstructing on the caller's thread.
+	 *
+	 * @param executor an executor, or <code>null</code> to reconstruct on the caller's thread
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
 	public static BitmapWithMetadata decode(InputStream is) throws IOException {
+		return new WSQDecoder().decodeBitmap(is);
+	}
+
+	public static BitmapWithMetadata decode(DataInput dataInput) throws IOException {
+		return new WSQDecoder().decodeBitmap(dataInput);
+	}
+
+	/**
+	 * Decodes a WSQ image, reusing the scratch buffers of this decoder.
+	 *
+	 * @param is the input stream positioned at the SOI marker
+	 *
+	 * @return the decoded bitmap
+	 *
+	 * @throws IOException on error reading the input
+	 */
+	public BitmapWithMetadata decodeBitmap(InputStream is) throws IOException {
+		return decodeBitmap(is, 0);
+	}
+
+	/**
+	 * Decodes a WSQ image at reduced resolution, reusing the scratch buffers of this decoder.
+	 *
+	 * @param is the input stream positioned at the SOI marker
+	 * @param reduction the reduction level, between 0 (full resolution) and {@link #MAX_REDUCTION}
+	 *
+	 * @return the decoded bitmap
+	 *
+	 * @throws IOException on error reading the input
+	 *
+	 * @see #decodeBitmap(DataInput, int)
+	 */
+	public BitmapWithMetadata decodeBitmap(InputStream is, int reduction) throws IOException {
 		if (is instanceof DataInput)
-			return decode((DataInput)is);
+			return decodeBitmap((DataInput)is, reduction);
 		else
-			return decode((DataInput)new DataInputStream(is));
+			return decodeBitmap((DataInput)new DataInputStream(is), reduction);
 	}
 
-	public static BitmapWithMetadata decode(DataInput dataInput) throws IOException {
-		Token token = new Token();
+	/**
+	 * Decodes a WSQ image, reusing the scratch buffers of this decoder.
+	 *
+	 * @param dataInput the input positioned at the SOI marker
+	 *
+	 * @return the decoded bitmap
+	 *
+	 * @throws IOException on error reading the input
+	 */
+	public BitmapWithMetadata decodeBitmap(DataInput dataInput) throws IOException {
+		return decodeBitmap(dataInput, 0);
+	}
 
-		/* Read the SOI marker. */
-		getCMarkerWSQ(dataInput, SOI_WSQ);
+	/**
+	 * Decodes a WSQ image at reduced resolution, reusing the scratch buffers of this decoder.
+	 * At reduction level <i>n</i> the wavelet reconstruction stops at the lowpass subband
+	 * of the <i>n</i>-th decomposition level, which is an image of about
+	 * 1/2<sup><i>n</i></sup> times the width and height of the encoded image.
+	 * The subbands that are not needed for it are not unquantized or reconstructed.
+	 *
+	 * The NISTCOM metadata of the result describes the encoded image,
+	 * the resolution of the bitmap itself is reduced accordingly.
+	 *
+	 * @param dataInput the input positioned at the SOI marker
+	 * @param reduction the reduction level, between 0 (full resolution) and {@link #MAX_REDUCTION}
+	 *
+	 * @return the decoded bitmap
+	 *
+	 * @throws IOException on error reading the input
+	 */
+	public BitmapWithMetadata decodeBitmap(DataInput dataInput, int reduction) throws IOException {
+		return decode(dataInput, reduction, null, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
 
-		/* Read in supporting tables up to the SOF marker. */
-		int marker = getCMarkerWSQ(dataInput, TBLS_N_SOF);
-		while (marker != SOF_WSQ) {
-			getCTableWSQ(dataInput, token, marker);
-			marker = getCMarkerWSQ(dataInput, TBLS_N_SOF);
-		}
+	/**
+	 * Decodes a WSQ image into a caller supplied array of 8-bit samples, without allocating
+	 * an intermediate image. The scratch buffers of this decoder are reused.
+	 * The image is written row by row, rows start <code>scanlineStride</code> samples apart.
+	 *
+	 * @param is the input stream positioned at the SOI marker
+	 * @param reduction the reduction level, between 0 (full resolution) and {@link #MAX_REDUCTION}
+	 * @param pixels the array to write the samples to
+	 * @param offset the index in <code>pixels</code> of the top left sample
+	 * @param scanlineStride the distance between the starts of subsequent rows
+	 *
+	 * @return a bitmap with the dimensions and metadata of the decoded image, its pixels are <code>null</code>
+	 *
+	 * @throws IOException on error reading the input
+	 * @throws IllegalArgumentException if the image does not fit in <code>pixels</code>
+	 *
+	 * @see #decodeBitmap(DataInput, int, byte[], int, int)
+	 */
+	public BitmapWithMetadata decodeBitmap(InputStream is, int reduction, byte[] pixels, int offset, int scanlineStride) throws IOException {
+		if (is instanceof DataInput)
+			return decodeBitmap((DataInput)is, reduction, pixels, offset, scanlineStride);
+		else
+			return decodeBitmap((DataInput)new DataInputStream(is), reduction, pixels, offset, scanlineStride);
+	}
 
-		/* Read in the Frame Header. */
-		WSQHelper.HeaderFrm frmHeaderWSQ = getCFrameHeaderWSQ(dataInput);
+	/**
+	 * Decodes a WSQ image into a caller supplied array of 8-bit samples, without allocating
+	 * an intermediate image. The scratch buffers of this decoder are reused.
+	 * The image is written row by row, rows start <code>scanlineStride</code> samples apart.
+	 *
+	 * @param dataInput the input positioned at the SOI marker
+	 * @param reduction the reduction level, between 0 (full resolution) and {@link #MAX_REDUCTION}
+	 * @param pixels the array to write the samples to
+	 * @param offset the index in <code>pixels</code> of the top left sample
+	 * @param scanlineStride the distance between the starts of subsequent rows
+	 *
+	 * @return a bitmap with the dimensions and metadata of the decoded image, its pixels are <code>null</code>
+	 *
+	 * @throws IOException on error reading the input
+	 * @throws IllegalArgumentException if the image does not fit in <code>pixels</code>
+	 *
+	 * @see #decodeHeader(DataInput)
+	 */
+	public BitmapWithMetadata decodeBitmap(DataInput dataInput, int reduction, byte[] pixels, int offset, int scanlineStride) throws IOException {
+		if (pixels == null) { throw new IllegalArgumentException("pixels == null"); }
+		return decode(dataInput, reduction, pixels, offset, scanlineStride, scanlineStride, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Decodes a WSQ image into <code>pixels</code>, or into a new array if <code>pixels</code> is <code>null</code>.
+	 * The image should be at most <code>maxWidth</code> x <code>maxHeight</code> pixels.
+	 */
+	private BitmapWithMetadata decode(DataInput dataInput, int reduction, byte[] pixels, int offset, int scanlineStride, int maxWidth, int maxHeight) throws IOException {
+		if (reduction < 0 || reduction > MAX_REDUCTION) { throw new IllegalArgumentException("Reduction level " + reduction + " out of range"); }
+
+		WSQHelper.HeaderFrm frmHeaderWSQ = readHeader(dataInput);
 		int width = frmHeaderWSQ.width;
 		int height = frmHeaderWSQ.height;
 
 		/* Build WSQ decomposition trees. */
 		WSQHelper.buildWSQTrees(token, width, height);
 
+		/* The lowpass image to reconstruct, in the top left corner. */
+		int reducedNode = REDUCTION_NODES[reduction];
+		int reducedWidth = token.wtree[reducedNode].lenx;
+		int reducedHeight = token.wtree[reducedNode].leny;
+
+		byte[] cdata = pixels;
+		if (cdata == null) {
+			cdata = new byte[reducedWidth * reducedHeight];
+			offset = 0;
+			scanlineStride = reducedWidth;
+		}
+		if (reducedWidth > maxWidth || reducedHeight > maxHeight
+				|| offset < 0 || (long)offset + (long)(reducedHeight - 1) * scanlineStride + reducedWidth > cdata.length) {
+			throw new IllegalArgumentException("Image of " + reducedWidth + " x " + reducedHeight + " pixels does not fit");
+		}
+
+		int numPix = width * height;
+		if (qdata == null || qdata.length < numPix) {
+			qdata = new int[numPix];
+			fdata = new float[numPix];
+			fdataTemp = new float[numPix];
+		}
+
 		/* Decode the Huffman encoded buffer blocks. */
-		int[] qdata = huffmanDecodeDataMem(dataInput, token, width * height);
+		huffmanDecodeDataMem(dataInput, token, qdata, numPix);
 
 		/* Decode the quantize wavelet subband buffer. */
-		float[] fdata = unquantize(token, qdata, width, height);
+		unquantize(token, qdata, fdata, width, height, reducedWidth, reducedHeight);
 
-		wsqReconstruct(token, fdata, width, height);
+		wsqReconstruct(executor, token, fdata, fdataTemp, width, height, reducedNode);
+
+		/* Each level of lowpass filtering in both directions multiplies by the square of the DC gain of the filter. */
+		float loSum = 0.0f;
+		for (int i = 0; i < token.tableDTT.losz; i++) {
+			loSum += token.tableDTT.lofilt[i];
+		}
+		float gain = 1.0f;
+		for (int level = 0; level < reduction; level++) {
+			gain *= loSum * loSum;
+		}
 
 		/* Convert floating point pixels to unsigned char pixels. */
-		byte[] cdata = convertImageToByte(fdata, width, height, frmHeaderWSQ.mShift, frmHeaderWSQ.rScale);
+		convertImageToByte(fdata, width, reducedWidth, reducedHeight, frmHeaderWSQ.mShift, frmHeaderWSQ.rScale / gain, cdata, offset, scanlineStride);
+
+		return createBitmap(pixels == null ? cdata : null, reducedWidth, reducedHeight, width, height, reduction);
+	}
+
+	/**
+	 * Reads the tables and the frame header of a WSQ image, without decoding the pixels.
+	 * This gives the dimensions of the image and the comments preceding the frame header,
+	 * which include the NISTCOM metadata written by NBIS and by {@link WSQEncoder}.
+	 *
+	 * @param is the input stream positioned at the SOI marker
+	 *
+	 * @return a bitmap with <code>null</code> pixels
+	 *
+	 * @throws IOException on error reading the input
+	 */
+	public BitmapWithMetadata decodeHeader(InputStream is) throws IOException {
+		if (is instanceof DataInput)
+			return decodeHeader((DataInput)is);
+		else
+			return decodeHeader((DataInput)new DataInputStream(is));
+	}
+
+	/**
+	 * Reads the tables and the frame header of a WSQ image, without decoding the pixels.
+	 * This gives the dimensions of the image and the comments preceding the frame header,
+	 * which include the NISTCOM metadata written by NBIS and by {@link WSQEncoder}.
+	 *
+	 * @param dataInput the input positioned at the SOI marker
+	 *
+	 * @return a bitmap with <code>null</code> pixels
+	 *
+	 * @throws IOException on error reading the input
+	 */
+	public BitmapWithMetadata decodeHeader(DataInput dataInput) throws IOException {
+		WSQHelper.HeaderFrm frmHeaderWSQ = readHeader(dataInput);
+		return createBitmap(null, frmHeaderWSQ.width, frmHeaderWSQ.height, frmHeaderWSQ.width, frmHeaderWSQ.height, 0);
+	}
 
+	/**
+	 * Reads the SOI marker, the tables up to the SOF marker, and the frame header.
+	 */
+	private WSQHelper.HeaderFrm readHeader(DataInput dataInput) throws IOException {
+		token.reset();
 
+		/* Read the SOI marker. */
+		getCMarkerWSQ(dataInput, SOI_WSQ);
+
+		/* Read in supporting tables up to the SOF marker. */
+		int marker = getCMarkerWSQ(dataInput, TBLS_N_SOF);
+		while (marker != SOF_WSQ) {
+			getCTableWSQ(dataInput, token, marker);
+			marker = getCMarkerWSQ(dataInput, TBLS_N_SOF);
+		}
+
+		/* Read in the Frame Header. */
+		return getCFrameHeaderWSQ(dataInput);
+	}
+
+	/**
+	 * Creates the bitmap with the metadata from the comments read so far.
+	 * The NISTCOM fields describe the encoded image of <code>width</code> x <code>height</code> pixels.
+	 */
+	private BitmapWithMetadata createBitmap(byte[] cdata, int bitmapWidth, int bitmapHeight, int width, int height, int reduction) {
 		Map<String,String> nistcom = new LinkedHashMap<String,String>();
 		List<String> comments = new ArrayList<String>();
 		for (String comment : token.comments) {
@@ -111,7 +356,11 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 		} catch (Throwable t){}
 		if (!ppiOk)
 			nistcom.put(NCM_PPI, "-1");
-		return new BitmapWithMetadata(cdata, width, height, Integer.parseInt(nistcom.get(NCM_PPI)), 8, 1, nistcom, comments.toArray(new String[0]));
+		int ppi = Integer.parseInt(nistcom.get(NCM_PPI));
+		if (ppi > 0) {
+			ppi >>= reduction;
+		}
+		return new BitmapWithMetadata(cdata, bitmapWidth, bitmapHeight, ppi, 8, 1, nistcom, comments.toArray(new String[0]));
 	}
 
 	private static int getCMarkerWSQ(DataInput dataInput, int type) throws IOException {
@@ -337,8 +586,8 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 
 		/* Store table into global structure list. */
 		int tableId = firstHuffmanTable.tableId;
-		token.tableDHT[tableId].huffbits = (int[]) firstHuffmanTable.huffbits.clone();
-		token.tableDHT[tableId].huffvalues = (int[]) firstHuffmanTable.huffvalues.clone();
+		System.arraycopy(firstHuffmanTable.huffbits, 0, token.tableDHT[tableId].huffbits, 0, MAX_HUFFBITS);
+		System.arraycopy(firstHuffmanTable.huffvalues, 0, token.tableDHT[tableId].huffvalues, 0, MAX_HUFFCOUNTS_WSQ + 1);
 		token.tableDHT[tableId].tabdef = 1;
 
 		int bytesLeft = firstHuffmanTable.bytesLeft;
@@ -353,8 +602,8 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 			}
 
 			/* Store table into global structure list. */
-			token.tableDHT[tableId].huffbits = (int[]) huffmantable.huffbits.clone();
-			token.tableDHT[tableId].huffvalues = (int[]) huffmantable.huffvalues.clone();
+			System.arraycopy(huffmantable.huffbits, 0, token.tableDHT[tableId].huffbits, 0, MAX_HUFFBITS);
+			System.arraycopy(huffmantable.huffvalues, 0, token.tableDHT[tableId].huffvalues, 0, MAX_HUFFCOUNTS_WSQ + 1);
 			token.tableDHT[tableId].tabdef = 1;
 			bytesLeft = huffmantable.bytesLeft;
 		}
@@ -439,51 +688,40 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 		return headerFrm;
 	}
 
-	private static int[] huffmanDecodeDataMem(DataInput DataInput, Token token, int size) throws IOException {
-		int[] qdata = new int[size];
-		int[] maxcode = new int[MAX_HUFFBITS + 1];
-		int[] mincode = new int[MAX_HUFFBITS + 1];
-		int[] valptr = new int[MAX_HUFFBITS + 1];
-
-		WSQHelper.Ref<Integer> marker = new WSQHelper.Ref<Integer>(getCMarkerWSQ(DataInput, TBLS_N_SOB));
+	private void huffmanDecodeDataMem(DataInput DataInput, Token token, int[] qdata, int size) throws IOException {
+		Arrays.fill(qdata, 0, size, 0);
+		huffmanDecoder.setDataInput(DataInput);
 
-		WSQHelper.Ref<Integer> bitCount = new WSQHelper.Ref<Integer>(0); /* bit count for getc_nextbits_wsq routine */
-		WSQHelper.Ref<Integer> nextByte = new WSQHelper.Ref<Integer>(0); /*next byte of buffer*/
-		int hufftableId = 0; /* huffman table number */
+		int marker = getCMarkerWSQ(DataInput, TBLS_N_SOB);
 		int ip = 0;
 
 		boolean isPrematureEOF = false;
-		while (!isPrematureEOF && (marker.value != EOI_WSQ)) {
+		while (!isPrematureEOF && (marker != EOI_WSQ)) {
 
-			if (marker.value != 0) {
-				while (marker.value != SOB_WSQ) {
-					getCTableWSQ(DataInput, token, marker.value);
-					marker.value = getCMarkerWSQ(DataInput, TBLS_N_SOB);
+			if (marker != 0) {
+				while (marker != SOB_WSQ) {
+					getCTableWSQ(DataInput, token, marker);
+					marker = getCMarkerWSQ(DataInput, TBLS_N_SOB);
 				}
-				hufftableId = getCBlockHeader(DataInput); /* huffman table number */
+				int hufftableId = getCBlockHeader(DataInput); /* huffman table number */
 
 				if (token.tableDHT[hufftableId].tabdef != 1) {
 					throw new RuntimeException("ERROR : huffmanDecodeDataMem : huffman table undefined.");
 				}
 
-				/* the next two routines reconstruct the huffman tables */
-				WSQHelper.HuffCode[] hufftable = buildHuffsizes(token.tableDHT[hufftableId].huffbits, MAX_HUFFCOUNTS_WSQ);
-				buildHuffcodes(hufftable);
-
-				/* this routine builds a set of three tables used in decoding */
-				/* the compressed buffer*/
-				genDecodeTable(hufftable, maxcode, mincode, valptr, token.tableDHT[hufftableId].huffbits);
-
-				bitCount.value = 0;
-				marker.value = 0;
+				/* reconstruct the huffman tables used in decoding the compressed buffer */
+				huffmanDecoder.setTable(token.tableDHT[hufftableId].huffbits, token.tableDHT[hufftableId].huffvalues);
+				huffmanDecoder.reset();
+				marker = 0;
 			}
 
 			try {
 				/* get next huffman category code from compressed input buffer stream */
-				int nodeptr = decodeDataMem(DataInput, mincode, maxcode, valptr, token.tableDHT[hufftableId].huffvalues, bitCount, marker, nextByte);
+				int nodeptr = huffmanDecoder.decodeSymbol();
 				/* nodeptr  pointers for decoding */
 
 				if (nodeptr == -1) {
+					marker = huffmanDecoder.getMarker();
 					continue;
 				}
 
@@ -494,20 +732,20 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 				} else if (nodeptr > 106 && nodeptr < 0xff) {
 					qdata[ip++] = nodeptr - 180;
 				} else if (nodeptr == 101) {
-					qdata[ip++] = getCNextbitsWSQ(DataInput,  marker, bitCount, 8, nextByte);
+					qdata[ip++] = huffmanDecoder.getBits(8);
 				} else if (nodeptr == 102) {
-					qdata[ip++] = -getCNextbitsWSQ(DataInput, marker, bitCount, 8, nextByte);
+					qdata[ip++] = -huffmanDecoder.getBits(8);
 				} else if (nodeptr == 103) {
-					qdata[ip++] = getCNextbitsWSQ(DataInput, marker, bitCount, 16, nextByte);
+					qdata[ip++] = huffmanDecoder.getBits(16);
 				} else if (nodeptr == 104) {
-					qdata[ip++] = -getCNextbitsWSQ(DataInput, marker, bitCount, 16, nextByte);
+					qdata[ip++] = -huffmanDecoder.getBits(16);
 				} else if (nodeptr == 105) {
-					int n = getCNextbitsWSQ(DataInput, marker, bitCount, 8, nextByte);
+					int n = huffmanDecoder.getBits(8);
 					while (n-- > 0) {
 						qdata[ip++] = 0;
 					}
 				} else if (nodeptr == 106) {
-					int n = getCNextbitsWSQ(DataInput, marker, bitCount, 16, nextByte);
+					int n = huffmanDecoder.getBits(16);
 					while (n-- > 0) {
 						qdata[ip++] = 0;
 					}
@@ -519,8 +757,6 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 				isPrematureEOF = true;
 			}
 		}
-
-		return qdata;
 	}
 
 	private static int getCBlockHeader(DataInput dataInput) throws IOException {
@@ -528,135 +764,11 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 		return dataInput.readUnsignedByte();
 	}
 
-	private static WSQHelper.HuffCode[] buildHuffsizes(int[] huffbits, int maxHuffcounts) {
-		WSQHelper.HuffCode[] huffcodeTable;    /*table of huffman codes and sizes*/
-		int numberOfCodes = 1;     /*the number codes for a given code size*/
-
-		huffcodeTable = new WSQHelper.HuffCode[maxHuffcounts + 1];
-
-		int tempSize = 0;
-		for (int codeSize = 1; codeSize <= MAX_HUFFBITS; codeSize++) {
-			while (numberOfCodes <= huffbits[codeSize - 1]) {
-				huffcodeTable[tempSize] = new WSQHelper.HuffCode();
-				huffcodeTable[tempSize].size = codeSize;
-				tempSize++;
-				numberOfCodes++;
-			}
-			numberOfCodes = 1;
-		}
-
-		huffcodeTable[tempSize] = new WSQHelper.HuffCode();
-		huffcodeTable[tempSize].size = 0;
-
-		return huffcodeTable;
-	}
-
-	private static void buildHuffcodes(WSQHelper.HuffCode[] huffcodeTable) {
-		short tempCode = 0;  /*used to construct code word*/
-		int pointer = 0;     /*pointer to code word information*/
-
-		int tempSize = huffcodeTable[0].size;
-		if (huffcodeTable[pointer].size == 0) {
-			return;
-		}
-
-		do {
-			do {
-				huffcodeTable[pointer].code = tempCode;
-				tempCode++;
-				pointer++;
-			} while (huffcodeTable[pointer].size == tempSize);
-
-			if (huffcodeTable[pointer].size == 0)
-				return;
-
-			do {
-				tempCode <<= 1;
-				tempSize++;
-			} while (huffcodeTable[pointer].size != tempSize);
-		} while (huffcodeTable[pointer].size == tempSize);
-	}
-
-	private static void genDecodeTable(WSQHelper.HuffCode[] huffcodeTable, int[] maxcode, int[] mincode, int[] valptr, int[] huffbits) {
-		for (int i = 0; i <= MAX_HUFFBITS; i++) {
-			maxcode[i] = 0;
-			mincode[i] = 0;
-			valptr[i] = 0;
-		}
-
-		int i2 = 0;
-		for (int i = 1; i <= MAX_HUFFBITS; i++) {
-			if (huffbits[i - 1] == 0) {
-				maxcode[i] = -1;
-				continue;
-			}
-			valptr[i] = i2;
-			mincode[i] = huffcodeTable[i2].code;
-			i2 = i2 + huffbits[i - 1] - 1;
-			maxcode[i] = huffcodeTable[i2].code;
-			i2++;
-		}
-	}
-
-	private static int decodeDataMem(DataInput DataInput, int[] mincode, int[] maxcode, int[] valptr, int[] huffvalues, WSQHelper.Ref<Integer> bitCount, WSQHelper.Ref<Integer> marker, WSQHelper.Ref<Integer> nextByte) throws IOException {
-
-		short code = (short) getCNextbitsWSQ(DataInput, marker, bitCount, 1, nextByte);   /* becomes a huffman code word  (one bit at a time) */
-		if (marker.value != 0) {
-			return -1;
-		}
-
-		int inx;
-		for (inx = 1; code > maxcode[inx]; inx++) {
-			int tbits = getCNextbitsWSQ(DataInput, marker, bitCount, 1, nextByte);  /* becomes a huffman code word  (one bit at a time)*/
-			code = (short) ((code << 1) + tbits);
-
-			if (marker.value != 0) {
-				return -1;
-			}
-		}
-
-		int inx2 = valptr[inx] + code - mincode[inx];  /*increment variables*/
-		return huffvalues[inx2];
-	}
-
-	private static int getCNextbitsWSQ(DataInput dataInput, WSQHelper.Ref<Integer> marker, WSQHelper.Ref<Integer> bitCount, int bitsReq, WSQHelper.Ref<Integer> nextByte) throws IOException {
-		if (bitCount.value == 0) {
-			nextByte.value = dataInput.readUnsignedByte();
-
-			bitCount.value = 8;
-			if (nextByte.value == 0xFF) {
-				int code2 = dataInput.readUnsignedByte();  /*stuffed byte of buffer*/
-
-				if (code2 != 0x00 && bitsReq == 1) {
-					marker.value = (nextByte.value << 8) | code2;
-					return 1;
-				}
-				if (code2 != 0x00) {
-					throw new RuntimeException("ERROR: getCNextbitsWSQ : No stuffed zeros.");
-				}
-			}
-		}
-
-		int bits, tbits;  /*bits of current buffer byte requested*/
-		int bitsNeeded; /*additional bits required to finish request*/
-
-		if (bitsReq <= bitCount.value) {
-			bits = (nextByte.value >> (bitCount.value - bitsReq)) & (BITMASK[bitsReq]);
-			bitCount.value -= bitsReq;
-			nextByte.value &= BITMASK[bitCount.value];
-		} else {
-			bitsNeeded = bitsReq - bitCount.value; /*additional bits required to finish request*/
-			bits = nextByte.value << bitsNeeded;
-			bitCount.value = 0;
-			tbits = getCNextbitsWSQ(dataInput, marker, bitCount, bitsNeeded, nextByte);
-			bits |= tbits;
-		}
-
-		return bits;
-	}
-
-	private static float[] unquantize(Token token, int[] sip, int width, int height) {
-		float[] fip = new float[width * height];  /* floating point image */
+	/**
+	 * Unquantizes the subbands that lie within the top left <code>regionWidth</code> x <code>regionHeight</code> pixels.
+	 */
+	private static void unquantize(Token token, int[] sip, float[] fip, int width, int height, int regionWidth, int regionHeight) {
+		Arrays.fill(fip, 0, width * height, 0.0f);
 
 		if (token.tableDQT.dqtDef != 1) {
 			throw new RuntimeException("ERROR: unquantize : quantization table parameters not defined!");
@@ -670,6 +782,11 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 				continue;
 			}
 
+			if (token.qtree[cnt].x >= regionWidth || token.qtree[cnt].y >= regionHeight) {
+				sptr += token.qtree[cnt].lenx * token.qtree[cnt].leny;
+				continue;
+			}
+
 			int fptr = (token.qtree[cnt].y * width) + token.qtree[cnt].x;
 
 			for (int row = 0; row < token.qtree[cnt].leny; row++, fptr += width - token.qtree[cnt].lenx) {
@@ -688,11 +805,13 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 				}
 			}
 		}
-
-		return fip;
 	}
 
-	private static void wsqReconstruct(Token token, float[] fdata, int width, int height) {
+	/**
+	 * Reconstructs the floating point pixmap up to and including wavelet tree node <code>lastNode</code>.
+	 * Nodes that lie outside of the region of <code>lastNode</code> are skipped.
+	 */
+	private static void wsqReconstruct(ExecutorService executor, Token token, float[] fdata, float[] fdataTemp, int width, int height, int lastNode) {
 		if (token.tableDTT.lodef != 1) {
 			throw new RuntimeException("ERROR: wsq_reconstruct : Lopass filter coefficients not defined");
 		}
@@ -701,19 +820,23 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 			throw new RuntimeException("ERROR: wsq_reconstruct : Hipass filter coefficients not defined");
 		}
 
-		int numPix = width * height;
-		/* Allocate temporary floating point pixmap. */
-		float[] fdataTemp = new float[numPix];
+		/* Clear temporary floating point pixmap. */
+		Arrays.fill(fdataTemp, 0, width * height, 0.0f);
 
 		/* Reconstruct floating point pixmap from wavelet subband buffer. */
-		for (int node = W_TREELEN - 1; node >= 0; node--) {
+		int regionWidth = token.wtree[lastNode].lenx;
+		int regionHeight = token.wtree[lastNode].leny;
+		for (int node = W_TREELEN - 1; node >= lastNode; node--) {
+			if (token.wtree[node].x >= regionWidth || token.wtree[node].y >= regionHeight) {
+				continue;
+			}
 			int fdataBse = (token.wtree[node].y * width) + token.wtree[node].x;
-			joinLets(fdataTemp, fdata, 0, fdataBse, token.wtree[node].lenx, token.wtree[node].leny,
+			joinLets(executor, fdataTemp, fdata, 0, fdataBse, token.wtree[node].lenx, token.wtree[node].leny,
 					1, width,
 					token.tableDTT.hifilt, token.tableDTT.hisz,
 					token.tableDTT.lofilt, token.tableDTT.losz,
 					token.wtree[node].invcl);
-			joinLets(fdata, fdataTemp, fdataBse, 0, token.wtree[node].leny, token.wtree[node].lenx,
+			joinLets(executor, fdata, fdataTemp, fdataBse, 0, token.wtree[node].leny, token.wtree[node].lenx,
 					width, 1,
 					token.tableDTT.hifilt, token.tableDTT.hisz,
 					token.tableDTT.lofilt, token.tableDTT.losz,
@@ -721,20 +844,61 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 		}
 	}
 
+	private static void joinLets(
+			ExecutorService executor,
+			final float[] newdata,
+			final float[] olddata,
+			final int newIndex,
+			final int oldIndex,
+			int len1,       /* temporary length parameters */
+			final int len2,
+			final int pitch,      /* pitch gives next row_col to filter */
+			final int stride,    /*           stride gives next pixel to filter */
+			float[] hi,
+			final int hsz,   /* NEW */
+			final float[] lo,      /* filter coefficients */
+			final int lsz,   /* NEW */
+			final int inv)        /* spectral inversion? */ {
+		if (lsz % 2 == 0) {
+			/* Even length filters are applied with the hipass coefficients negated, use a negated copy. */
+			float[] negatedHi = new float[hsz];
+			for (int i = 0; i < hsz; i++) {
+				negatedHi[i] = hi[i] * -1.0f;
+			}
+			hi = negatedHi;
+		}
+
+		if (executor == null || len1 * len2 < WSQHelper.PARALLEL_THRESHOLD) {
+			joinLets(newdata, olddata, newIndex, oldIndex, len2, pitch, stride, hi, hsz, lo, lsz, inv, 0, len1);
+		} else {
+			final float[] h = hi;
+			WSQHelper.runStriped(executor, len1, new WSQHelper.StripedPass() {
+				public void run(int first, int last) {
+					joinLets(newdata, olddata, newIndex, oldIndex, len2, pitch, stride, h, hsz, lo, lsz, inv, first, last);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Reconstructs rows (or columns) <code>first</code> up to <code>last</code> of a subband split.
+	 * For even length filters <code>hi</code> contains the negated hipass coefficients.
+	 */
 	private static void joinLets(
 			float[] newdata,
 			float[] olddata,
 			int newIndex,
 			int oldIndex,
-			int len1,       /* temporary length parameters */
-			int len2,
+			int len2,       /* temporary length parameter */
 			int pitch,      /* pitch gives next row_col to filter */
 			int stride,    /*           stride gives next pixel to filter */
 			float[] hi,
 			int hsz,   /* NEW */
 			float[] lo,      /* filter coefficients */
 			int lsz,   /* NEW */
-			int inv)        /* spectral inversion? */ {
+			int inv,        /* spectral inversion? */
+			int first,      /* rows or columns to filter */
+			int last) {
 		int lp0, lp1;
 		int hp0, hp1;
 		int lopass, hipass;   /* lo/hi pass image pointers */
@@ -817,13 +981,9 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 				hoc = 0;
 				ohle = 0;
 			}
-
-			for (i = 0; i < hsz; i++) {
-				hi[i] *= -1.0;
-			}
 		}
 
-		for (cl_rw = 0; cl_rw < len1; cl_rw++) {
+		for (cl_rw = first; cl_rw < last; cl_rw++) {
 			limg = newIndex + cl_rw * pitch;
 			himg = limg;
 			newdata[himg] = 0.0f;
@@ -854,7 +1014,14 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 			osfac = ssfac;
 
 			for (pix = 0; pix < hlen; pix++) {
+				boolean isInside = lspxstr == pstr && lspx > lp0 && lspx + (lsz / 2) * pstr <= lp1;
 				for (tap = lstap; tap >= 0; tap--) {
+					if (isInside) {
+						/* All taps inside the subband, no reflection. */
+						newdata[limg] = WSQHelper.filter(olddata, lspx, pstr, lo, tap, 2, lsz);
+						limg += stride;
+						continue;
+					}
 					lle = lle2;
 					lre = lre2;
 					lpx = lspx;
@@ -894,7 +1061,14 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 				lspx += lspxstr;
 				lstap = 1;
 
+				isInside = hspxstr == pstr && hspx > hp0 && hspx + ((hsz + 1) / 2) * pstr <= hp1;
 				for (tap = hstap; tap >= 0; tap--) {
+					if (isInside) {
+						/* The scale factor is 1 once the edge has been passed. */
+						newdata[himg] = WSQHelper.filter(newdata[himg], olddata, hspx, pstr, hi, tap, 2, hsz);
+						himg += stride;
+						continue;
+					}
 					hle = hle2;
 					hre = hre2;
 					hpx = hspx;
@@ -1050,10 +1224,6 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 				himg += stride;
 			}
 		}
-
-		if (fi_ev == 0)
-			for (i = 0; i < hsz; i++)
-				hi[i] *= -1.0;
 	}
 
 	private static int intSign(int power) { /* "sign" power */
@@ -1071,13 +1241,16 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 		return num;
 	}
 
-	private static byte[] convertImageToByte(float[] img, int width, int height, float mShift, float rScale) {
-		byte[] data = new byte[width * height];
-
-		int idx = 0;
+	/**
+	 * Converts the top left <code>width</code> x <code>height</code> pixels of a floating point pixmap
+	 * with rows of <code>pitch</code> pixels, into <code>data</code> with rows of <code>scanlineStride</code> pixels.
+	 */
+	private static void convertImageToByte(float[] img, int pitch, int width, int height, float mShift, float rScale, byte[] data, int offset, int scanlineStride) {
 		for (int r = 0; r < height; r++) {
+			int imgIdx = r * pitch;
+			int idx = offset + r * scanlineStride;
 			for (int c = 0; c < width; c++) {
-				float pixel = (img[idx] * rScale) + mShift;
+				float pixel = (img[imgIdx++] * rScale) + mShift;
 				pixel += 0.5;
 
 				if (pixel < 0.0) {
@@ -1090,7 +1263,5 @@ public class WSQDecoder implements WSQConstants, NISTConstants {
 				idx++;
 			}
 		}
-
-		return data;
 	}
 }
@@ -34,19 +34,87 @@ import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
-import org.jnbis.WSQHelper.Ref;
 import org.jnbis.WSQHelper.Token;
 
 /**
  * WSQ encoder based on NBIS.
  * 
+ * An encoder instance can be reused for subsequent images, it keeps its tables
+ * and scratch buffers so that encoding a batch of images only allocates the output.
+ * Instances are not thread-safe, the static <code>encode</code> methods use a new instance per call.
+ * An instance can be given an executor to encode large images in parallel.
+ * The encoded image is collected in a buffer and written to the output in a single call.
+ * 
  * @author Martijn Oostdijk (martijn.oostdijk@gmail.com)
  * 
  * @version 0.0.2
  */
 public class WSQEncoder implements WSQConstants, NISTConstants {
 
+	private static final int OUTPUT_BUFFER_SIZE = 32 * 1024;
+
+	private Token token;
+
+	/* Scratch buffers, at least width * height long. */
+	private float[] fdata;	/* floating point pixel image  */
+	private float[] fdata1;	/* temporary floating point pixmap */
+	private int[] qdata;	/* quantized image */
+
+	private int qsize, qsize1, qsize2, qsize3;	/* quantized block sizes */
+	private float mShift, rScale;
+
+	/* Huffman code parameters and tables. */
+	private int[] huffbits, huffvalues;
+	private int[][] blockCounts;	/* category counts of the three blocks */
+	private int[] codesize, others, tbits;
+	private int lastSize;
+	private boolean adjust;
+	private int leastFreqValue1, leastFreqValue2;
+	private WSQHelper.HuffCode[] hufftable1, hufftable2;
+
+	/* The encoded image is collected here and written to the output at once. */
+	private WSQOutputBuffer outputBuffer;
+	private DataOutputStream bufferOutput;
+
+	/** The executor for the parallel passes, <code>null</code> to encode on the caller's thread. */
+	private ExecutorService executor;
+
+	/**
+	 * Constructs an encoder.
+	 */
+	public WSQEncoder() {
+		token = new Token();
+		huffbits = new int[2 * MAX_HUFFBITS];
+		huffvalues = new int[MAX_HUFFCOUNTS_WSQ + 1];
+		codesize = new int[MAX_HUFFCOUNTS_WSQ + 1];
+		others = new int[MAX_HUFFCOUNTS_WSQ + 1];
+		tbits = new int[2 * MAX_HUFFBITS];
+		blockCounts = new int[3][MAX_HUFFCOUNTS_WSQ + 1];
+		hufftable1 = new WSQHelper.HuffCode[MAX_HUFFCOUNTS_WSQ + 1];
+		hufftable2 = new WSQHelper.HuffCode[MAX_HUFFCOUNTS_WSQ + 1];
+		for (int i = 0; i <= MAX_HUFFCOUNTS_WSQ; i++) {
+			hufftable1[i] = new WSQHelper.HuffCode();
+			hufftable2[i] = new WSQHelper.HuffCode();
+		}
+		outputBuffer = new WSQOutputBuffer(OUTPUT_BUFFER_SIZE);
+		bufferOutput = new DataOutputStream(outputBuffer);
+	}
+
+	/**
+	 * Sets the executor used to encode large images in parallel.
+	 * The rows and columns of each decomposition pass are split into stripes,
+	 * the variances and quantization of the subbands and the Huffman statistics
+	 * of the blocks are computed independently.
+	 * The output is identical to that of encoding on the caller's thread.
+	 *
+	 * @param executor an executor, or <code>null</code> to encode on the caller's thread
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
 	public static void encode(OutputStream os, Bitmap bitmap, double bitRate, String ... comments) throws IOException {
 		encode(os, bitmap, bitRate, null, comments);
 	}
@@ -59,7 +127,37 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 		encode((DataOutput)new DataOutputStream(os), bitmap, bitRate, metadata, comments);
 	}
 	
-	public static void encode(DataOutput dataOutput, Bitmap _bitmap, double bitRate, Map<String, String> metadata, String ... comments) throws IOException {
+	public static void encode(DataOutput dataOutput, Bitmap bitmap, double bitRate, Map<String, String> metadata, String ... comments) throws IOException {
+		new WSQEncoder().encodeBitmap(dataOutput, bitmap, bitRate, metadata, comments);
+	}
+
+	/**
+	 * Encodes a bitmap as WSQ image, reusing the scratch buffers of this encoder.
+	 *
+	 * @param os the output stream to write to
+	 * @param bitmap the bitmap to encode
+	 * @param bitRate the bit rate
+	 * @param metadata NISTCOM fields to add, or <code>null</code>
+	 * @param comments comments to add
+	 *
+	 * @throws IOException on error writing the output
+	 */
+	public void encodeBitmap(OutputStream os, Bitmap bitmap, double bitRate, Map<String, String> metadata, String ... comments) throws IOException {
+		encodeBitmap((DataOutput)new DataOutputStream(os), bitmap, bitRate, metadata, comments);
+	}
+
+	/**
+	 * Encodes a bitmap as WSQ image, reusing the scratch buffers of this encoder.
+	 *
+	 * @param dataOutput the output to write to
+	 * @param _bitmap the bitmap to encode
+	 * @param bitRate the bit rate
+	 * @param metadata NISTCOM fields to add, or <code>null</code>
+	 * @param comments comments to add
+	 *
+	 * @throws IOException on error writing the output
+	 */
+	public void encodeBitmap(DataOutput dataOutput, Bitmap _bitmap, double bitRate, Map<String, String> metadata, String ... comments) throws IOException {
 		BitmapWithMetadata bitmap;
 		if (_bitmap instanceof BitmapWithMetadata) {
 			bitmap = (BitmapWithMetadata)_bitmap;
@@ -73,23 +171,25 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 				if (s != null)
 					bitmap.getComments().add(s);
 		
-		float[] fdata;	/* floating point pixel image  */
-		int[] qdata;	/* quantized image pointer     */
-		Ref<Integer> qsize = new Ref<Integer>(), qsize1 = new Ref<Integer>(), qsize2 = new Ref<Integer>(), qsize3 = new Ref<Integer>();  /* quantized block sizes */
 		WSQHelper.HuffCode[] hufftable;
-		Ref<int[]> huffbits = new Ref<int[]>(), huffvalues = new Ref<int[]>(); /* huffman code parameters */
+
+		int numPix = bitmap.getWidth() * bitmap.getHeight();
+		if (fdata == null || fdata.length < numPix) {
+			fdata = new float[numPix];
+			fdata1 = new float[numPix];
+			qdata = new int[numPix];
+		}
 
 		/* Convert image pixels to floating point. */
-		Ref<Float> m_shift = new Ref<Float>(), r_scale = new Ref<Float>();
-		fdata = convertImageToFloat(bitmap.getPixels(), bitmap.getWidth(), bitmap.getHeight(), m_shift, r_scale);
+		convertImageToFloat(bitmap.getPixels(), bitmap.getWidth(), bitmap.getHeight());
 
-		Token token = new Token();
+		token.reset();
 
 		/* Build WSQ decomposition trees */
 		WSQHelper.buildWSQTrees(token, bitmap.getWidth(), bitmap.getHeight());
 
 		/* WSQ decompose the image */
-		wsqDecompose(token, fdata, bitmap.getWidth(), bitmap.getHeight(), token.tableDTT.hifilt, MAX_HIFILT, token.tableDTT.lofilt, MAX_LOFILT);
+		wsqDecompose(executor, token, fdata, fdata1, bitmap.getWidth(), bitmap.getHeight(), token.tableDTT.hifilt, MAX_HIFILT, token.tableDTT.lofilt, MAX_LOFILT);
 
 		/* Set compression ratio and 'q' to zero. */
 		token.quant_vals.cr = 0;
@@ -99,91 +199,125 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 		token.quant_vals.r = (float)bitRate;
 
 		/* Compute subband variances. */
-		variance(token, fdata, bitmap.getWidth(), bitmap.getHeight());
+		variance(executor, token, fdata, bitmap.getWidth(), bitmap.getHeight());
 
 		/* Quantize the floating point pixmap. */
 
-		qdata = quantize(token, qsize, fdata, bitmap.getWidth(), bitmap.getHeight());
+		quantize(executor, token, fdata, bitmap.getWidth(), bitmap.getHeight());
 
 		/* Compute quantized WSQ subband block sizes */
-		quant_block_sizes(token, qsize1, qsize2, qsize3);
+		quant_block_sizes(token);
 
-		if (qsize.value != qsize1.value + qsize2.value + qsize3.value) {
+		if (qsize != qsize1 + qsize2 + qsize3) {
 			throw new IllegalStateException("ERROR : wsq_encode_1 : problem w/quantization block sizes");
 		}
 
+		/* Count the Huffman categories of the three blocks. */
+		countBlocks(executor, numPix);
+
+		outputBuffer.reset();
+		DataOutput out = bufferOutput;
+
 		/* Add a Start Of Image (SOI) marker to the WSQ buffer. */
-		dataOutput.writeShort(SOI_WSQ);
+		out.writeShort(SOI_WSQ);
 
-		putc_nistcom_wsq(dataOutput, bitmap, (float)bitRate, metadata, comments);
+		putc_nistcom_wsq(out, bitmap, (float)bitRate, metadata, comments);
 
 		/* Store the Wavelet filter taps to the WSQ buffer. */
-		putc_transform_table(dataOutput, token.tableDTT.lofilt, MAX_LOFILT, token.tableDTT.hifilt, MAX_HIFILT);
+		putc_transform_table(out, token.tableDTT.lofilt, MAX_LOFILT, token.tableDTT.hifilt, MAX_HIFILT);
 
 		/* Store the quantization parameters to the WSQ buffer. */
-		putc_quantization_table(dataOutput, token);
+		putc_quantization_table(out, token);
 
 		/* Store a frame header to the WSQ buffer. */
-		putc_frame_header_wsq(dataOutput, bitmap.getWidth(), bitmap.getHeight(), m_shift.value, r_scale.value);
+		putc_frame_header_wsq(out, bitmap.getWidth(), bitmap.getHeight(), mShift, rScale);
 
 		/* ENCODE Block 1 */
 
 		/* Compute Huffman table for Block 1. */
-		hufftable = gen_hufftable_wsq(token, huffbits, huffvalues, qdata, 0, new int[] { qsize1.value });
+		hufftable = gen_hufftable_wsq(blockCounts[0]);
 
 		/* Store Huffman table for Block 1 to WSQ buffer. */
-		putc_huffman_table(dataOutput, DHT_WSQ, 0, huffbits.value, huffvalues.value);
+		putc_huffman_table(out, DHT_WSQ, 0, huffbits, huffvalues);
 
 		/* Store Block 1's header to WSQ buffer. */
-		putc_block_header(dataOutput, 0);
+		putc_block_header(out, 0);
 
 		/* Compress Block 1 data. */
-		compress_block(dataOutput, qdata, 0, qsize1.value, MAX_HUFFCOEFF, MAX_HUFFZRUN, hufftable);
+		compress_block(outputBuffer, qdata, 0, qsize1, MAX_HUFFCOEFF, MAX_HUFFZRUN, hufftable);
 
 		/* ENCODE Block 2 */
 
 		/* Compute  Huffman table for Blocks 2 & 3. */
-		hufftable = gen_hufftable_wsq(token, huffbits, huffvalues, qdata, qsize1.value, new int[] { qsize2.value, qsize3.value });
+		for (int j = 0; j < MAX_HUFFCOUNTS_WSQ; j++) {
+			blockCounts[1][j] += blockCounts[2][j];
+		}
+		hufftable = gen_hufftable_wsq(blockCounts[1]);
 
 		/* Store Huffman table for Blocks 2 & 3 to WSQ buffer. */
-		putc_huffman_table(dataOutput, DHT_WSQ, 1, huffbits.value, huffvalues.value);
+		putc_huffman_table(out, DHT_WSQ, 1, huffbits, huffvalues);
 
 		/* Store Block 2's header to WSQ buffer. */
-		putc_block_header(dataOutput, 1);
+		putc_block_header(out, 1);
 
 		/* Compress Block 2 data. */
-		compress_block(dataOutput, qdata, qsize1.value, qsize2.value, MAX_HUFFCOEFF, MAX_HUFFZRUN, hufftable);
+		compress_block(outputBuffer, qdata, qsize1, qsize2, MAX_HUFFCOEFF, MAX_HUFFZRUN, hufftable);
 
 		/* ENCODE Block 3 */
 
 		/* Store Block 3's header to WSQ buffer. */
-		putc_block_header(dataOutput, 1);
+		putc_block_header(out, 1);
 
 		/* Compress Block 3 data. */
-		compress_block(dataOutput, qdata, qsize1.value + qsize2.value, qsize3.value, MAX_HUFFCOEFF, MAX_HUFFZRUN, hufftable);
+		compress_block(outputBuffer, qdata, qsize1 + qsize2, qsize3, MAX_HUFFCOEFF, MAX_HUFFZRUN, hufftable);
 
 		/* Add a End Of Image (EOI) marker to the WSQ buffer. */
-		dataOutput.writeShort(EOI_WSQ);
+		out.writeShort(EOI_WSQ);
+
+		outputBuffer.writeTo(dataOutput);
+	}
+
+	/**
+	 * Counts the Huffman categories of the three blocks of <code>qdata</code>
+	 * into <code>blockCounts</code>, in parallel for large images.
+	 *
+	 * @param executor the executor, or <code>null</code> to count on the caller's thread
+	 * @param numPix the number of pixels of the image
+	 */
+	private void countBlocks(ExecutorService executor, int numPix) {
+		final int[] offsets = { 0, qsize1, qsize1 + qsize2 };
+		final int[] sizes = { qsize1, qsize2, qsize3 };
+		WSQHelper.StripedPass pass = new WSQHelper.StripedPass() {
+			public void run(int first, int last) {
+				for (int block = first; block < last; block++) {
+					count_block(blockCounts[block], MAX_HUFFCOUNTS_WSQ, qdata, offsets[block], sizes[block], MAX_HUFFCOEFF, MAX_HUFFZRUN);
+				}
+			}
+		};
+		if (executor == null || numPix < WSQHelper.PARALLEL_THRESHOLD) {
+			pass.run(0, sizes.length);
+		} else {
+			WSQHelper.runStriped(executor, sizes.length, pass);
+		}
 	}
 
 	/**
 	 * Corresponds to conv_img_2_flt in wsq_encoder.c.
 	 * Converts an image's unsigned character pixels to floating point values in the range +/- 128.0.
+	 * The result is stored in <code>fdata</code>, the shift and scale in <code>mShift</code> and <code>rScale</code>.
 	 * 
 	 * @param data input image, values should be regarded as unsigned
 	 * @param width width of input image
 	 * @param height height of input image
-	 * @param m_shift output for shift, needs be non-null and length >= 1
-	 * @param r_scale output for scale, needs to be non-null and length >= 1
 	 */
-	private static float[] convertImageToFloat(byte[] data, int width, int height, Ref<Float> m_shift, Ref<Float> r_scale) {
+	private void convertImageToFloat(byte[] data, int width, int height) {
 		if (data == null) { throw new IllegalArgumentException("Image cannot be null"); }
 		int cnt;                     /* pixel cnt */
 		int sum;                     /* sum of pixel values */
 		int low, high;               /* low/high pixel values */
 		float low_diff, high_diff;   /* new low/high pixels values shifting */
 
-		float[] fip = new float[data.length];
+		float[] fip = fdata;
 
 		sum = 0;
 		low = 255;
@@ -199,64 +333,103 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 		}
 
 		float mean = (float) sum / (float)data.length;
-		m_shift.value = mean;
+		mShift = mean;
 
-		low_diff = m_shift.value - low;
-		high_diff = high - m_shift.value;
+		low_diff = mShift - low;
+		high_diff = high - mShift;
 
 		if(low_diff >= high_diff) {
-			r_scale.value = low_diff;
+			rScale = low_diff;
 		} else {
-			r_scale.value = high_diff;
+			rScale = high_diff;
 		}
 
-		r_scale.value /= (float)128.0;
+		rScale /= (float)128.0;
 
 		for(cnt = 0; cnt < data.length; cnt++) {
-			fip[cnt] = ((float)(data[cnt] & 0xFF) - m_shift.value) / r_scale.value;
+			fip[cnt] = ((float)(data[cnt] & 0xFF) - mShift) / rScale;
 		}
-		return fip;
 	}
 
 	/**
 	 * WSQ decompose the image.  NOTE: this routine modifies and returns
 	 * the results in "fdata"    
 	 */
-	private static void wsqDecompose(Token token, float[] fdata, int width, int height, float[] hifilt, int hisz, float[] lofilt, int losz) {
+	private static void wsqDecompose(ExecutorService executor, Token token, float[] fdata, float[] fdata1, int width, int height, float[] hifilt, int hisz, float[] lofilt, int losz) {
 
-		int num_pix = width * height;
-		/* Allocate temporary floating point pixmap. */
-		float[] fdata1 = new float[num_pix];
+		/* Clear temporary floating point pixmap. */
+		Arrays.fill(fdata1, 0, width * height, 0.0f);
 
 		/* Compute the Wavelet image decomposition. */
 		for(int node = 0; node < token.wtree.length; node++) {
 			int fdataBse = (token.wtree[node].y * width) + token.wtree[node].x;
 
-			getLets(fdata1, fdata, 0, fdataBse, token.wtree[node].leny, token.wtree[node].lenx,
+			getLets(executor, fdata1, fdata, 0, fdataBse, token.wtree[node].leny, token.wtree[node].lenx,
 					width, 1, hifilt, hisz, lofilt, losz, token.wtree[node].invrw);
-			getLets(fdata, fdata1, fdataBse, 0, token.wtree[node].lenx, token.wtree[node].leny,
+			getLets(executor, fdata, fdata1, fdataBse, 0, token.wtree[node].lenx, token.wtree[node].leny,
 					1, width, hifilt, hisz, lofilt, losz, token.wtree[node].invcl);
 		}
 	}
 
+	private static void getLets(ExecutorService executor,
+			final float[] newdata,     /* image pointers for creating subband splits */
+			final float[] olddata,
+			final int newIndex,
+			final int oldIndex,
+			int len1,       /* temporary length parameters */
+			final int len2,
+			final int pitch,      /* pitch gives next row_col to filter */
+			final int  stride,    /*           stride gives next pixel to filter */
+			float[] hi,
+			final int hsz,   /* NEW */
+			final float[] lo,      /* filter coefficients */
+			final int lsz,   /* NEW */
+			final int inv)        /* spectral inversion? */
+	{
+		if (newdata == null) { throw new IllegalArgumentException("newdata == null"); }
+		if (olddata == null) { throw new IllegalArgumentException("olddata == null"); }
+		if (lo == null) { throw new IllegalArgumentException("lo == null"); }
+
+		if(lsz % 2 == 0) {
+			/* Even length filters are applied with the hipass coefficients negated, use a negated copy. */
+			float[] negatedHi = new float[hsz];
+			for(int i = 0; i < hsz; i++) {
+				negatedHi[i] = hi[i] * -1.0f;
+			}
+			hi = negatedHi;
+		}
+
+		if(executor == null || len1 * len2 < WSQHelper.PARALLEL_THRESHOLD) {
+			getLets(newdata, olddata, newIndex, oldIndex, len2, pitch, stride, hi, hsz, lo, lsz, inv, 0, len1);
+		} else {
+			final float[] h = hi;
+			WSQHelper.runStriped(executor, len1, new WSQHelper.StripedPass() {
+				public void run(int first, int last) {
+					getLets(newdata, olddata, newIndex, oldIndex, len2, pitch, stride, h, hsz, lo, lsz, inv, first, last);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Computes the subband split of rows (or columns) <code>first</code> up to <code>last</code>.
+	 * For even length filters <code>hi</code> contains the negated hipass coefficients.
+	 */
 	private static void getLets(float[] newdata,     /* image pointers for creating subband splits */
 			float[] olddata,
 			int newIndex,
 			int oldIndex,
-			int len1,       /* temporary length parameters */
-			int len2,
+			int len2,       /* temporary length parameter */
 			int pitch,      /* pitch gives next row_col to filter */
 			int  stride,    /*           stride gives next pixel to filter */
 			float[] hi,
 			int hsz,   /* NEW */
 			float[] lo,      /* filter coefficients */
 			int lsz,   /* NEW */
-			int inv)        /* spectral inversion? */
+			int inv,        /* spectral inversion? */
+			int first,      /* rows or columns to filter */
+			int last)
 	{
-		if (newdata == null) { throw new IllegalArgumentException("newdata == null"); }
-		if (olddata == null) { throw new IllegalArgumentException("olddata == null"); }
-		if (lo == null) { throw new IllegalArgumentException("lo == null"); }
-
 		int lopass, hipass;	/* pointers of where to put lopass
                                    and hipass filter outputs */
 		int p0, p1;		/* pointers to image pixels used */
@@ -302,10 +475,6 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 				hoc = 0;
 				ohle = 0;
 			}
-
-			for(i = 0; i < hsz; i++) {
-				hi[i] *= -1.0;
-			}
 		}
 
 		pstr = stride;
@@ -319,7 +488,7 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 			hlen = llen;
 		}
 
-		for(rw_cl = 0; rw_cl < len1; rw_cl++) {
+		for(rw_cl = first; rw_cl < last; rw_cl++) {
 			if(inv != 0) {
 				hipass = newIndex + rw_cl * pitch;
 				lopass = hipass + hlen * stride;
@@ -340,57 +509,66 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 			hle2 = ohle;
 			hre2 = ohre;
 			for(pix = 0; pix < hlen; pix++) {
-				lpxstr = lspxstr;
-				lpx = lspx;
-				lle = lle2;
-				lre = lre2;
-				newdata[lopass] = olddata[lpx] * lo[0];
-				for(i = 1; i < lsz; i++) {
-					if(lpx == p0) {
-						if(lle != 0) {
-							lpxstr = 0;
-							lle = 0;
+				if(lspxstr == pstr && lspx > p0 && lspx + (lsz - 1) * pstr <= p1) {
+					/* All taps inside the row or column, no reflection. */
+					newdata[lopass] = WSQHelper.filter(olddata, lspx, pstr, lo, 0, 1, lsz);
+				} else {
+					lpxstr = lspxstr;
+					lpx = lspx;
+					lle = lle2;
+					lre = lre2;
+					newdata[lopass] = olddata[lpx] * lo[0];
+					for(i = 1; i < lsz; i++) {
+						if(lpx == p0) {
+							if(lle != 0) {
+								lpxstr = 0;
+								lle = 0;
+							}
+							else
+								lpxstr = pstr;
 						}
-						else
-							lpxstr = pstr;
-					}
-					if(lpx == p1) {
-						if(lre != 0) {
-							lpxstr = 0;
-							lre = 0;
-						} else {
-							lpxstr = nstr;
+						if(lpx == p1) {
+							if(lre != 0) {
+								lpxstr = 0;
+								lre = 0;
+							} else {
+								lpxstr = nstr;
+							}
 						}
+						lpx += lpxstr;
+						newdata[lopass] += olddata[lpx] * lo[i];
 					}
-					lpx += lpxstr;
-					newdata[lopass] += olddata[lpx] * lo[i];
 				}
 				lopass += stride;
 
-				hpxstr = hspxstr;
-				hpx = hspx;
-				hle = hle2;
-				hre = hre2;
-				newdata[hipass] = olddata[hpx] * hi[0];
-				for(i = 1; i < hsz; i++) {
-					if(hpx == p0) {
-						if(hle != 0) {
-							hpxstr = 0;
-							hle = 0;
-						} else {
-							hpxstr = pstr;
+				if(hspxstr == pstr && hspx > p0 && hspx + (hsz - 1) * pstr <= p1) {
+					newdata[hipass] = WSQHelper.filter(olddata, hspx, pstr, hi, 0, 1, hsz);
+				} else {
+					hpxstr = hspxstr;
+					hpx = hspx;
+					hle = hle2;
+					hre = hre2;
+					newdata[hipass] = olddata[hpx] * hi[0];
+					for(i = 1; i < hsz; i++) {
+						if(hpx == p0) {
+							if(hle != 0) {
+								hpxstr = 0;
+								hle = 0;
+							} else {
+								hpxstr = pstr;
+							}
 						}
-					}
-					if(hpx == p1) {
-						if(hre != 0) {
-							hpxstr = 0;
-							hre = 0;
-						} else {
-							hpxstr = nstr;
+						if(hpx == p1) {
+							if(hre != 0) {
+								hpxstr = 0;
+								hre = 0;
+							} else {
+								hpxstr = nstr;
+							}
 						}
+						hpx += hpxstr;
+						newdata[hipass] += olddata[hpx] * hi[i];
 					}
-					hpx += hpxstr;
-					newdata[hipass] += olddata[hpx] * hi[i];
 				}
 				hipass += stride;
 
@@ -444,37 +622,69 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 				lopass += stride;
 			}
 		}
-		if(fi_ev == 0) {
-			for(i = 0; i < hsz; i++) {
-				hi[i] *= -1.0;
-			}
-		}
 	}
 
 	/**
 	/* This routine calculates the variances of the subbands.
+	 * The subbands are independent, for large images they are computed in parallel.
 	 * 
+	 * @param executor the executor, or <code>null</code> to compute on the caller's thread
 	 * @param token contains quant_vals quantization parameters and quantization "tree" and treelen. NOTE: This routine will write to <code>var</code> field inside <code>quant_vals</code>.
 	 * @param fip image pointer
 	 * @param width image width
 	 * @param height image height
 	 */
-	private static void variance(Token token, float[] fip, int width, int height) {
+	private static void variance(ExecutorService executor, final Token token, final float[] fip, final int width, int height) {
+		float vsum;             /* variance sum for subbands 0-3 */
+
+		vsum = 0;
+		for(int cvr = 0; cvr < 4; cvr++) {
+			token.quant_vals.var[cvr] = subbandVariance(token, fip, width, cvr, true);
+			vsum += token.quant_vals.var[cvr];
+		}
+
+		//This part is needed to comply with WSQ 3.1
+		final int start = vsum < 20000.0 ? 0 : 4;
+		final boolean isCentral = start > 0;
+		WSQHelper.StripedPass pass = new WSQHelper.StripedPass() {
+			public void run(int first, int last) {
+				for (int cvr = start + first; cvr < start + last; cvr++) {
+					token.quant_vals.var[cvr] = subbandVariance(token, fip, width, cvr, isCentral);
+				}
+			}
+		};
+		if (executor == null || width * height < WSQHelper.PARALLEL_THRESHOLD) {
+			pass.run(0, NUM_SUBBANDS - start);
+		} else {
+			WSQHelper.runStriped(executor, NUM_SUBBANDS - start, pass);
+		}
+	}
+
+	/**
+	 * Computes the variance of a subband.
+	 *
+	 * @param token contains the quantization tree
+	 * @param fip image pointer
+	 * @param width image width
+	 * @param cvr the subband
+	 * @param isCentral whether to use the central part of the subband only
+	 *
+	 * @return the variance
+	 */
+	private static float subbandVariance(Token token, float[] fip, int width, int cvr, boolean isCentral) {
 		int fp;                 /* temp image pointer */
-		int lenx = 0, leny = 0; /* dimensions of area to calculate variance */
+		int lenx, leny;         /* dimensions of area to calculate variance */
 		int skipx, skipy;       /* pixels to skip to get to area for variance calculation */
 		int row, col;           /* dimension counters */
 		float ssq;              /* sum of squares */
 		float sum2;             /* variance calculation parameter */
 		float sum_pix;          /* sum of pixels */
-		float vsum;             /* variance sum for subbands 0-3 */
 
-		vsum = 0;
-		for(int cvr = 0; cvr < 4; cvr++) {
-			fp = ((token.qtree[cvr].y) * width) + token.qtree[cvr].x;
-			ssq = 0.0f;
-			sum_pix = 0.0f;
+		fp = (token.qtree[cvr].y * width) + token.qtree[cvr].x;
+		ssq = 0.0f;
+		sum_pix = 0.0f;
 
+		if (isCentral) {
 			skipx = token.qtree[cvr].lenx / 8;
 			skipy = (9 * token.qtree[cvr].leny) / 32;
 
@@ -482,79 +692,36 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 			leny = (7 * token.qtree[cvr].leny) / 16;
 
 			fp += (skipy * width) + skipx;
-			for(row = 0; row < leny; row++, fp += (width - lenx)) {
-				for(col = 0; col < lenx; col++) {
-					sum_pix += fip[fp];
-					ssq += fip[fp] * fip[fp];
-					fp++;
-				}
+		} else {
+			lenx = token.qtree[cvr].lenx;
+			leny = token.qtree[cvr].leny;
+		}
+
+		for(row = 0; row < leny; row++, fp += (width - lenx)) {
+			for(col = 0; col < lenx; col++) {
+				sum_pix += fip[fp];
+				ssq += fip[fp] * fip[fp];
+				fp++;
 			}
-			sum2 = (sum_pix * sum_pix)/(lenx * leny);
-			token.quant_vals.var[cvr] = (float)((ssq - sum2)/((lenx * leny)-1.0f));
-			vsum += token.quant_vals.var[cvr];
 		}
-		
-		//This part is needed to comply with WSQ 3.1
-		if(vsum < 20000.0) {
-		      for(int cvr = 0; cvr < NUM_SUBBANDS; cvr++) {
-		         fp = (token.qtree[cvr].y * width) + token.qtree[cvr].x;
-		         ssq = 0;
-		         sum_pix = 0;
-
-		         lenx = token.qtree[cvr].lenx;
-		         leny = token.qtree[cvr].leny;
-
-		         for(row = 0; row < leny; row++, fp += (width - lenx)) {
-		            for(col = 0; col < lenx; col++) {
-		               sum_pix += fip[fp];
-		               ssq += fip[fp] * fip[fp];
-		               fp++;
-		            }
-		         }
-		         sum2 = (sum_pix * sum_pix)/(lenx * leny);
-		         token.quant_vals.var[cvr] = (float)((ssq - sum2)/((lenx * leny)-1.0));
-		      }
-		   }
-		   else {
-		      for(int cvr = 4; cvr < NUM_SUBBANDS; cvr++) {
-		         fp = (token.qtree[cvr].y * width) + token.qtree[cvr].x;
-		         ssq = 0;
-		         sum_pix = 0;
-
-		         skipx = token.qtree[cvr].lenx / 8;
-		         skipy = (9 * token.qtree[cvr].leny)/32;
-		   
-		         lenx = (3 * token.qtree[cvr].lenx)/4;
-		         leny = (7 * token.qtree[cvr].leny)/16;
-
-		         fp += (skipy * width) + skipx;
-		         for(row = 0; row < leny; row++, fp += (width - lenx)) {
-		            for(col = 0; col < lenx; col++) {
-		               sum_pix += fip[fp];
-		               ssq += fip[fp] * fip[fp];
-		               fp++;
-		            }
-		         }
-		         sum2 = (sum_pix * sum_pix)/(lenx * leny);
-		         token.quant_vals.var[cvr] = (float)((ssq - sum2)/((lenx * leny)-1.0));
-		      }
-		   }
+		sum2 = (sum_pix * sum_pix)/(lenx * leny);
+		return (float)((ssq - sum2)/((lenx * leny)-1.0));
 	}
 
 	/**
 	 * This routine quantizes the wavelet subbands.
 	 * 
+	 * The quantized image is stored in <code>qdata</code>, its size in <code>qsize</code>.
+	 * Once the bin widths are known the subbands are quantized independently,
+	 * for large images in parallel.
+	 * 
+	 * @param executor the executor, or <code>null</code> to quantize on the caller's thread
 	 * @param token contains quantization parameters, quantization tree, size of quantization tree
-	 * @param qsize output size
 	 * @param fip floating point image pointer
 	 * @param width image width
 	 * @param height image height
-	 * 
-	 * @return quantized image
 	 */
-	private static int[] quantize(Token token, Ref<Integer> qsize, float[] fip, int width, int height) {
-		int row, col;          /* temp image characteristic parameters */
-		float zbin;            /* zero bin size */
+	private void quantize(ExecutorService executor, final Token token, final float[] fip, final int width, int height) {
 		float[] A = new float[NUM_SUBBANDS]; /* subband "weights" for quantization */
 		float[] m = new float[NUM_SUBBANDS]; /* subband size to image size ratios */
 		/* (reciprocal of FBI spec for 'm')  */
@@ -604,10 +771,6 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 			}
 		}
 
-		/* Set up output buffer. */
-		int[] sip = new int[width * height];
-		int sptr = 0;
-
 		/* Set up 'm' table (these values are the reciprocal of 'm' in the FBI spec). */
 		m1 = 1.0f/1024.0f;
 		m2 = 1.0f/256.0f;
@@ -699,39 +862,72 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 			token.quant_vals.qzbs[cnt] = 1.2f * token.quant_vals.qbss[cnt];
 		}
 
-		/* Now ready to compute and store bin widths for subbands. */
+		/* Set up output buffer, the quantized subbands are stored one after the other. */
+		final int[] sip = qdata;
+		final int[] offsets = new int[NUM_SUBBANDS];
+		int sptr = 0;
 		for(int cnt = 0; cnt < NUM_SUBBANDS; cnt++) {
-			int fptr = (token.qtree[cnt].y * width) + token.qtree[cnt].x;
-
+			offsets[cnt] = sptr;
 			if(token.quant_vals.qbss[cnt] != 0.0f) {
+				sptr += token.qtree[cnt].lenx * token.qtree[cnt].leny;
+			}
+		}
 
-				zbin = token.quant_vals.qzbs[cnt] / 2.0f;
-
-				for(row = 0; row < token.qtree[cnt].leny; row++, fptr += width - token.qtree[cnt].lenx){
-					for(col = 0; col < token.qtree[cnt].lenx; col++) {
-						if(-zbin <= fip[fptr] && fip[fptr] <= zbin) {
-							sip[sptr] = 0;
-						} else if(fip[fptr] > 0.0f) {
-							sip[sptr] = (int)(((fip[fptr] - zbin)/token.quant_vals.qbss[cnt]) + 1.0f);
-						} else {
-							sip[sptr] = (int)(((fip[fptr] + zbin)/token.quant_vals.qbss[cnt]) - 1.0f);
-						}
-						sptr++;
-						fptr++;
+		/* Now ready to compute and store bin widths for subbands. */
+		WSQHelper.StripedPass pass = new WSQHelper.StripedPass() {
+			public void run(int first, int last) {
+				for(int cnt = first; cnt < last; cnt++) {
+					if(token.quant_vals.qbss[cnt] != 0.0f) {
+						quantizeSubband(token, fip, width, cnt, sip, offsets[cnt]);
 					}
 				}
 			}
+		};
+		if (executor == null || width * height < WSQHelper.PARALLEL_THRESHOLD) {
+			pass.run(0, NUM_SUBBANDS);
+		} else {
+			WSQHelper.runStriped(executor, NUM_SUBBANDS, pass);
 		}
 
-		qsize.value = sptr;
+		qsize = sptr;
+	}
 
-		return sip;
+	/**
+	 * Quantizes a subband with the bin widths in <code>quant_vals</code>.
+	 *
+	 * @param token contains quantization parameters and quantization tree
+	 * @param fip floating point image pointer
+	 * @param width image width
+	 * @param cnt the subband
+	 * @param sip the quantized image
+	 * @param sptr the offset of the subband in <code>sip</code>
+	 */
+	private static void quantizeSubband(Token token, float[] fip, int width, int cnt, int[] sip, int sptr) {
+		int row, col;          /* temp image characteristic parameters */
+		float zbin;            /* zero bin size */
+		int fptr = (token.qtree[cnt].y * width) + token.qtree[cnt].x;
+
+		zbin = token.quant_vals.qzbs[cnt] / 2.0f;
+
+		for(row = 0; row < token.qtree[cnt].leny; row++, fptr += width - token.qtree[cnt].lenx){
+			for(col = 0; col < token.qtree[cnt].lenx; col++) {
+				if(-zbin <= fip[fptr] && fip[fptr] <= zbin) {
+					sip[sptr] = 0;
+				} else if(fip[fptr] > 0.0f) {
+					sip[sptr] = (int)(((fip[fptr] - zbin)/token.quant_vals.qbss[cnt]) + 1.0f);
+				} else {
+					sip[sptr] = (int)(((fip[fptr] + zbin)/token.quant_vals.qbss[cnt]) - 1.0f);
+				}
+				sptr++;
+				fptr++;
+			}
+		}
 	}
 
 	/************************************************************************/
 	/* Compute quantized WSQ subband block sizes.                           */
 	/************************************************************************/
-	private static void quant_block_sizes(Token token, Ref<Integer> oqsize1, Ref<Integer> oqsize2, Ref<Integer> oqsize3) {
+	private void quant_block_sizes(Token token) {
 		int qsize1, qsize2, qsize3;
 		int node;
 
@@ -761,9 +957,9 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 			}
 		}
 
-		oqsize1.value = qsize1;
-		oqsize2.value = qsize2;
-		oqsize3.value = qsize3;
+		this.qsize1 = qsize1;
+		this.qsize2 = qsize2;
+		this.qsize3 = qsize3;
 	}
 
 	private static void putc_huffman_table(DataOutput dataOutput, int marker, int tableId, int[] huffbits, int[] huffvalues) throws IOException {
@@ -1071,57 +1267,31 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 	}
 
 	/**
-	 * Generate a Huffman code table for a quantized data block.
+	 * Generate a Huffman code table for quantized data blocks.
+	 * The code parameters are stored in <code>huffbits</code> and <code>huffvalues</code>,
+	 * the returned table is overwritten by the next call.
 	 * 
-	 * @param token
-	 * @param ohuffbits output, should contain one byte[] reference
-	 * @param ohuffvalues output, should contain one byte[] reference
-	 * @param sip
-	 * @param offset
-	 * @param block_sizes
-	 * @param num_sizes
+	 * @param counts the category counts of the blocks, as computed by <code>count_block</code>, these are overwritten
 	 */
-	private static WSQHelper.HuffCode[] gen_hufftable_wsq(Token token, Ref<int[]> ohuffbits, Ref<int[]> ohuffvalues, int[] sip, int offset, int[] block_sizes) {
-		int[] codesize;       /* code sizes to use */
-		Ref<Integer> last_size = new Ref<Integer>();       /* last huffvalue */
-		int[] huffbits;     /* huffbits values */
-		int[] huffvalues;   /* huffvalues */
-		int[] huffcounts;     /* counts for each huffman category */
-		int[] huffcounts2;    /* counts for each huffman category */
-		WSQHelper.HuffCode[] hufftable1, hufftable2;  /* hufftables */
-
-		huffcounts = count_block(MAX_HUFFCOUNTS_WSQ, sip, offset, block_sizes[0], MAX_HUFFCOEFF, MAX_HUFFZRUN);
-
-		for(int i = 1; i < block_sizes.length; i++) {
-			huffcounts2 = count_block(MAX_HUFFCOUNTS_WSQ, sip, offset + block_sizes[i - 1], block_sizes[i], MAX_HUFFCOEFF, MAX_HUFFZRUN);
-
-			for(int j = 0; j < MAX_HUFFCOUNTS_WSQ; j++) {
-				huffcounts[j] += huffcounts2[j];
-			}
-		}
+	private WSQHelper.HuffCode[] gen_hufftable_wsq(int[] counts) {
+		find_huff_sizes(counts, MAX_HUFFCOUNTS_WSQ);
 
-		codesize = find_huff_sizes(huffcounts, MAX_HUFFCOUNTS_WSQ);
+		/* sets adjust if codesize is greater than MAX_HUFFBITS */
+		find_num_huff_sizes(codesize, MAX_HUFFCOUNTS_WSQ);
 
-		/* tells if codesize is greater than MAX_HUFFBITS */
-		Ref<Boolean> adjust = new Ref<Boolean>();
-
-		huffbits = find_num_huff_sizes(adjust, codesize, MAX_HUFFCOUNTS_WSQ);
-
-		if(adjust.value) {
+		if(adjust) {
 			sort_huffbits(huffbits);
 		}
 
-		huffvalues = sort_code_sizes(codesize, MAX_HUFFCOUNTS_WSQ);
+		sort_code_sizes(codesize, MAX_HUFFCOUNTS_WSQ);
 
-		hufftable1 = build_huffsizes(last_size, huffbits, MAX_HUFFCOUNTS_WSQ);
+		build_huffsizes(hufftable1, huffbits, MAX_HUFFCOUNTS_WSQ);
 
 		build_huffcodes(hufftable1);
-		check_huffcodes_wsq(hufftable1, last_size.value);
+		check_huffcodes_wsq(hufftable1, lastSize);
 
-		hufftable2 = build_huffcode_table(hufftable1, last_size.value, huffvalues, MAX_HUFFCOUNTS_WSQ);
+		build_huffcode_table(hufftable2, hufftable1, lastSize, huffvalues, MAX_HUFFCOUNTS_WSQ);
 
-		ohuffbits.value = huffbits;
-		ohuffvalues.value = huffvalues;
 		return hufftable2;
 	}
 
@@ -1129,8 +1299,8 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 	/* This routine counts the number of occurences of each category */
 	/* in the huffman coding tables.                                 */
 	/*****************************************************************/
-	private static int[] count_block(
-			// int **ocounts,     /* output count for each huffman catetory */
+	private static void count_block(
+			int[] counts,       /* output count for each huffman catetory */
 			int max_huffcounts, /* maximum number of counts */
 			int[] sip,          /* quantized data */
 			int sip_offset, /* offset into sip */
@@ -1138,7 +1308,6 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 			int MaxCoeff,  /* maximum values for coefficients */
 			int MaxZRun)   /* maximum zero runs */
 	{
-		int[] counts;         /* count for each huffman category */
 		int LoMaxCoeff;        /* lower (negative) MaxCoeff limit */
 		int pix;             /* temp pixel pointer */
 		int rcnt = 0, state;  /* zero run count and if current pixel
@@ -1152,13 +1321,13 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 			throw new IllegalStateException("ERROR : compress_block : MaxZRun out of range.");
 		}
 		/* Ininitalize vector of counts to 0. */
-		counts = new int[max_huffcounts + 1];
+		Arrays.fill(counts, 0, max_huffcounts + 1, 0);
 		/* Set last count to 1. */
 		counts[max_huffcounts] = 1;
 
 		LoMaxCoeff = 1 - MaxCoeff;
 		state = COEFF_CODE;
-		for(cnt = sip_offset; cnt < sip_siz; cnt++) {
+		for(cnt = sip_offset; cnt < sip_offset + sip_siz; cnt++) {
 			pix = sip[cnt];
 			switch(state) {
 
@@ -1235,41 +1404,37 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 				throw new IllegalStateException("ERROR: count_block : Zrun to long in count block.");	         
 			}
 		}
-
-		return counts;
 	}
 
 	/**
-	 * Routine to find number of codes of each size.
+	 * Routine to find number of codes of each size, stored in <code>huffbits</code>.
 	 * (From <code>huff.c</code>.)
-	 * 
-	 * @param adjust should be boolean array of size 1
-	 * 
-	 * @return
+	 * Sets <code>adjust</code> if a code size is greater than <code>MAX_HUFFBITS</code>.
 	 */
-	private static int[] find_num_huff_sizes(Ref<Boolean> adjust, int[] codesize, int max_huffcounts) {
-		adjust.value = false;
+	private void find_num_huff_sizes(int[] codesize, int max_huffcounts) {
+		adjust = false;
 
-		/* Allocate 2X desired number of bits due to possible codesize. */
-		int[] bits = new int[2 * MAX_HUFFBITS];
+		/* 2X desired number of bits due to possible codesize. */
+		int[] bits = huffbits;
+		Arrays.fill(bits, 0, 2 * MAX_HUFFBITS, 0);
 
 		for(int i = 0; i < max_huffcounts; i++) {
 			if(codesize[i] != 0) {
 				bits[codesize[i] - 1]++;
 			}
 			if(codesize[i] > MAX_HUFFBITS) {
-				adjust.value = true;
+				adjust = true;
 			}
 		}
-		return bits;
 	}
 
 	/**
-	 * routine to sort the huffman code sizes
+	 * routine to sort the huffman code sizes, stored in <code>huffvalues</code>
 	 */
-	private static int[] sort_code_sizes(int[] codesize, int max_huffcounts) {     
+	private void sort_code_sizes(int[] codesize, int max_huffcounts) {     
 		/* defines order of huffman codelengths in relation to the code sizes */
-		int[] values = new int[max_huffcounts + 1];
+		int[] values = huffvalues;
+		Arrays.fill(values, 0, max_huffcounts + 1, 0);
 		int i2 = 0;
 		for(int i = 1; i <= (MAX_HUFFBITS<<1); i++) {
 			for(int i3 = 0; i3 < max_huffcounts; i3++) {
@@ -1279,60 +1444,61 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 				}
 			}
 		}
-		return values;
 	}
 
 	/**
-	 * This routine defines the huffman code sizes for each difference category
+	 * This routine defines the huffman code sizes for each difference category.
+	 * The number of codes is stored in <code>lastSize</code>.
 	 */
-	private static WSQHelper.HuffCode[] build_huffsizes(Ref<Integer> temp_size, int[] huffbits, int max_huffcounts) {
+	private void build_huffsizes(WSQHelper.HuffCode[] huffcode_table, int[] huffbits, int max_huffcounts) {
 		/** the number codes for a given code size */
 		int number_of_codes = 1;
 		
 		/** table of huffman codes and sizes */
-		WSQHelper.HuffCode[] huffcode_table = new WSQHelper.HuffCode[max_huffcounts + 1];
-		for (int i = 0; i < huffcode_table.length; i++) { huffcode_table[i] = new WSQHelper.HuffCode(); }
+		for (int i = 0; i <= max_huffcounts; i++) {
+			huffcode_table[i].size = 0;
+			huffcode_table[i].code = 0;
+		}
 
-		temp_size.value = 0;
+		int temp_size = 0;
 
 		for(int code_size = 1; code_size <= MAX_HUFFBITS; code_size++) {
 			while(number_of_codes <= huffbits[code_size - 1]) {
-				huffcode_table[temp_size.value].size = code_size;
-				(temp_size.value)++;
+				huffcode_table[temp_size].size = code_size;
+				temp_size++;
 				number_of_codes++;
 			}
 			number_of_codes = 1;
 		}
-		huffcode_table[temp_size.value].size = 0;
-		return huffcode_table;
+		huffcode_table[temp_size].size = 0;
+		lastSize = temp_size;
 	}
 
 	/**
 	 * Routine to optimize code sizes by frequency of difference values.
+	 * The code sizes are stored in <code>codesize</code>.
 	 * 
 	 * @param freq should be array of length 1
 	 * @param max_huffcounts TODO
 	 */
-	private static int[] find_huff_sizes(int[] freq, int max_huffcounts) {
+	private void find_huff_sizes(int[] freq, int max_huffcounts) {
 		int value1;
 		/* smallest and next smallest frequency */
 		int value2;          /* of difference occurrence in the largest difference category */
 
 		/* codesizes for each category */
-		int [] codesize = new int[max_huffcounts+1];
+		Arrays.fill(codesize, 0, max_huffcounts + 1, 0);
 
 		/* pointer used to generate codesizes */
-		int[] others = new int[max_huffcounts+1];
-
 		for (int i = 0; i <= max_huffcounts; i++) {
 			others[i] = -1;
 		}
 
 		while(true) {
 
-			int[] values = find_least_freq(freq, max_huffcounts);
-			value1 = values[0];
-			value2 = values[1];
+			find_least_freq(freq, max_huffcounts);
+			value1 = leastFreqValue1;
+			value2 = leastFreqValue2;
 
 			if(value2 == -1) {
 				break;
@@ -1354,21 +1520,18 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 				codesize[value2]++;
 			}
 		}
-
-		return codesize;
 	}
 
 	/**
-	 * Routine to find the largest difference with the least frequency value
-	 * 
-	 * @return array with value1, value 2
+	 * Routine to find the largest difference with the least frequency value.
+	 * The results are stored in <code>leastFreqValue1</code> and <code>leastFreqValue2</code>.
 	 */
 	/*
 	 * FIXME
 	 * what happens if first two freqs found are smallest but in wrong order?
 	 * FIXME
 	 */
-	private static int[] find_least_freq(int[] freq, int max_huffcounts) {
+	private void find_least_freq(int[] freq, int max_huffcounts) {
 		int code_temp;       /*store code*/
 		int value_temp;      /*store size*/
 		int code2 = Integer.MAX_VALUE;   /*next smallest frequency in largest diff category*/
@@ -1410,14 +1573,15 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 				value2 = value_temp;
 			}
 		}
-		return new int[] { value1, value2 };
+		leastFreqValue1 = value1;
+		leastFreqValue2 = value2;
 	}
 
 
 	/******************************************************************/
 	/* routine to insure that no huffman code size is greater than 16 */
 	/******************************************************************/
-	private static void sort_huffbits(int[] bits) {
+	private void sort_huffbits(int[] bits) {
 		int i, j;
 		int l1, l2, l3;
 
@@ -1425,8 +1589,6 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 		l1 = l3 - 1;                /* 31 */
 		l2 = MAX_HUFFBITS - 1;      /* 15 */
 
-		int[] tbits = new int[l3];
-
 		for(i = 0; i < MAX_HUFFBITS<<1; i++) {
 			tbits[i] = bits[i];
 		}
@@ -1507,28 +1669,27 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 	}
 
 	/* routine to sort huffman codes and sizes */
-	private static WSQHelper.HuffCode[] build_huffcode_table(WSQHelper.HuffCode[] in_huffcode_table,
+	private static void build_huffcode_table(WSQHelper.HuffCode[] new_huffcode_table, WSQHelper.HuffCode[] in_huffcode_table,
 			int last_size, int[] values, int max_huffcounts) {
-		WSQHelper.HuffCode[] new_huffcode_table = new WSQHelper.HuffCode[max_huffcounts + 1];
-		for (int i = 0; i < new_huffcode_table.length; i++) { new_huffcode_table[i] = new WSQHelper.HuffCode(); }
+		for (int i = 0; i <= max_huffcounts; i++) {
+			new_huffcode_table[i].size = 0;
+			new_huffcode_table[i].code = 0;
+		}
 
 		for(int size = 0; size < last_size; size++) {
 			new_huffcode_table[values[size]].code = in_huffcode_table[size].code;
 			new_huffcode_table[values[size]].size = in_huffcode_table[size].size;
 		}
-
-		return new_huffcode_table;
 	}
 
 	/* Routine "codes" the quantized image using the huffman tables. */
-	private static void compress_block(DataOutput dataOutput,
+	private static void compress_block(WSQOutputBuffer out,
 			int[] sip,          /* quantized image */
 			int offset,
 			int length,
 			int MaxCoeff,  /* Maximum values for coefficients  */
 			int MaxZRun,   /* Maximum zero runs */
-			WSQHelper.HuffCode[] codes)     /* huffman code table  */
-	throws IOException {
+			WSQHelper.HuffCode[] codes) {   /* huffman code table  */
 		int LoMaxCoeff;        /* lower (negative) MaxCoeff limit */
 		int pix;             /* temp pixel pointer */
 		int rcnt = 0, state;  /* zero run count and if current pixel
@@ -1543,12 +1704,8 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 		}
 		LoMaxCoeff = 1 - MaxCoeff;
 
-		Ref<Integer> outbit = new Ref<Integer>(7);
-		Ref<Integer> bytes = new Ref<Integer>(0);
-		Ref<Integer> bits = new Ref<Integer>(0);
-
 		state = COEFF_CODE;
-		for (cnt = offset; cnt < length; cnt++) {
+		for (cnt = offset; cnt < offset + length; cnt++) {
 			pix = sip[cnt];
 
 			switch (state) {
@@ -1562,26 +1719,26 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 				if (pix > MaxCoeff) { 
 					if (pix > 255) {
 						/* 16bit pos esc */
-						write_bits(dataOutput, codes[103].size, codes[103].code , outbit, bits, bytes);
-						write_bits(dataOutput, 16, pix , outbit, bits, bytes);
+						out.writeBits(codes[103].size, codes[103].code );
+						out.writeBits(16, pix );
 					} else {
 						/* 8bit pos esc */
-						write_bits(dataOutput, codes[101].size, codes[101].code , outbit, bits, bytes);
-						write_bits(dataOutput, 8, pix , outbit, bits, bytes);
+						out.writeBits(codes[101].size, codes[101].code );
+						out.writeBits(8, pix );
 					}
 				} else if (pix < LoMaxCoeff) {
 					if (pix < -255) {
 						/* 16bit neg esc */
-						write_bits(dataOutput, codes[104].size, codes[104].code , outbit, bits, bytes);
-						write_bits(dataOutput, 16, -(pix ), outbit, bits, bytes);
+						out.writeBits(codes[104].size, codes[104].code );
+						out.writeBits(16, -(pix ));
 					} else {
 						/* 8bit neg esc */
-						write_bits(dataOutput, codes[102].size, codes[102].code , outbit, bits, bytes);
-						write_bits(dataOutput, 8, -(pix ), outbit, bits, bytes);
+						out.writeBits(codes[102].size, codes[102].code );
+						out.writeBits(8, -(pix ));
 					}
 				} else {
 					/* within table */
-					write_bits(dataOutput, codes[pix + 180].size, codes[pix + 180].code , outbit, bits, bytes);
+					out.writeBits(codes[pix + 180].size, codes[pix + 180].code );
 				}
 				break;
 
@@ -1592,15 +1749,15 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 				}
 				if (rcnt <= (int)MaxZRun) {
 					/* log zero run length */
-					write_bits(dataOutput, codes[rcnt].size, codes[rcnt].code , outbit, bits, bytes);
+					out.writeBits(codes[rcnt].size, codes[rcnt].code );
 				} else if (rcnt <= 0xFF) {
 					/* 8bit zrun esc */
-					write_bits(dataOutput, codes[105].size, codes[105].code , outbit, bits, bytes);
-					write_bits(dataOutput, 8, rcnt , outbit, bits, bytes);
+					out.writeBits(codes[105].size, codes[105].code );
+					out.writeBits(8, rcnt );
 				} else if (rcnt <= 0xFFFF) {
 					/* 16bit zrun esc */
-					write_bits(dataOutput, codes[106].size, codes[106].code , outbit, bits, bytes);
-					write_bits(dataOutput, 16, rcnt , outbit, bits, bytes);					
+					out.writeBits(codes[106].size, codes[106].code );
+					out.writeBits(16, rcnt );					
 				} else {
 					throw new IllegalStateException("ERROR : compress_block : zrun too large.");
 				}
@@ -1610,26 +1767,26 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 						/** log current pix **/
 						if (pix > 255) {
 							/* 16bit pos esc */
-							write_bits(dataOutput, codes[103].size, codes[103].code , outbit, bits, bytes);
-							write_bits(dataOutput, 16, pix, outbit, bits, bytes);
+							out.writeBits(codes[103].size, codes[103].code );
+							out.writeBits(16, pix);
 						} else {
 							/* 8bit pos esc */
-							write_bits(dataOutput, codes[101].size, codes[101].code , outbit, bits, bytes);
-							write_bits(dataOutput, 8, pix , outbit, bits, bytes);
+							out.writeBits(codes[101].size, codes[101].code );
+							out.writeBits(8, pix );
 						}
 					} else if (pix < LoMaxCoeff) {
 						if (pix < -255) {
 							/* 16bit neg esc */
-							write_bits(dataOutput, codes[104].size, codes[104].code , outbit, bits, bytes);
-							write_bits(dataOutput, 16, -pix, outbit, bits, bytes);
+							out.writeBits(codes[104].size, codes[104].code );
+							out.writeBits(16, -pix);
 						} else {
 							/* 8bit neg esc */
-							write_bits(dataOutput, codes[102].size, codes[102].code, outbit, bits, bytes);
-							write_bits(dataOutput, 8, -pix, outbit, bits, bytes);
+							out.writeBits(codes[102].size, codes[102].code);
+							out.writeBits(8, -pix);
 						}
 					} else {
 						/* within table */
-						write_bits(dataOutput, codes[pix + 180].size, codes[pix + 180].code , outbit, bits, bytes);
+						out.writeBits(codes[pix + 180].size, codes[pix + 180].code );
 					}
 					state = COEFF_CODE;
 				} else {
@@ -1641,19 +1798,19 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 		}
 		if (state == RUN_CODE) {
 			if (rcnt <= MaxZRun) {
-				write_bits(dataOutput, codes[rcnt].size, codes[rcnt].code , outbit, bits, bytes);
+				out.writeBits(codes[rcnt].size, codes[rcnt].code );
 			} else if (rcnt <= 0xFF) {
-				write_bits(dataOutput, codes[105].size, codes[105].code , outbit, bits, bytes);
-				write_bits(dataOutput, 8, rcnt , outbit, bits, bytes);
+				out.writeBits(codes[105].size, codes[105].code );
+				out.writeBits(8, rcnt );
 			} else if (rcnt <= 0xFFFF) {
-				write_bits(dataOutput, codes[106].size, codes[106].code , outbit, bits, bytes);
-				write_bits(dataOutput, 16, rcnt , outbit, bits, bytes);
+				out.writeBits(codes[106].size, codes[106].code );
+				out.writeBits(16, rcnt );
 			} else {
 				throw new IllegalStateException("ERROR : compress_block : zrun2 too large.");
 			}
 		}
 
-		flush_bits(dataOutput, outbit, bits, bytes);
+		out.flushBits();
 	}
 
 	private static String fetToString(Map<String, String> fet) {
@@ -1675,63 +1832,4 @@ public class WSQEncoder implements WSQConstants, NISTConstants {
 			throw new RuntimeException(e);
 		}
 	}
-
-	/* Routine to write "compressed" bits to output buffer. */
-	private static void write_bits(
-			DataOutput outbuf,
-			int size,          /* numbers bits of code to write into buffer   */
-			int code, /* info to write into buffer                   */
-			Ref<Integer> outbit,               /* current bit location in out buffer byte     */
-			Ref<Integer> bits,       /* byte to write to output buffer              */
-			Ref<Integer> bytes)                /* count of number bytes written to the buffer */
-					throws IOException {
-		int num;
-		num = size;
-
-		for(--num; num >= 0; num--) {
-			bits.value <<= 1;
-			bits.value |= (((code >> num) & 0x0001)) & 0xFF;
-
-			if(--(outbit.value) < 0) {
-				outbuf.write(bits.value);
-				if((bits.value & 0xFF) == 0xFF) {
-					outbuf.write(0);
-					bytes.value++;
-				}
-				bytes.value++;
-				outbit.value = 7;
-				bits.value = 0;
-			}
-		}
-		return;
-	}
-
-	/* Routine to "flush" left over bits in last */
-	/* byte after compressing a block.           */
-	private static void flush_bits(
-			DataOutput outbuf, /* output data buffer */
-			Ref<Integer> outbit,            /* current bit location in out buffer byte */
-			Ref<Integer> bits,    /* byte to write to output buffer */
-			Ref<Integer> bytes)             /* count of number bytes written to the buffer */
-					throws IOException {
-		int cnt;              /* temp counter */
-
-		if(outbit.value != 7) {
-			for (cnt = outbit.value; cnt >= 0; cnt--) {
-				bits.value <<= 1;
-				bits.value |= 0x01;
-			}
-
-			outbuf.write(bits.value);
-			if(bits.value == 0xFF) {
-				bits.value = 0;
-				outbuf.write(0);
-				bytes.value++;
-			}
-			bytes.value++;
-			outbit.value = 7;
-			bits.value = 0;
-		}
-		return;
-	}
 }
@@ -23,6 +23,9 @@ package org.jnbis;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Based on JNBIS:
@@ -78,6 +81,10 @@ public class WSQHelper {
 	static final int TBLS_N_SOF = 2;
 	static final int TBLS_N_SOB = TBLS_N_SOF + 2;
 
+	/* Wavelet passes over fewer pixels are not split into stripes. */
+	static final int PARALLEL_THRESHOLD = 256 * 256;
+	static final int STRIPES_PER_PROCESSOR = 4;
+
 	static class WavletTree {
 		int x;
 		int y;
@@ -196,18 +203,6 @@ public class WSQHelper {
 		float[] var = new float[MAX_SUBBANDS];
 	}
 
-	static class Ref<T> {
-		public T value;
-
-		public Ref() {
-			this(null);
-		}
-
-		public Ref(T value) {
-			this.value = value;
-		}
-	}
-
 	/**
 	 * This appears to be the global state of decoder (and now also encoder).
 	 */
@@ -229,6 +224,24 @@ public class WSQHelper {
 				tableDHT[i].tabdef = 0;
 			}
 		}
+
+		/**
+		 * Undefines the tables read from a previous image, so that this token can be reused.
+		 * The allocated tables and trees are kept.
+		 */
+		void reset() {
+			for (int i = 0; i < MAX_DHT_TABLES; i++) {
+				tableDHT[i].tabdef = 0;
+			}
+			tableDTT.lofilt = TableDTT.LO_FILT_NOT_EVEN_8X8_1;
+			tableDTT.hifilt = TableDTT.HI_FILT_NOT_EVEN_8X8_1;
+			tableDTT.losz = 0;
+			tableDTT.hisz = 0;
+			tableDTT.lodef = 0;
+			tableDTT.hidef = 0;
+			tableDQT.dqtDef = 0;
+			comments.clear();
+		}
 	}
 
 	static void buildWSQTrees(Token token, int width, int height) {
@@ -241,9 +254,17 @@ public class WSQHelper {
 	static void buildWTree(Token token, int wtreelen, int width, int height) {
 		int lenx, lenx2, leny, leny2;  /* starting lengths of sections of
                                               the image being split into subbands */
-		token.wtree = new WSQHelper.WavletTree[wtreelen];
+		if (token.wtree == null || token.wtree.length != wtreelen) {
+			token.wtree = new WSQHelper.WavletTree[wtreelen];
+			for (int i = 0; i < wtreelen; i++) {
+				token.wtree[i] = new WSQHelper.WavletTree();
+			}
+		}
 		for (int i = 0; i < wtreelen; i++) {
-			token.wtree[i] = new WSQHelper.WavletTree();
+			token.wtree[i].x = 0;
+			token.wtree[i].y = 0;
+			token.wtree[i].lenx = 0;
+			token.wtree[i].leny = 0;
 			token.wtree[i].invrw = 0;
 			token.wtree[i].invcl = 0;
 		}
@@ -361,9 +382,17 @@ public class WSQHelper {
 	}
 
 	static void buildQTree(Token token, int qtreelen) {
-		token.qtree = new WSQHelper.QuantTree[qtreelen];
+		if (token.qtree == null || token.qtree.length != qtreelen) {
+			token.qtree = new WSQHelper.QuantTree[qtreelen];
+			for (int i = 0; i < token.qtree.length; i++) {
+				token.qtree[i] = new WSQHelper.QuantTree();
+			}
+		}
 		for (int i = 0; i < token.qtree.length; i++) {
-			token.qtree[i] = new WSQHelper.QuantTree();
+			token.qtree[i].x = 0;
+			token.qtree[i].y = 0;
+			token.qtree[i].lenx = 0;
+			token.qtree[i].leny = 0;
 		}
 
 		qtree16(token, 3, token.wtree[14].lenx, token.wtree[14].leny, token.wtree[14].x, token.wtree[14].y, 0, 0);
@@ -555,4 +584,163 @@ public class WSQHelper {
 		token.qtree[p + 2].y = y + token.qtree[p].leny;
 		token.qtree[p + 3].y = token.qtree[p + 2].y;
 	}
+
+	/**
+	 * Computes an output sample of a wavelet filter from input samples that are all
+	 * inside the row or column, so that no reflection at the edges is needed.
+	 * The products are summed in the same order as in the general filter code,
+	 * the result is identical.
+	 *
+	 * @param data the input samples
+	 * @param px the index of the input sample for the first tap
+	 * @param stride the distance between input samples
+	 * @param taps the filter coefficients
+	 * @param tap the first tap
+	 * @param tapStride the distance between taps
+	 * @param size the number of filter coefficients
+	 *
+	 * @return the output sample
+	 */
+	static float filter(float[] data, int px, int stride, float[] taps, int tap, int tapStride, int size) {
+		float sum = data[px] * taps[tap];
+		for (tap += tapStride; tap < size; tap += tapStride) {
+			px += stride;
+			sum += data[px] * taps[tap];
+		}
+		return sum;
+	}
+
+	/**
+	 * Adds the products of filter taps and input samples to an output sample,
+	 * like {@link #filter(float[], int, int, float[], int, int, int)}.
+	 *
+	 * @param sum the output sample to add to
+	 * @param data the input samples
+	 * @param px the index of the input sample for the first tap
+	 * @param stride the distance between input samples
+	 * @param taps the filter coefficients
+	 * @param tap the first tap
+	 * @param tapStride the distance between taps
+	 * @param size the number of filter coefficients
+	 *
+	 * @return the output sample
+	 */
+	static float filter(float sum, float[] data, int px, int stride, float[] taps, int tap, int tapStride, int size) {
+		for (; tap < size; tap += tapStride) {
+			sum += data[px] * taps[tap];
+			px += stride;
+		}
+		return sum;
+	}
+
+	/**
+	 * A pass over rows or columns of which every row or column can be computed independently.
+	 */
+	interface StripedPass {
+
+		/**
+		 * Computes the rows or columns in the given range.
+		 *
+		 * @param first the first row or column
+		 * @param last the row or column after the last one
+		 */
+		void run(int first, int last);
+	}
+
+	/**
+	 * Runs a pass over <code>count</code> rows or columns in stripes.
+	 * Stripes are claimed in order by the calling thread and by helper tasks
+	 * submitted to <code>executor</code>. The calling thread only waits for helpers that
+	 * have started, so this does not deadlock when called from a task on the same executor.
+	 *
+	 * @param executor the executor to submit helper tasks to
+	 * @param count the number of rows or columns
+	 * @param pass the pass
+	 */
+	static void runStriped(ExecutorService executor, int count, StripedPass pass) {
+		int processors = Runtime.getRuntime().availableProcessors();
+		StripedRun run = new StripedRun(pass, count, Math.min(count, processors * STRIPES_PER_PROCESSOR));
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			for (int i = 1; i < Math.min(processors, run.stripeCount); i++) {
+				futures.add(executor.submit(run));
+			}
+			run.runStripes();
+		} finally {
+			run.close();
+			for (Future<?> future: futures) {
+				future.cancel(false);
+			}
+		}
+		Throwable failure = run.failure;
+		if (failure instanceof RuntimeException) { throw (RuntimeException)failure; }
+		if (failure instanceof Error) { throw (Error)failure; }
+	}
+
+	/**
+	 * The state of a striped pass that is shared by the calling thread and the helper tasks.
+	 */
+	private static class StripedRun implements Runnable {
+
+		private StripedPass pass;
+		private int count;
+		private int stripeCount;
+		private AtomicInteger nextStripe;
+
+		/* Number of helpers running, helpers no longer start once closed. */
+		private int helperCount;
+		private boolean isClosed;
+		private volatile Throwable failure;
+
+		StripedRun(StripedPass pass, int count, int stripeCount) {
+			this.pass = pass;
+			this.count = count;
+			this.stripeCount = stripeCount;
+			this.nextStripe = new AtomicInteger();
+		}
+
+		public void run() {
+			synchronized (this) {
+				if (isClosed) { return; }
+				helperCount++;
+			}
+			try {
+				runStripes();
+			} catch (Throwable t) {
+				failure = t;
+				nextStripe.set(stripeCount);
+			} finally {
+				synchronized (this) {
+					helperCount--;
+					notifyAll();
+				}
+			}
+		}
+
+		void runStripes() {
+			for (int stripe = nextStripe.getAndIncrement(); stripe < stripeCount; stripe = nextStripe.getAndIncrement()) {
+				pass.run(stripe * count / stripeCount, (stripe + 1) * count / stripeCount);
+			}
+		}
+
+		/**
+		 * Stops helpers from claiming stripes and waits for the running helpers,
+		 * as they write to buffers of the caller.
+		 */
+		synchronized void close() {
+			isClosed = true;
+			nextStripe.set(stripeCount);
+			boolean isInterrupted = false;
+			while (helperCount > 0) {
+				try {
+					wait();
+				} catch (InterruptedException ie) {
+					isInterrupted = true;
+				}
+			}
+			if (isInterrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
 }
@@ -0,0 +1,288 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * --
+ * This code is based on JNBIS 1.0.3 which was licensed under Apache License 2.0.
+ *
+ * $Id: $
+ */
+
+package org.jnbis;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Table driven Huffman decoder for the entropy coded blocks of a WSQ file.
+ *
+ * Bits are kept in a 64-bit reservoir which is refilled a byte at a time.
+ * Stuffed zero bytes are dropped and markers are detected while refilling,
+ * the reservoir is never filled beyond a marker so that the marker segments
+ * that follow can be read from the same input. Codes of up to
+ * {@link #LOOKAHEAD_BITS} bits are decoded with a single table lookup,
+ * longer codes fall back to the canonical NBIS decode tables.
+ *
+ * Instances can be reused for subsequent images, the tables are allocated once.
+ */
+class WSQHuffmanDecoder implements WSQConstants {
+
+	static final int LOOKAHEAD_BITS = 8;
+
+	private DataInput dataInput;
+
+	/* Bit reservoir, the lowest bitCount bits are valid. */
+	private long bits;
+	private int bitCount;
+
+	/* Set when the reservoir runs into a marker or the end of the input. */
+	private int marker;
+	private boolean isEOF;
+
+	/* Lookahead table, (code size << 8) | value, 0 for codes longer than LOOKAHEAD_BITS. */
+	private int[] lookahead;
+	private int[] maxcode;
+	private int[] mincode;
+	private int[] valptr;
+	private int[] huffvalues;
+	private WSQHelper.HuffCode[] hufftable;
+
+	/**
+	 * Constructs a decoder.
+	 */
+	WSQHuffmanDecoder() {
+		this.hufftable = new WSQHelper.HuffCode[MAX_HUFFCOUNTS_WSQ + 1];
+		for (int i = 0; i < hufftable.length; i++) {
+			hufftable[i] = new WSQHelper.HuffCode();
+		}
+		this.lookahead = new int[1 << LOOKAHEAD_BITS];
+		this.maxcode = new int[MAX_HUFFBITS + 1];
+		this.mincode = new int[MAX_HUFFBITS + 1];
+		this.valptr = new int[MAX_HUFFBITS + 1];
+	}
+
+	/**
+	 * Sets the input to read blocks from.
+	 *
+	 * @param dataInput the input positioned at the first block
+	 */
+	void setDataInput(DataInput dataInput) {
+		this.dataInput = dataInput;
+		reset();
+	}
+
+	/**
+	 * Sets the Huffman table used for the next block.
+	 *
+	 * @param huffbits the number of codes of each size
+	 * @param huffvalues the values in order of increasing code
+	 */
+	void setTable(int[] huffbits, int[] huffvalues) {
+		this.huffvalues = huffvalues;
+
+		/* the next two routines reconstruct the huffman tables */
+		buildHuffsizes(hufftable, huffbits);
+		buildHuffcodes(hufftable);
+
+		/* this routine builds a set of three tables used in decoding */
+		genDecodeTable(hufftable, maxcode, mincode, valptr, huffbits);
+
+		for (int pattern = 0; pattern < lookahead.length; pattern++) {
+			lookahead[pattern] = 0;
+			for (int size = 1; size <= LOOKAHEAD_BITS; size++) {
+				int code = pattern >> (LOOKAHEAD_BITS - size);
+				if (code <= maxcode[size]) {
+					lookahead[pattern] = (size << 8) | huffvalues[valptr[size] + code - mincode[size]];
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discards the bits left in the reservoir and clears the marker,
+	 * to be called when the input is positioned at the start of a block.
+	 */
+	void reset() {
+		bits = 0;
+		bitCount = 0;
+		marker = 0;
+		isEOF = false;
+	}
+
+	/**
+	 * The marker that ended the current block.
+	 *
+	 * @return the marker, or 0 if none was encountered yet
+	 */
+	int getMarker() {
+		return marker;
+	}
+
+	/**
+	 * Decodes the next Huffman category code.
+	 *
+	 * @return the decoded value, or -1 if the block ended in a marker
+	 *
+	 * @throws EOFException if the input ends before the block does
+	 * @throws IOException on error reading the input
+	 */
+	int decodeSymbol() throws IOException {
+		if (bitCount < MAX_HUFFBITS) {
+			refill();
+		}
+
+		if (bitCount >= LOOKAHEAD_BITS) {
+			int entry = lookahead[(int)(bits >>> (bitCount - LOOKAHEAD_BITS)) & 0xFF];
+			if (entry != 0) {
+				bitCount -= entry >> 8;
+				return entry & 0xFF;
+			}
+		}
+
+		/* Long code, or few bits left before a marker. */
+		for (int size = 1; size <= MAX_HUFFBITS; size++) {
+			if (size > bitCount) {
+				if (isEOF) {
+					throw new EOFException();
+				}
+				/* The rest of the block is padding. */
+				return -1;
+			}
+			short code = (short)((bits >>> (bitCount - size)) & ((1 << size) - 1));
+			if (code <= maxcode[size]) {
+				bitCount -= size;
+				return huffvalues[valptr[size] + code - mincode[size]];
+			}
+		}
+		throw new RuntimeException("ERROR: decodeSymbol : Invalid code.");
+	}
+
+	/**
+	 * Gets the next (at most 16) bits of the block as an unsigned integer.
+	 *
+	 * @param bitsReq the number of bits
+	 *
+	 * @return the bits
+	 *
+	 * @throws EOFException if the input ends before the block does
+	 * @throws IOException on error reading the input
+	 */
+	int getBits(int bitsReq) throws IOException {
+		if (bitCount < bitsReq) {
+			refill();
+			if (bitCount < bitsReq) {
+				if (isEOF) {
+					throw new EOFException();
+				}
+				throw new RuntimeException("ERROR: getBits : No stuffed zeros.");
+			}
+		}
+		bitCount -= bitsReq;
+		return (int)(bits >>> bitCount) & ((1 << bitsReq) - 1);
+	}
+
+	/**
+	 * Fills the reservoir up to at least 57 bits, or until a marker or the end of the input is reached.
+	 *
+	 * @throws IOException on error reading the input
+	 */
+	private void refill() throws IOException {
+		if (marker != 0 || isEOF) {
+			return;
+		}
+		try {
+			while (bitCount <= 56) {
+				int nextByte = dataInput.readUnsignedByte();
+				if (nextByte == 0xFF) {
+					int code2 = dataInput.readUnsignedByte(); /* stuffed byte of buffer */
+					if (code2 != 0x00) {
+						marker = (nextByte << 8) | code2;
+						return;
+					}
+				}
+				bits = (bits << 8) | nextByte;
+				bitCount += 8;
+			}
+		} catch (EOFException eof) {
+			isEOF = true;
+		}
+	}
+
+	private static void buildHuffsizes(WSQHelper.HuffCode[] huffcodeTable, int[] huffbits) {
+		int numberOfCodes = 1;     /*the number codes for a given code size*/
+
+		int tempSize = 0;
+		for (int codeSize = 1; codeSize <= MAX_HUFFBITS; codeSize++) {
+			while (numberOfCodes <= huffbits[codeSize - 1]) {
+				huffcodeTable[tempSize].size = codeSize;
+				huffcodeTable[tempSize].code = 0;
+				tempSize++;
+				numberOfCodes++;
+			}
+			numberOfCodes = 1;
+		}
+
+		huffcodeTable[tempSize].size = 0;
+		huffcodeTable[tempSize].code = 0;
+	}
+
+	private static void buildHuffcodes(WSQHelper.HuffCode[] huffcodeTable) {
+		short tempCode = 0;  /*used to construct code word*/
+		int pointer = 0;     /*pointer to code word information*/
+
+		int tempSize = huffcodeTable[0].size;
+		if (huffcodeTable[pointer].size == 0) {
+			return;
+		}
+
+		do {
+			do {
+				huffcodeTable[pointer].code = tempCode;
+				tempCode++;
+				pointer++;
+			} while (huffcodeTable[pointer].size == tempSize);
+
+			if (huffcodeTable[pointer].size == 0)
+				return;
+
+			do {
+				tempCode <<= 1;
+				tempSize++;
+			} while (huffcodeTable[pointer].size != tempSize);
+		} while (huffcodeTable[pointer].size == tempSize);
+	}
+
+	private static void genDecodeTable(WSQHelper.HuffCode[] huffcodeTable, int[] maxcode, int[] mincode, int[] valptr, int[] huffbits) {
+		for (int i = 0; i <= MAX_HUFFBITS; i++) {
+			maxcode[i] = 0;
+			mincode[i] = 0;
+			valptr[i] = 0;
+		}
+
+		int i2 = 0;
+		for (int i = 1; i <= MAX_HUFFBITS; i++) {
+			if (huffbits[i - 1] == 0) {
+				maxcode[i] = -1;
+				continue;
+			}
+			valptr[i] = i2;
+			mincode[i] = huffcodeTable[i2].code;
+			i2 = i2 + huffbits[i - 1] - 1;
+			maxcode[i] = huffcodeTable[i2].code;
+			i2++;
+		}
+	}
+}
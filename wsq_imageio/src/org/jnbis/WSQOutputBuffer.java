@@ -0,0 +1,141 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * --
+ * This code is based on JNBIS 1.0.3 which was licensed under Apache License 2.0.
+ *
+ * $Id: $
+ */
+
+package org.jnbis;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Growable output buffer for a WSQ file, with bit output for the entropy coded blocks.
+ *
+ * Huffman codes are collected in a bit accumulator and stored a byte at a time,
+ * a zero byte is stuffed after every <code>0xFF</code> byte. The encoder writes
+ * the complete file to the buffer and then copies it to its output in one call.
+ *
+ * Instances can be reused for subsequent images, the buffer keeps its capacity.
+ */
+class WSQOutputBuffer extends OutputStream {
+
+	private byte[] buffer;
+	private int length;
+
+	/* Bit accumulator, the lowest bitCount bits are pending. */
+	private int bits;
+	private int bitCount;
+
+	/**
+	 * Constructs a buffer.
+	 *
+	 * @param capacity the initial capacity in bytes
+	 */
+	WSQOutputBuffer(int capacity) {
+		this.buffer = new byte[capacity];
+	}
+
+	/**
+	 * Discards the contents, keeping the capacity.
+	 */
+	void reset() {
+		length = 0;
+		bits = 0;
+		bitCount = 0;
+	}
+
+	/**
+	 * The number of bytes in the buffer.
+	 *
+	 * @return the number of bytes
+	 */
+	int size() {
+		return length;
+	}
+
+	public void write(int b) {
+		ensureCapacity(length + 1);
+		buffer[length++] = (byte)b;
+	}
+
+	public void write(byte[] b, int offset, int len) {
+		if (offset < 0 || len < 0 || offset > b.length - len) {
+			throw new IndexOutOfBoundsException();
+		}
+		ensureCapacity(length + len);
+		System.arraycopy(b, offset, buffer, length, len);
+		length += len;
+	}
+
+	/**
+	 * Writes the lowest bits of a code, most significant bit first.
+	 *
+	 * @param size the number of bits to write, at most 16
+	 * @param code the code
+	 */
+	void writeBits(int size, int code) {
+		bits = (bits << size) | (code & ((1 << size) - 1));
+		bitCount += size;
+		if (bitCount < 8) {
+			return;
+		}
+
+		/* At most two bytes, each possibly followed by a stuffed zero. */
+		ensureCapacity(length + 4);
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			int b = (bits >>> bitCount) & 0xFF;
+			buffer[length++] = (byte)b;
+			if (b == 0xFF) {
+				buffer[length++] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Pads the pending bits with ones to a whole byte, to be called at the end of a block.
+	 */
+	void flushBits() {
+		if (bitCount > 0) {
+			int pad = 8 - bitCount;
+			writeBits(pad, (1 << pad) - 1);
+		}
+		bits = 0;
+	}
+
+	/**
+	 * Writes the contents of this buffer to an output.
+	 *
+	 * @param dataOutput the output to write to
+	 *
+	 * @throws IOException on error writing the output
+	 */
+	void writeTo(DataOutput dataOutput) throws IOException {
+		dataOutput.write(buffer, 0, length);
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > buffer.length) {
+			byte[] newBuffer = new byte[Math.max(capacity, 2 * buffer.length)];
+			System.arraycopy(buffer, 0, newBuffer, 0, length);
+			buffer = newBuffer;
+		}
+	}
+}
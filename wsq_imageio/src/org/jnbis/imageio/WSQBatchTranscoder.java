@@ -0,0 +1,342 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ *
+ * $Id: $
+ */
+
+package org.jnbis.imageio;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.jnbis.Bitmap;
+import org.jnbis.WSQDecoder;
+import org.jnbis.WSQEncoder;
+
+/**
+ * Transcodes batches of 8-bit grayscale fingerprint images between WSQ, PNG, and raw files.
+ * The format of a file is determined by its extension.
+ *
+ * Files are transcoded by a fixed number of worker threads. Every worker has its own
+ * {@link WSQDecoder} and {@link WSQEncoder}, so the scratch buffers of the codecs are
+ * reused for all images of a batch and at most one image per worker is in memory.
+ * Raw files have no header, their dimensions are set with {@link #setRawFormat(int, int, int)}.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author The JMRTD team (info@jmrtd.org)
+ *
+ * @version $Revision: $
+ */
+public class WSQBatchTranscoder {
+
+	public static final String WSQ = "wsq", PNG = "png", RAW = "raw";
+
+	private static final List<String> FORMATS = Arrays.asList(new String[] { WSQ, PNG, RAW });
+
+	private int threadCount;
+	private double bitRate;
+	private int rawWidth, rawHeight, rawPpi;
+
+	/**
+	 * Constructs a transcoder.
+	 *
+	 * @param threadCount the number of worker threads
+	 */
+	public WSQBatchTranscoder(int threadCount) {
+		if (threadCount < 1) { throw new IllegalArgumentException("Thread count " + threadCount + " < 1"); }
+		this.threadCount = threadCount;
+		this.bitRate = 0.75;
+		this.rawWidth = -1;
+		this.rawHeight = -1;
+		this.rawPpi = -1;
+	}
+
+	/**
+	 * Sets the bit rate of WSQ files written by this transcoder, the default is 0.75.
+	 *
+	 * @param bitRate the bit rate
+	 */
+	public void setBitRate(double bitRate) {
+		this.bitRate = bitRate;
+	}
+
+	/**
+	 * Sets the dimensions of raw source files.
+	 *
+	 * @param width the width in pixels
+	 * @param height the height in pixels
+	 * @param ppi the resolution in pixels per inch, or -1 if unknown
+	 */
+	public void setRawFormat(int width, int height, int ppi) {
+		this.rawWidth = width;
+		this.rawHeight = height;
+		this.rawPpi = ppi;
+	}
+
+	/**
+	 * Transcodes the WSQ, PNG, and raw files in a directory.
+	 *
+	 * @param sourceDir the directory containing the source files
+	 * @param targetDir the directory to write the target files to
+	 * @param targetFormat the target format, one of {@link #WSQ}, {@link #PNG}, or {@link #RAW}
+	 *
+	 * @return the results, in the order of the source file names
+	 *
+	 * @throws IOException if the directory cannot be listed or the batch is interrupted
+	 */
+	public List<Result> transcode(File sourceDir, File targetDir, String targetFormat) throws IOException {
+		File[] files = sourceDir.listFiles();
+		if (files == null) { throw new IOException("Cannot list " + sourceDir); }
+		Arrays.sort(files);
+		List<File> sourceFiles = new ArrayList<File>();
+		for (File file: files) {
+			if (file.isFile() && FORMATS.contains(getFormat(file))) {
+				sourceFiles.add(file);
+			}
+		}
+		return transcode(sourceFiles, targetDir, targetFormat);
+	}
+
+	/**
+	 * Transcodes files. A target file has the name of its source file with the
+	 * extension of the target format. A file that cannot be transcoded does not
+	 * stop the batch, its failure is reported in its result.
+	 *
+	 * @param sourceFiles the source files
+	 * @param targetDir the directory to write the target files to
+	 * @param targetFormat the target format, one of {@link #WSQ}, {@link #PNG}, or {@link #RAW}
+	 *
+	 * @return the results, in the order of <code>sourceFiles</code>
+	 *
+	 * @throws IOException if the batch is interrupted
+	 */
+	public List<Result> transcode(List<File> sourceFiles, File targetDir, String targetFormat) throws IOException {
+		targetFormat = targetFormat.toLowerCase();
+		if (!FORMATS.contains(targetFormat)) { throw new IllegalArgumentException("Unsupported format " + targetFormat); }
+		Result[] results = new Result[sourceFiles.size()];
+		for (int i = 0; i < results.length; i++) {
+			File sourceFile = sourceFiles.get(i);
+			String name = sourceFile.getName();
+			int dotIndex = name.lastIndexOf('.');
+			if (dotIndex > 0) { name = name.substring(0, dotIndex); }
+			results[i] = new Result(sourceFile, new File(targetDir, name + "." + targetFormat));
+		}
+
+		int workerCount = Math.min(threadCount, results.length);
+		if (workerCount == 0) { return Collections.emptyList(); }
+		ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+		try {
+			AtomicInteger nextIndex = new AtomicInteger();
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < workerCount; i++) {
+				futures.add(executor.submit(new Worker(results, nextIndex, targetFormat)));
+			}
+			for (Future<Void> future: futures) {
+				future.get();
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while transcoding");
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof RuntimeException) { throw (RuntimeException)cause; }
+			if (cause instanceof Error) { throw (Error)cause; }
+			throw new IllegalStateException(cause);
+		} finally {
+			executor.shutdownNow();
+		}
+		return Arrays.asList(results);
+	}
+
+	private static String getFormat(File file) {
+		String name = file.getName();
+		int dotIndex = name.lastIndexOf('.');
+		return dotIndex < 0 ? "" : name.substring(dotIndex + 1).toLowerCase();
+	}
+
+	/**
+	 * The result of transcoding one file.
+	 */
+	public static class Result {
+
+		private File sourceFile;
+		private File targetFile;
+		private long duration;
+		private Exception failure;
+
+		Result(File sourceFile, File targetFile) {
+			this.sourceFile = sourceFile;
+			this.targetFile = targetFile;
+		}
+
+		public File getSourceFile() {
+			return sourceFile;
+		}
+
+		public File getTargetFile() {
+			return targetFile;
+		}
+
+		/**
+		 * Gets the time it took to transcode the file.
+		 *
+		 * @return the duration in nanoseconds
+		 */
+		public long getDuration() {
+			return duration;
+		}
+
+		/**
+		 * Gets the reason the file could not be transcoded.
+		 *
+		 * @return an exception, or <code>null</code> if the file was transcoded
+		 */
+		public Exception getFailure() {
+			return failure;
+		}
+
+		public String toString() {
+			return "Result [" + sourceFile + " -> " + targetFile + ", " + (failure == null ? "ok" : failure.toString()) + "]";
+		}
+	}
+
+	/**
+	 * Claims files until none are left, with codecs of its own.
+	 */
+	private class Worker implements Callable<Void> {
+
+		private Result[] results;
+		private AtomicInteger nextIndex;
+		private String targetFormat;
+
+		private WSQDecoder decoder;
+		private WSQEncoder encoder;
+
+		Worker(Result[] results, AtomicInteger nextIndex, String targetFormat) {
+			this.results = results;
+			this.nextIndex = nextIndex;
+			this.targetFormat = targetFormat;
+			this.decoder = new WSQDecoder();
+			this.encoder = new WSQEncoder();
+		}
+
+		public Void call() {
+			for (int index = nextIndex.getAndIncrement(); index < results.length; index = nextIndex.getAndIncrement()) {
+				if (Thread.currentThread().isInterrupted()) { break; }
+				Result result = results[index];
+				long startTime = System.nanoTime();
+				try {
+					write(read(result.sourceFile), result.targetFile);
+				} catch (Exception e) {
+					result.failure = e;
+				}
+				result.duration = System.nanoTime() - startTime;
+			}
+			return null;
+		}
+
+		private Bitmap read(File file) throws IOException {
+			String format = getFormat(file);
+			if (WSQ.equals(format)) {
+				InputStream in = new BufferedInputStream(new FileInputStream(file));
+				try {
+					return decoder.decodeBitmap(in);
+				} finally {
+					in.close();
+				}
+			} else if (PNG.equals(format)) {
+				BufferedImage image = ImageIO.read(file);
+				if (image == null) { throw new IOException("Cannot read " + file); }
+				return toBitmap(image);
+			} else if (RAW.equals(format)) {
+				if (rawWidth < 0 || rawHeight < 0) { throw new IOException("Raw format not set"); }
+				if (file.length() != (long)rawWidth * rawHeight) {
+					throw new IOException("Expected " + rawWidth + " x " + rawHeight + " bytes, found " + file.length());
+				}
+				byte[] pixels = new byte[rawWidth * rawHeight];
+				DataInputStream in = new DataInputStream(new FileInputStream(file));
+				try {
+					in.readFully(pixels);
+				} finally {
+					in.close();
+				}
+				return new Bitmap(pixels, rawWidth, rawHeight, rawPpi, 8, 0);
+			}
+			throw new IOException("Unsupported format " + format);
+		}
+
+		private void write(Bitmap bitmap, File file) throws IOException {
+			if (PNG.equals(targetFormat)) {
+				if (!ImageIO.write(toImage(bitmap), PNG, file)) { throw new IOException("No PNG writer"); }
+				return;
+			}
+			OutputStream out = new FileOutputStream(file);
+			try {
+				if (WSQ.equals(targetFormat)) {
+					/* The encoder writes the file in a single call. */
+					encoder.encodeBitmap(out, bitmap, bitRate, null);
+				} else {
+					out.write(bitmap.getPixels(), 0, bitmap.getWidth() * bitmap.getHeight());
+				}
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	private static Bitmap toBitmap(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (image.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+			BufferedImage grayImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+			Graphics2D g = grayImage.createGraphics();
+			g.drawImage(image, 0, 0, null);
+			g.dispose();
+			image = grayImage;
+		}
+		byte[] pixels = (byte[])image.getRaster().getDataElements(0, 0, width, height, null);
+		return new Bitmap(pixels, width, height, -1, 8, 0);
+	}
+
+	private static BufferedImage toImage(Bitmap bitmap) {
+		int width = bitmap.getWidth();
+		int height = bitmap.getHeight();
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		image.getRaster().setDataElements(0, 0, width, height, bitmap.getPixels());
+		return image;
+	}
+}
@@ -19,6 +19,9 @@
 package org.jnbis.imageio;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Iterator;
@@ -40,6 +43,12 @@ public class WSQImageReader extends ImageReader {
 	private WSQMetadata metadata;
 	private BufferedImage image;
 
+	/* Frame header and comments, read without decoding the pixels. */
+	private BitmapWithMetadata header;
+
+	/* Reused for subsequent inputs. */
+	private WSQDecoder decoder;
+
 	public WSQImageReader(ImageReaderSpi provider) {
 		super(provider);
 	}
@@ -54,39 +63,101 @@ public class WSQImageReader extends ImageReader {
 
 	public void setInput(Object input, boolean seekForwardOnly, boolean ignoreMetaData) {
 		super.setInput(input, seekForwardOnly, ignoreMetaData);
+		this.image = null;
+		this.metadata = null;
+		this.header = null;
 	}
 
 	public int getNumImages(boolean allowSearch) throws IIOException {
-		processInput(0);
 		return 1;
 	}
 
+	/**
+	 * Reads the image. Source subsampling in <code>param</code> is supported,
+	 * when both subsampling periods are multiples of 2<sup><i>n</i></sup> the image
+	 * is decoded at reduction level <i>n</i> (see {@link WSQDecoder#decodeBitmap(java.io.DataInput, int)}),
+	 * which is considerably cheaper than decoding the full image.
+	 * Source regions and destinations in <code>param</code> are ignored.
+	 *
+	 * @param imageIndex the index of the image, should be 0
+	 * @param param the read parameters, or <code>null</code>
+	 *
+	 * @return the image
+	 *
+	 * @throws IIOException on error reading the image
+	 */
 	public BufferedImage read(int imageIndex, ImageReadParam param) throws IIOException {
-		processInput(imageIndex);
+		int xSubsampling = param == null ? 1 : param.getSourceXSubsampling();
+		int ySubsampling = param == null ? 1 : param.getSourceYSubsampling();
+		if (xSubsampling == 1 && ySubsampling == 1) {
+			processInput(imageIndex);
+			return image;
+		}
+		if (imageIndex != 0) { throw new IndexOutOfBoundsException("imageIndex " + imageIndex); }
 
-		//TODO:Subsampling accordingly to ImageReadParam
+		int reduction = 0;
+		while (reduction < WSQDecoder.MAX_REDUCTION
+				&& xSubsampling % (2 << reduction) == 0 && ySubsampling % (2 << reduction) == 0) {
+			reduction++;
+		}
 
-		return image;
+		try {
+			BitmapWithMetadata header = getHeader(imageIndex);
+			int xOffset = param.getSubsamplingXOffset();
+			int yOffset = param.getSubsamplingYOffset();
+			int subsampledWidth = (header.getWidth() - xOffset + xSubsampling - 1) / xSubsampling;
+			int subsampledHeight = (header.getHeight() - yOffset + ySubsampling - 1) / ySubsampling;
+			BufferedImage subsampledImage = new BufferedImage(subsampledWidth, subsampledHeight, BufferedImage.TYPE_BYTE_GRAY);
+
+			if (xSubsampling == 1 << reduction && ySubsampling == 1 << reduction && xOffset == 0 && yOffset == 0) {
+				/* The reduced image is exactly what was asked for. */
+				decode(reduction, subsampledImage);
+				return subsampledImage;
+			}
+
+			/* Each pixel of the reduced bitmap covers 2^reduction x 2^reduction pixels of the full image. */
+			BitmapWithMetadata bitmap = decode(reduction);
+			byte[] pixels = bitmap.getPixels();
+			byte[] subsampledPixels = ((DataBufferByte)subsampledImage.getRaster().getDataBuffer()).getData();
+			int i = 0;
+			for (int y = 0; y < subsampledHeight; y++) {
+				int row = Math.min((yOffset + y * ySubsampling) >> reduction, bitmap.getHeight() - 1) * bitmap.getWidth();
+				for (int x = 0; x < subsampledWidth; x++) {
+					subsampledPixels[i++] = pixels[row + Math.min((xOffset + x * xSubsampling) >> reduction, bitmap.getWidth() - 1)];
+				}
+			}
+			return subsampledImage;
+		} catch (IOException ioe) {
+			throw new IIOException("Could not decode image", ioe);
+		}
 	}
 
 	public int getWidth(int imageIndex) throws IOException {
-		processInput(imageIndex);
-		return image.getWidth();
+		return getHeader(imageIndex).getWidth();
 	}
 
 	public int getHeight(int imageIndex) throws IOException {
-		processInput(imageIndex);
-		return image.getHeight();
+		return getHeader(imageIndex).getHeight();
 	}
 
+	/**
+	 * Gets the metadata of the image. Unless the image has been read already,
+	 * only the header of the image is read to obtain it.
+	 *
+	 * @param imageIndex the index of the image, should be 0
+	 *
+	 * @return the metadata
+	 *
+	 * @throws IOException on error reading the header
+	 */
 	public IIOMetadata getImageMetadata(int imageIndex) throws IOException {
-		processInput(imageIndex);
+		if (metadata == null) { setMetadata(getHeader(imageIndex)); }
 		return metadata;
 	}
 
 	public Iterator<ImageTypeSpecifier> getImageTypes(int imageIndex) throws IOException {
-		processInput(imageIndex);
-		return Collections.singletonList(ImageTypeSpecifier.createFromRenderedImage(image)).iterator();
+		if (imageIndex != 0) { throw new IndexOutOfBoundsException("imageIndex " + imageIndex); }
+		return Collections.singletonList(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_BYTE_GRAY)).iterator();
 	}
 
 	public IIOMetadata getStreamMetadata() throws IOException {
@@ -107,21 +178,99 @@ public class WSQImageReader extends ImageReader {
 			}
 			if (!(input instanceof ImageInputStream)) { throw new IllegalArgumentException("bad input: " + input.getClass().getCanonicalName()); }
 			
-			BitmapWithMetadata bitmap = WSQDecoder.decode((ImageInputStream)getInput());
-			metadata = new WSQMetadata(); 
-			
-			for (Map.Entry<String, String> entry: bitmap.getMetadata().entrySet()) {
-				metadata.setProperty(entry.getKey(), entry.getValue());
-			}
-			for (String s: bitmap.getComments()) {
-				metadata.addComment(s);
-			}
-			
-			image = new BufferedImage(bitmap.getWidth(), bitmap.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
-			image.getRaster().setDataElements(0, 0, bitmap.getWidth(), bitmap.getHeight(), bitmap.getPixels());
+			BitmapWithMetadata header = getHeader(imageIndex);
+			BufferedImage image = new BufferedImage(header.getWidth(), header.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+			setMetadata(decode(0, image));
+			this.image = image;
 		} catch (IOException ioe) {
 			ioe.printStackTrace();
 			this.image = null;
 		}
 	}
+
+	/**
+	 * Decodes the input. The input is reset to its position before decoding,
+	 * so that it can be decoded again at another resolution.
+	 *
+	 * @param reduction the reduction level
+	 *
+	 * @return the decoded bitmap
+	 *
+	 * @throws IOException on error reading the input
+	 */
+	private BitmapWithMetadata decode(int reduction) throws IOException {
+		ImageInputStream inputStream = getImageInputStream();
+		inputStream.mark();
+		try {
+			return decoder.decodeBitmap(inputStream, reduction);
+		} finally {
+			inputStream.reset();
+		}
+	}
+
+	/**
+	 * Decodes the input straight into the samples of a <code>TYPE_BYTE_GRAY</code> image,
+	 * without intermediate copies. The input is reset to its position before decoding.
+	 *
+	 * @param reduction the reduction level
+	 * @param image the image to decode into, with the dimensions of the reduced image
+	 *
+	 * @return a bitmap with the metadata of the image, without pixels
+	 *
+	 * @throws IOException on error reading the input
+	 */
+	private BitmapWithMetadata decode(int reduction, BufferedImage image) throws IOException {
+		WritableRaster raster = image.getRaster();
+		DataBufferByte dataBuffer = (DataBufferByte)raster.getDataBuffer();
+		int scanlineStride = ((ComponentSampleModel)raster.getSampleModel()).getScanlineStride();
+		ImageInputStream inputStream = getImageInputStream();
+		inputStream.mark();
+		try {
+			return decoder.decodeBitmap(inputStream, reduction, dataBuffer.getData(), dataBuffer.getOffset(), scanlineStride);
+		} finally {
+			inputStream.reset();
+		}
+	}
+
+	/**
+	 * Reads the header of the input, if this has not been done before.
+	 * The input is reset to its position before reading.
+	 *
+	 * @param imageIndex the index of the image, should be 0
+	 *
+	 * @return a bitmap without pixels
+	 *
+	 * @throws IOException on error reading the input
+	 */
+	private BitmapWithMetadata getHeader(int imageIndex) throws IOException {
+		if (imageIndex != 0) { throw new IndexOutOfBoundsException("imageIndex " + imageIndex); }
+		if (header == null) {
+			ImageInputStream inputStream = getImageInputStream();
+			inputStream.mark();
+			try {
+				header = decoder.decodeHeader(inputStream);
+			} finally {
+				inputStream.reset();
+			}
+		}
+		return header;
+	}
+
+	private ImageInputStream getImageInputStream() {
+		Object input = getInput();
+		if (!(input instanceof ImageInputStream)) { throw new IllegalArgumentException("bad input: " + (input == null ? null : input.getClass().getCanonicalName())); }
+		if (decoder == null) { decoder = new WSQDecoder(); }
+		return (ImageInputStream)input;
+	}
+
+	private void setMetadata(BitmapWithMetadata bitmap) {
+		metadata = new WSQMetadata(); 
+
+		for (Map.Entry<String, String> entry: bitmap.getMetadata().entrySet()) {
+			metadata.setProperty(entry.getKey(), entry.getValue());
+		}
+		for (String s: bitmap.getComments()) {
+			metadata.addComment(s);
+		}
+	}
 }
@@ -21,6 +21,9 @@ public class WSQImageWriter extends ImageWriter {
 
 	public static final double DEFAULT_BITRATE = 1.5; // MO - shouldn't this also be -1 if unknown?
 
+	/* Reused for subsequent images. */
+	private WSQEncoder encoder;
+
 	public WSQImageWriter(ImageWriterSpi provider) {
 		super(provider);
 	}
@@ -89,7 +92,8 @@ public class WSQImageWriter extends ImageWriter {
 					bufferedImage.getHeight(),
 					(int)Math.round(ppi),
 					8, 1);					
-			WSQEncoder.encode( (ImageOutputStream)getOutput(), bitmap, bitRate, metadata.nistcom, "Made with JNBIS");
+			if (encoder == null) { encoder = new WSQEncoder(); }
+			encoder.encodeBitmap((ImageOutputStream)getOutput(), bitmap, bitRate, metadata.nistcom, "Made with JNBIS");
 		} catch (Throwable t) {
 			throw new IIOException(t.getMessage(), t);
 		}
@@ -0,0 +1,143 @@
+package org.jnbis.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jnbis.Bitmap;
+import org.jnbis.WSQDecoder;
+import org.jnbis.WSQEncoder;
+
+/**
+ * Measures the WSQ codec, run it before and after a change to get comparable numbers.
+ *
+ * Synthetic ridge patterns of typical 500 ppi fingerprint sizes are encoded at a low and
+ * a high bit rate. For every image the median time of encoding, decoding, decoding at
+ * 1/2 and 1/4 resolution, and reading only the header is printed.
+ *
+ * Usage: <code>java org.jnbis.test.WSQBenchmark [&lt;iterations&gt; [&lt;threads&gt;]]</code>,
+ * with threads the size of the executor given to the codecs (none by default).
+ */
+public class WSQBenchmark {
+
+	/* Flat single finger, rolled finger, and four finger slap at 500 ppi. */
+	private static final int[][] SIZES = { { 500, 500 }, { 800, 750 }, { 1600, 1500 } };
+
+	private static final double[] BIT_RATES = { 0.75, 2.25 };
+
+	private interface Operation {
+		void run() throws IOException;
+	}
+
+	private int iterations;
+	private WSQEncoder encoder;
+	private WSQDecoder decoder;
+
+	public WSQBenchmark(int iterations, ExecutorService executor) {
+		this.iterations = iterations;
+		this.encoder = new WSQEncoder();
+		this.decoder = new WSQDecoder();
+		encoder.setExecutor(executor);
+		decoder.setExecutor(executor);
+	}
+
+	public void run() throws IOException {
+		System.out.println("size       rate   bytes     encode   decode   1/2      1/4      header (ms)");
+		for (int[] size: SIZES) {
+			final Bitmap bitmap = createImage(size[0], size[1]);
+			for (final double bitRate: BIT_RATES) {
+				final ByteArrayOutputStream out = new ByteArrayOutputStream();
+				double encodeTime = measure(new Operation() {
+					public void run() throws IOException {
+						out.reset();
+						encoder.encodeBitmap(out, bitmap, bitRate, null);
+					}
+				});
+				final byte[] encoded = out.toByteArray();
+				double decodeTime = measureDecode(encoded, 0);
+				double decode2Time = measureDecode(encoded, 1);
+				double decode4Time = measureDecode(encoded, 2);
+				double headerTime = measure(new Operation() {
+					public void run() throws IOException {
+						decoder.decodeHeader(new ByteArrayInputStream(encoded));
+					}
+				});
+				System.out.println(String.format("%-10s %-6.2f %-9d %-8.2f %-8.2f %-8.2f %-8.2f %.3f",
+						size[0] + "x" + size[1], bitRate, encoded.length,
+						encodeTime, decodeTime, decode2Time, decode4Time, headerTime));
+			}
+		}
+	}
+
+	private double measureDecode(final byte[] encoded, final int reduction) throws IOException {
+		return measure(new Operation() {
+			public void run() throws IOException {
+				decoder.decodeBitmap(new ByteArrayInputStream(encoded), reduction);
+			}
+		});
+	}
+
+	/**
+	 * Runs an operation to warm up, then measures it.
+	 *
+	 * @param operation the operation
+	 *
+	 * @return the median time in milliseconds
+	 *
+	 * @throws IOException if the operation fails
+	 */
+	private double measure(Operation operation) throws IOException {
+		for (int i = 0; i < iterations; i++) {
+			operation.run();
+		}
+		long[] times = new long[iterations];
+		for (int i = 0; i < iterations; i++) {
+			long startTime = System.nanoTime();
+			operation.run();
+			times[i] = System.nanoTime() - startTime;
+		}
+		Arrays.sort(times);
+		return times[iterations / 2] / 1000000.0;
+	}
+
+	/**
+	 * Creates a fingerprint-like image of curved ridges with sensor noise.
+	 *
+	 * @param width the width
+	 * @param height the height
+	 *
+	 * @return an 8-bit grayscale bitmap
+	 */
+	private static Bitmap createImage(int width, int height) {
+		Random random = new Random(width * 31 + height);
+		byte[] pixels = new byte[width * height];
+		double cx = width / 2.0, cy = height / 2.0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				double r = Math.sqrt((x - cx) * (x - cx) + 2 * (y - cy) * (y - cy));
+				double value = 128 + 100 * Math.sin(r * 0.6 + 2 * Math.sin(x * 0.01)) + random.nextGaussian() * 10;
+				pixels[y * width + x] = (byte)Math.max(0, Math.min(255, (int)value));
+			}
+		}
+		return new Bitmap(pixels, width, height, 500, 8, 1);
+	}
+
+	public static void main(String[] arg) {
+		try {
+			int iterations = arg.length > 0 ? Integer.parseInt(arg[0]) : 20;
+			int threadCount = arg.length > 1 ? Integer.parseInt(arg[1]) : 0;
+			ExecutorService executor = threadCount > 0 ? Executors.newFixedThreadPool(threadCount) : null;
+			try {
+				new WSQBenchmark(iterations, executor).run();
+			} finally {
+				if (executor != null) { executor.shutdown(); }
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
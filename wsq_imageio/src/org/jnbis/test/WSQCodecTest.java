@@ -0,0 +1,246 @@
+package org.jnbis.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jnbis.Bitmap;
+import org.jnbis.WSQDecoder;
+import org.jnbis.WSQEncoder;
+
+/**
+ * Checks the WSQ codec against the sample images, prints the failed checks and
+ * exits with status 1 if there are any.
+ *
+ * The pixel hashes of the samples are those of the decoder before the codec was
+ * reworked, so any change to the decoded pixels shows up. Encoded images are checked
+ * by the quality of the round trip instead, as the encoded bytes change with any
+ * improvement to the encoder.
+ *
+ * Usage: <code>java org.jnbis.test.WSQCodecTest [&lt;samples directory&gt;]</code>,
+ * by default the WSQ samples of passporthostapi-test, seen from this module.
+ */
+public class WSQCodecTest {
+
+	private static final String SAMPLES_DIR = "../abandoned/passporthostapi-test/samples/wsq";
+
+	/* File name, width, height, and MD5 hash of the decoded pixels. */
+	private static final String[][] SAMPLES = {
+		{ "fp.wsq", "620", "620", "1da477cd156f874bd8c2966552541eab" },
+		{ "sample_image.wsq", "545", "622", "00512a9d430bb2b7d7f9eb6cda4d6e0e" }
+	};
+
+	private static final double[] BIT_RATES = { 0.75, 2.25 };
+
+	/*
+	 * Minimum PSNR in dB of an encode and decode round trip at each of the bit rates, for the samples
+	 * and a synthetic image. These are about 2 dB below the current values, when only part of the
+	 * second and third quantized blocks was coded they were 24.7, 24.8, 33.3, 33.4, 27.1 and 26.7.
+	 */
+	private static final double[][] MIN_PSNRS = { { 40.0, 43.0 }, { 44.0, 54.0 }, { 26.0, 31.0 } };
+
+	private File samplesDir;
+	private int checkCount;
+	private List<String> failures;
+
+	public WSQCodecTest(File samplesDir) {
+		this.samplesDir = samplesDir;
+		this.failures = new ArrayList<String>();
+	}
+
+	public void testDecodeSamples() throws IOException {
+		for (String[] sample: SAMPLES) {
+			Bitmap bitmap = WSQDecoder.decode(new ByteArrayInputStream(readSample(sample[0])));
+			check(sample[0] + " width", Integer.parseInt(sample[1]), bitmap.getWidth());
+			check(sample[0] + " height", Integer.parseInt(sample[2]), bitmap.getHeight());
+			check(sample[0] + " pixels", sample[3], md5(bitmap.getPixels()));
+		}
+	}
+
+	public void testDecodeReduced() throws IOException {
+		WSQDecoder decoder = new WSQDecoder();
+		for (String[] sample: SAMPLES) {
+			byte[] encoded = readSample(sample[0]);
+			int width = Integer.parseInt(sample[1]), height = Integer.parseInt(sample[2]);
+			Bitmap fullBitmap = decoder.decodeBitmap(new ByteArrayInputStream(encoded));
+			check(sample[0] + " reduction 0 pixels", sample[3], md5(fullBitmap.getPixels()));
+			for (int reduction = 1; reduction <= WSQDecoder.MAX_REDUCTION; reduction++) {
+				/* Each level of the decomposition halves the dimensions, rounding up. */
+				width = (width + 1) / 2;
+				height = (height + 1) / 2;
+				Bitmap bitmap = decoder.decodeBitmap(new ByteArrayInputStream(encoded), reduction);
+				check(sample[0] + " reduction " + reduction + " width", width, bitmap.getWidth());
+				check(sample[0] + " reduction " + reduction + " height", height, bitmap.getHeight());
+				check(sample[0] + " reduction " + reduction + " length", width * height, bitmap.getPixels().length);
+			}
+		}
+	}
+
+	public void testRoundTrip() throws IOException {
+		List<Bitmap> bitmaps = new ArrayList<Bitmap>();
+		for (String[] sample: SAMPLES) {
+			bitmaps.add(WSQDecoder.decode(new ByteArrayInputStream(readSample(sample[0]))));
+		}
+		bitmaps.add(createImage(801, 750));
+
+		WSQEncoder encoder = new WSQEncoder();
+		WSQDecoder decoder = new WSQDecoder();
+		for (int i = 0; i < bitmaps.size(); i++) {
+			Bitmap bitmap = bitmaps.get(i);
+			String name = bitmap.getWidth() + "x" + bitmap.getHeight();
+			for (int j = 0; j < BIT_RATES.length; j++) {
+				byte[] encoded = encode(encoder, bitmap, BIT_RATES[j]);
+				Bitmap decodedBitmap = decoder.decodeBitmap(new ByteArrayInputStream(encoded));
+				double psnr = psnr(bitmap.getPixels(), decodedBitmap.getPixels());
+				checkCount++;
+				if (psnr < MIN_PSNRS[i][j]) {
+					failures.add(name + " at " + BIT_RATES[j] + ": PSNR " + String.format("%.1f", psnr) + " dB, expected at least " + MIN_PSNRS[i][j] + " dB");
+				}
+			}
+		}
+	}
+
+	public void testExecutor() throws IOException {
+		List<Bitmap> bitmaps = new ArrayList<Bitmap>();
+		for (String[] sample: SAMPLES) {
+			bitmaps.add(WSQDecoder.decode(new ByteArrayInputStream(readSample(sample[0]))));
+		}
+		bitmaps.add(createImage(801, 750));
+		bitmaps.add(createImage(33, 47));
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			WSQEncoder encoder = new WSQEncoder();
+			WSQEncoder parallelEncoder = new WSQEncoder();
+			parallelEncoder.setExecutor(executor);
+			WSQDecoder decoder = new WSQDecoder();
+			WSQDecoder parallelDecoder = new WSQDecoder();
+			parallelDecoder.setExecutor(executor);
+			for (Bitmap bitmap: bitmaps) {
+				String name = bitmap.getWidth() + "x" + bitmap.getHeight();
+				for (double bitRate: BIT_RATES) {
+					byte[] encoded = encode(encoder, bitmap, bitRate);
+					check(name + " at " + bitRate + " encoded with executor", md5(encoded), md5(encode(parallelEncoder, bitmap, bitRate)));
+					check(name + " at " + bitRate + " encoded with static method", md5(encoded), md5(encode(null, bitmap, bitRate)));
+					for (int reduction = 0; reduction <= 2; reduction++) {
+						check(name + " at " + bitRate + " reduction " + reduction + " decoded with executor",
+								md5(decoder.decodeBitmap(new ByteArrayInputStream(encoded), reduction).getPixels()),
+								md5(parallelDecoder.decodeBitmap(new ByteArrayInputStream(encoded), reduction).getPixels()));
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static byte[] encode(WSQEncoder encoder, Bitmap bitmap, double bitRate) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (encoder == null) {
+			WSQEncoder.encode(out, bitmap, bitRate);
+		} else {
+			encoder.encodeBitmap(out, bitmap, bitRate, null);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * The peak signal to noise ratio of a decoded image.
+	 *
+	 * @param pixels the original 8-bit samples
+	 * @param decodedPixels the decoded 8-bit samples
+	 *
+	 * @return the PSNR in dB
+	 */
+	private static double psnr(byte[] pixels, byte[] decodedPixels) {
+		if (pixels.length != decodedPixels.length) { return 0; }
+		double squaredError = 0;
+		for (int i = 0; i < pixels.length; i++) {
+			int error = (pixels[i] & 0xFF) - (decodedPixels[i] & 0xFF);
+			squaredError += error * error;
+		}
+		if (squaredError == 0) { return Double.POSITIVE_INFINITY; }
+		return 10 * Math.log10(255.0 * 255.0 * pixels.length / squaredError);
+	}
+
+	private void check(String name, Object expected, Object actual) {
+		checkCount++;
+		if (!expected.equals(actual)) {
+			failures.add(name + ": expected " + expected + ", found " + actual);
+		}
+	}
+
+	private byte[] readSample(String fileName) throws IOException {
+		File file = new File(samplesDir, fileName);
+		byte[] result = new byte[(int)file.length()];
+		DataInputStream dataIn = new DataInputStream(new FileInputStream(file));
+		try {
+			dataIn.readFully(result);
+		} finally {
+			dataIn.close();
+		}
+		return result;
+	}
+
+	private static String md5(byte[] bytes) {
+		try {
+			StringBuffer result = new StringBuffer();
+			for (byte b: MessageDigest.getInstance("MD5").digest(bytes)) {
+				result.append(String.format("%02x", b & 0xFF));
+			}
+			return result.toString();
+		} catch (NoSuchAlgorithmException nsae) {
+			throw new IllegalStateException(nsae.getMessage());
+		}
+	}
+
+	/**
+	 * Creates a fingerprint-like image of curved ridges with sensor noise.
+	 *
+	 * @param width the width
+	 * @param height the height
+	 *
+	 * @return an 8-bit grayscale bitmap
+	 */
+	private static Bitmap createImage(int width, int height) {
+		Random random = new Random(width * 31 + height);
+		byte[] pixels = new byte[width * height];
+		double cx = width / 2.0, cy = height / 2.0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				double r = Math.sqrt((x - cx) * (x - cx) + 2 * (y - cy) * (y - cy));
+				double value = 128 + 100 * Math.sin(r * 0.6 + 2 * Math.sin(x * 0.01)) + random.nextGaussian() * 10;
+				pixels[y * width + x] = (byte)Math.max(0, Math.min(255, (int)value));
+			}
+		}
+		return new Bitmap(pixels, width, height, 500, 8, 1);
+	}
+
+	public static void main(String[] arg) {
+		try {
+			WSQCodecTest test = new WSQCodecTest(new File(arg.length > 0 ? arg[0] : SAMPLES_DIR));
+			test.testDecodeSamples();
+			test.testDecodeReduced();
+			test.testRoundTrip();
+			test.testExecutor();
+			for (String failure: test.failures) {
+				System.out.println("FAILED " + failure);
+			}
+			System.out.println(test.checkCount + " checks, " + test.failures.size() + " failures");
+			if (!test.failures.isEmpty()) { System.exit(1); }
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}